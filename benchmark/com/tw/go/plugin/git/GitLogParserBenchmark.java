@@ -0,0 +1,169 @@
+package com.tw.go.plugin.git;
+
+import com.tw.go.plugin.model.Revision;
+import com.tw.go.plugin.util.DateUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the same synthetic commits, changed files included, as {@code --pretty=medium --name-status} lines with the
+ * five-regex parser {@link GitModificationParser} started from and with {@link GitModificationParser} itself, and as
+ * the NUL-delimited {@code -z} stream with {@link GitLogParser}. Run with {@code mvn -Pbenchmark test-compile exec:java
+ * -Dexec.mainClass=com.tw.go.plugin.git.GitLogParserBenchmark}; add {@code -prof gc} through {@code exec.args} to
+ * compare the bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitLogParserBenchmark {
+    private static final String[] STATUSES = {"A", "M", "D"};
+
+    @Param({"10000"})
+    public int commits;
+
+    @Param({"20"})
+    public int filesPerCommit;
+
+    private List<String> medium;
+    private byte[] nulDelimited;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        medium = new ArrayList<>(commits * (filesPerCommit + 9));
+        StringBuilder z = new StringBuilder();
+        for (int i = 0; i < commits; i++) {
+            String sha = sha(random);
+            String parent = sha(random);
+            long time = 1422189618L + i;
+
+            medium.add("commit " + sha);
+            medium.add("Author: A U Thor <author@example.com>");
+            medium.add("Date:   2015-01-25 18:10:18 +0530");
+            medium.add("");
+            medium.add("    fix the build " + i);
+            medium.add("    ");
+            medium.add("    a longer description of change " + i);
+            medium.add("");
+
+            z.append(sha).append('\0').append(parent).append('\0').append("A U Thor <author@example.com>").append('\0')
+                    .append(time).append('\0').append("fix the build ").append(i).append("\n\na longer description of change ").append(i).append('\n').append('\0')
+                    .append('\n');
+            for (int j = 0; j < filesPerCommit; j++) {
+                String status = STATUSES[j % STATUSES.length];
+                String path = "src/module-" + j % 7 + "/File" + random.nextInt(1000) + ".java";
+                medium.add(status + "\t" + path);
+                z.append(status).append('\0').append(path).append('\0');
+            }
+            medium.add("");
+            z.append('\0');
+        }
+        nulDelimited = z.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public List<Revision> mediumFormatRegex() {
+        RegexModificationParser parser = new RegexModificationParser();
+        for (String line : medium) {
+            parser.processLine(line);
+        }
+        return parser.revisions;
+    }
+
+    @Benchmark
+    public List<Revision> mediumFormat() {
+        return new GitModificationParser().parse(medium);
+    }
+
+    @Benchmark
+    public List<Revision> nulDelimited() throws IOException {
+        return new GitLogParser(new ByteArrayInputStream(nulDelimited)).parse();
+    }
+
+    private static String sha(Random random) {
+        StringBuilder sha = new StringBuilder(40);
+        for (int i = 0; i < 40; i++) {
+            sha.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return sha.toString();
+    }
+
+    // GitModificationParser as it was before it dispatched on the first characters of a line
+    private static class RegexModificationParser {
+        private static final String SPACES = "\\s+";
+        private static final String COMMENT_INDENT = "\\s{4}";
+        private static final String COMMENT_TEXT = "(.*)";
+        private static final String HASH = "(\\w+)";
+        private static final String DATE = "(.+)";
+        private static final String AUTHOR = "(.+)";
+        private static final String MULTIPLE_HASHES = "(.+)";
+        private static final Pattern COMMIT_PATTERN = Pattern.compile("^commit" + SPACES + HASH + "$");
+        private static final Pattern MERGE_PATTERN = Pattern.compile("^Merge:" + SPACES + MULTIPLE_HASHES + "$");
+        private static final Pattern AUTHOR_PATTERN = Pattern.compile("^Author:" + SPACES + AUTHOR + "$");
+        private static final Pattern DATE_PATTERN = Pattern.compile("^Date:" + SPACES + DATE + "$");
+        private static final Pattern COMMENT_PATTERN = Pattern.compile("^" + COMMENT_INDENT + COMMENT_TEXT + "$");
+
+        private final LinkedList<Revision> revisions = new LinkedList<>();
+
+        private void processLine(String line) {
+            Matcher matcher = COMMIT_PATTERN.matcher(line);
+            if (matcher.matches()) {
+                revisions.add(new Revision(matcher.group(1), null, "", "", null, null));
+            }
+            Matcher mergeMatcher = MERGE_PATTERN.matcher(line);
+            if (mergeMatcher.matches()) {
+                revisions.getLast().setMergeCommit(true);
+            }
+            Matcher authorMatcher = AUTHOR_PATTERN.matcher(line);
+            if (authorMatcher.matches()) {
+                revisions.getLast().setUser(authorMatcher.group(1));
+            }
+            Matcher dateMatcher = DATE_PATTERN.matcher(line);
+            if (dateMatcher.matches()) {
+                revisions.getLast().setTimestamp(DateUtils.parseISO8601(dateMatcher.group(1)));
+            }
+            Matcher commentMatcher = COMMENT_PATTERN.matcher(line);
+            if (commentMatcher.matches()) {
+                Revision last = revisions.getLast();
+                String comment = last.getComment();
+                if (!comment.isEmpty()) comment += "\n";
+                last.setComment(comment + commentMatcher.group(1));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(GitLogParserBenchmark.class.getSimpleName());
+        if (args.length > 0 && "-prof".equals(args[0]) && args.length > 1) {
+            options.addProfiler(args[1]);
+        }
+        new Runner(options.build()).run();
+    }
+}
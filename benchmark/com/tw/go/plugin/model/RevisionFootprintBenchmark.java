@@ -0,0 +1,119 @@
+package com.tw.go.plugin.model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Measures the heap retained by a log of revisions, as {@link Revision} and {@link ModifiedFile} keep it and as plain
+ * strings and dates did before. Run with {@code mvn -Pbenchmark test-compile exec:java
+ * -Dexec.mainClass=com.tw.go.plugin.model.RevisionFootprintBenchmark [-Dexec.args="revisions filesPerRevision"]}.
+ */
+public class RevisionFootprintBenchmark {
+    private static final String[] ACTIONS = {"added", "modified", "deleted"};
+
+    public static void main(String[] args) {
+        int revisions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int filesPerRevision = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        System.out.printf("%d revisions of %d files%n", revisions, filesPerRevision);
+        report(() -> strings(revisions, filesPerRevision), () -> compact(revisions, filesPerRevision));
+        System.out.printf("1 revision of %d files%n", revisions * filesPerRevision);
+        report(() -> strings(1, revisions * filesPerRevision), () -> compact(1, revisions * filesPerRevision));
+    }
+
+    private static void report(Supplier<Object> strings, Supplier<Object> compact) {
+        long before = retained(strings);
+        long after = retained(compact);
+        System.out.printf("  strings: %,d bytes%n  compact: %,d bytes (%.0f%% less)%n", before, after, 100.0 * (before - after) / before);
+    }
+
+    private static List<Revision> compact(int revisions, int filesPerRevision) {
+        Random random = new Random(42);
+        List<Revision> log = new ArrayList<>(revisions);
+        for (int i = 0; i < revisions; i++) {
+            Revision revision = new Revision(sha(random), new Date(), "comment " + i, "author <author@example.com>", "author@example.com", null);
+            // every consumer reads the SHA, so measure a revision that has been read
+            revision.getRevision();
+            for (int j = 0; j < filesPerRevision; j++) {
+                revision.createModifiedFile(path(random), FileAction.of(ACTIONS[j % ACTIONS.length]));
+            }
+            log.add(revision);
+        }
+        return log;
+    }
+
+    private static List<StringRevision> strings(int revisions, int filesPerRevision) {
+        Random random = new Random(42);
+        List<StringRevision> log = new ArrayList<>(revisions);
+        for (int i = 0; i < revisions; i++) {
+            StringRevision revision = new StringRevision(sha(random), new Date(), "comment " + i, "author <author@example.com>", "author@example.com");
+            for (int j = 0; j < filesPerRevision; j++) {
+                revision.modifiedFiles.add(new StringFile(path(random), ACTIONS[j % ACTIONS.length]));
+            }
+            log.add(revision);
+        }
+        return log;
+    }
+
+    // each call builds new strings, as the parsers do for every line they read
+    private static String sha(Random random) {
+        StringBuilder sha = new StringBuilder(40);
+        for (int i = 0; i < 40; i++) {
+            sha.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return sha.toString();
+    }
+
+    private static String path(Random random) {
+        return "src/main/java/com/example/module" + random.nextInt(40) + "/package" + random.nextInt(10) + "/File" + random.nextInt(100_000) + ".java";
+    }
+
+    private static long retained(Supplier<Object> build) {
+        long before = usedHeap();
+        Object retained = build.get();
+        long after = usedHeap();
+        Reference.reachabilityFence(retained);
+        return after - before;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private static class StringRevision {
+        private final String revision;
+        private final Date timestamp;
+        private final String comment;
+        private final String user;
+        private final String emailId;
+        private final List<StringFile> modifiedFiles = new ArrayList<>();
+
+        private StringRevision(String revision, Date timestamp, String comment, String user, String emailId) {
+            this.revision = revision;
+            this.timestamp = timestamp;
+            this.comment = comment;
+            this.user = user;
+            this.emailId = emailId;
+        }
+    }
+
+    private static class StringFile {
+        private final String fileName;
+        private final String action;
+
+        private StringFile(String fileName, String action) {
+            this.fileName = fileName;
+            this.action = action;
+        }
+    }
+}
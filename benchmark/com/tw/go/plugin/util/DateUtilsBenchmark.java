@@ -0,0 +1,75 @@
+package com.tw.go.plugin.util;
+
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link DateUtils#parseISO8601(String)} with the formatter chain it replaced, for each date format git
+ * prints. Run with {@code mvn -Pbenchmark test-compile exec:java -Dexec.mainClass=com.tw.go.plugin.util.DateUtilsBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateUtilsBenchmark {
+    private static final DateTimeFormatter ISO_NO_MILLIS = ISODateTimeFormat.dateTimeNoMillis();
+
+    @Param({"2015-01-25 18:10:18 +0530", "2015-01-25T18:10:18+05:30", "2015-01-25T12:40:18"})
+    public String date;
+
+    @Benchmark
+    public Date decoder() {
+        return DateUtils.parseISO8601(date);
+    }
+
+    @Benchmark
+    public Date formatters() {
+        return formatterChain(date);
+    }
+
+    // DateUtils.parseISO8601 before it decoded dates itself
+    private static Date formatterChain(String date) {
+        try {
+            return ISO_NO_MILLIS.parseDateTime(date).toDate();
+        } catch (Exception e) {
+            //fall through and try and parse other ISO standard formats
+        }
+        try {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss ZZZZZ").parse(date);
+        } catch (ParseException e) {
+            //fall through and try and parse other ISO standard formats
+        }
+        try {
+            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+            dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return dateFormat.parse(date);
+        } catch (ParseException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DateUtilsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
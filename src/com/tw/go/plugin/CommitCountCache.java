@@ -0,0 +1,43 @@
+package com.tw.go.plugin;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the last commit count of each repository with the tip it was counted from. A count only depends on the tip
+ * (the history of a commit never changes), so a later count starts from the remembered one and only walks the commits
+ * in which the two tips differ.
+ */
+class CommitCountCache {
+    static final int MAX_REPOSITORIES = 1024;
+
+    private static final Map<String, Count> counts = new LinkedHashMap<String, Count>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Count> eldest) {
+            return size() > MAX_REPOSITORIES;
+        }
+    };
+
+    static synchronized Count get(File repositoryDir) {
+        return counts.get(repositoryDir.getAbsolutePath());
+    }
+
+    static synchronized void put(File repositoryDir, String tip, int count) {
+        counts.put(repositoryDir.getAbsolutePath(), new Count(tip, count));
+    }
+
+    static synchronized void clear() {
+        counts.clear();
+    }
+
+    static class Count {
+        final String tip;
+        final int count;
+
+        private Count(String tip, int count) {
+            this.tip = tip;
+            this.count = count;
+        }
+    }
+}
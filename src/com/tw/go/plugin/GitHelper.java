@@ -1,21 +1,54 @@
 package com.tw.go.plugin;
 
+import com.tw.go.plugin.cmd.CancellationToken;
 import com.tw.go.plugin.cmd.ProcessOutputStreamConsumer;
+import com.tw.go.plugin.maintenance.MaintenancePolicy;
+import com.tw.go.plugin.maintenance.MaintenanceState;
+import com.tw.go.plugin.maintenance.MaintenanceTask;
+import com.tw.go.plugin.maintenance.ThresholdMaintenancePolicy;
+import com.tw.go.plugin.metrics.GitMetrics;
 import com.tw.go.plugin.model.GitConfig;
+import com.tw.go.plugin.model.ModifiedFilesLoader;
+import com.tw.go.plugin.model.ModifiedFilesMode;
 import com.tw.go.plugin.model.Revision;
+import com.tw.go.plugin.model.RevisionRange;
+import com.tw.go.plugin.model.WorkingCopyStatus;
+import com.tw.go.plugin.timeline.GitPhase;
+import com.tw.go.plugin.timeline.PhaseEvent;
+import com.tw.go.plugin.timeline.PhaseListener;
+import com.tw.go.plugin.timeline.PhaseListeners;
+import com.tw.go.plugin.util.GitDirs;
+import com.tw.go.plugin.util.StringUtil;
 import org.apache.commons.io.FileUtils;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public abstract class GitHelper implements Closeable {
+    protected static final String ORIGIN_BRANCHES = "+refs/heads/*:refs/remotes/origin/*";
+    protected static final String MIRROR_REFS = "+refs/*:refs/*";
 
-public abstract class GitHelper {
     protected final GitConfig gitConfig;
     protected final File workingDir;
     protected final ProcessOutputStreamConsumer stdOut;
     protected final ProcessOutputStreamConsumer stdErr;
+    protected CancellationToken cancellationToken = new CancellationToken();
+    protected GitMetrics metrics = GitMetrics.NOOP;
+    private MaintenancePolicy maintenancePolicy = new ThresholdMaintenancePolicy();
+    private LocalMirror mirror;
+    private final List<PhaseListener> phaseListeners = new CopyOnWriteArrayList<>(PhaseListeners.defaults());
 
     public GitHelper(GitConfig gitConfig, File workingDir, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr) {
         this.gitConfig = gitConfig;
@@ -24,6 +57,67 @@ public abstract class GitHelper {
         this.stdErr = stdErr;
     }
 
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * Replaces the token checked between the steps of {@link #cloneOrFetch()} and handed to every git command, so a
+     * caller can cancel the operation from another thread.
+     */
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+
+    public GitMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Records duration, exit code, output bytes and process count of ls-remote, fetch, mirror fetch, status, maintenance,
+     * clean, resetHard, submoduleUpdate, log and diff-tree operations.
+     */
+    public void setMetrics(GitMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public MaintenancePolicy getMaintenancePolicy() {
+        return maintenancePolicy;
+    }
+
+    /**
+     * Decides which of gc, repack and pack-refs {@link #maintain()} runs after each fetch; by default a
+     * {@link ThresholdMaintenancePolicy}. Use {@link MaintenancePolicy#NEVER} to leave maintenance to someone else.
+     */
+    public void setMaintenancePolicy(MaintenancePolicy maintenancePolicy) {
+        this.maintenancePolicy = maintenancePolicy;
+    }
+
+    /**
+     * Reports the start and end of each {@link GitPhase} of {@link #cloneOrFetch()}. Flight Recorder events are
+     * emitted by a default listener where the JVM supports them.
+     */
+    public void addPhaseListener(PhaseListener listener) {
+        phaseListeners.add(listener);
+    }
+
+    public void removePhaseListener(PhaseListener listener) {
+        phaseListeners.remove(listener);
+    }
+
+    public LocalMirror getMirror() {
+        return mirror;
+    }
+
+    /**
+     * Clones the working directory from {@code mirror}, borrowing its objects, and fetches from it instead of the
+     * remote, fetching the mirror first unless that was done recently; {@code null} clones and fetches from the remote.
+     * {@link HelperFactory} sets it when a mirrors directory is configured.
+     */
+    public void setMirror(LocalMirror mirror) {
+        this.mirror = mirror;
+    }
+
     public abstract String version();
 
     public abstract void checkConnection();
@@ -32,13 +126,65 @@ public abstract class GitHelper {
         cloneOrFetch(null);
     }
 
+    /**
+     * Clones the repository into the working directory, or fetches into the existing clone, and resets it to the
+     * branch. A call made while another helper (in this or another process) works on the same directory waits for it,
+     * and shares the outcome of one in flight for the same ref spec, URL and branch instead of fetching again.
+     */
     public void cloneOrFetch(String refSpec) {
-        if (!isGitRepository() || !isSameRepository()) {
-            setupWorkingDir();
-            cloneRepository();
+        long requestedAt = System.nanoTime();
+        inPhase(GitPhase.CLONE_OR_FETCH, attributes("refSpec", refSpec), () -> WorkingDirCoordinator.run(workingDir, flight(refSpec), cancellationToken, () -> {
+            cancellationToken.throwIfCancelled();
+            if (!isGitRepository() || !isSameRepository()) {
+                inPhase(GitPhase.CLONE, attributes("branch", gitConfig.getEffectiveBranch()), () -> {
+                    setupWorkingDir();
+                    if (mirror == null) {
+                        cloneRepository();
+                    } else {
+                        updateMirror(requestedAt);
+                        cloneFromMirror(mirror.getDirectory());
+                    }
+                });
+            } else if (isRemoteTipUnchanged(refSpec)) {
+                return;
+            }
+
+            fetchAndReset(refSpec, gitConfig.getRemoteBranch(), requestedAt);
+        }));
+    }
+
+    // a fetch of another ref spec, or of sub-modules, may change more than the branch tip
+    private boolean isRemoteTipUnchanged(String refSpec) {
+        if (!gitConfig.isSkipFetchWhenUnchanged() || !StringUtil.isEmpty(refSpec) || isSubmoduleEnabled()) {
+            return false;
         }
+        String branch = gitConfig.getEffectiveBranch();
+        boolean[] unchanged = {false};
+        inPhase(GitPhase.REMOTE_TIP_CHECK, attributes("branch", branch), () -> {
+            String recorded = resolveCommit(gitConfig.getRemoteBranch());
+            if (recorded == null || !recorded.equals(resolveCommit("HEAD"))) {
+                return;
+            }
+            String advertised;
+            try {
+                advertised = advertisedTip(branch);
+            } catch (CancellationException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                // the fetch reports what is wrong with the remote
+                return;
+            }
+            if (recorded.equals(advertised)) {
+                stdOut.consumeLine(String.format("[GIT] Remote branch %s is still at %s, skipping fetch", branch, recorded));
+                unchanged[0] = true;
+            }
+        });
+        return unchanged[0];
+    }
 
-        fetchAndResetToHead(refSpec);
+    // a fetch only stands in for another that would fetch the same refs from the same URL, credentials included
+    private String flight(String refSpec) {
+        return (refSpec == null ? "" : refSpec) + '\0' + gitConfig.getEffectiveUrl() + '\0' + gitConfig.getEffectiveBranch();
     }
 
     private boolean isGitRepository() {
@@ -65,18 +211,68 @@ public abstract class GitHelper {
 
     public abstract void cloneRepository();
 
+    /**
+     * Clones {@code gitConfig}'s URL into {@code directory} as a bare mirror of all its refs. Its objects must never
+     * be pruned, see {@link LocalMirror}.
+     */
+    protected abstract void cloneMirror(File directory);
+
+    /**
+     * Fetches all refs of the bare mirror in {@code directory} from its remote, pruning deleted ones.
+     */
+    protected abstract void fetchMirror(File directory);
+
+    /**
+     * Clones the working directory from the mirror in {@code directory}, reading its objects through
+     * {@code objects/info/alternates} rather than copying them, with {@code origin} still pointing at
+     * {@code gitConfig}'s URL.
+     */
+    protected abstract void cloneFromMirror(File directory);
+
     public abstract void checkoutRemoteBranchToLocal();
 
     public abstract String workingRepositoryUrl();
 
     public abstract String getCurrentBranch();
 
-    public abstract int getCommitCount();
+    /**
+     * Counts the commits reachable from HEAD. Counts are cached by tip, and a new tip is counted by walking only the
+     * commits in which it differs from the cached one.
+     */
+    public int getCommitCount() {
+        return commitCount(null);
+    }
 
     public abstract String currentRevision();
 
+    /**
+     * @return the SHA the last fetch recorded for the configured branch, or {@code null} before the first fetch
+     */
+    public String remoteBranchTip() {
+        return resolveCommit(gitConfig.getRemoteBranch());
+    }
+
+    /**
+     * Asks the remote for the tip of {@code branch} without fetching, over protocol v2's {@code ls-refs} where the
+     * remote speaks it.
+     *
+     * @return the SHA the remote advertises for {@code refs/heads/branch}, or {@code null} if it has no such branch
+     */
+    protected abstract String advertisedTip(String branch);
+
+    /**
+     * @return the SHA of the commit {@code revision} names in the working directory, or {@code null} if it names none
+     */
+    protected abstract String resolveCommit(String revision);
+
     public abstract List<Revision> getAllRevisions();
 
+    /**
+     * Emits the revisions of {@link #getAllRevisions()} as they are read from the repository. The stream holds an open
+     * process or repository and must be closed, e.g. with try-with-resources.
+     */
+    public abstract Stream<Revision> streamAllRevisions();
+
     public abstract Revision getLatestRevision();
 
     public abstract Revision getLatestRevision(List<String> subPaths);
@@ -85,8 +281,99 @@ public abstract class GitHelper {
 
     public abstract List<Revision> getRevisionsSince(String revision, List<String> subPaths);
 
+    public Stream<Revision> streamRevisionsSince(String revision) {
+        return streamRevisionsSince(revision, null);
+    }
+
+    /**
+     * Emits the revisions of {@link #getRevisionsSince(String, List)} as they are read from the repository. The stream
+     * must be closed, e.g. with try-with-resources.
+     */
+    public abstract Stream<Revision> streamRevisionsSince(String revision, List<String> subPaths);
+
+    /**
+     * {@link #streamRevisionsSince(String, List)} that need not read past the first {@code maxCount} revisions;
+     * {@code 0} reads all of them. The stream is lazy, so this only needs overriding where the log is read ahead.
+     */
+    protected Stream<Revision> streamRevisionsSince(String revision, List<String> subPaths, int maxCount) {
+        return streamRevisionsSince(revision, subPaths);
+    }
+
+    /**
+     * Resolves a full or abbreviated SHA (or any other name git understands) to its commit.
+     *
+     * @throws RuntimeException if {@code sha} does not name a commit
+     */
     public abstract Revision getDetailsForRevision(String sha);
 
+    /**
+     * @return whether {@code revision} names a commit in the repository
+     */
+    public abstract boolean hasRevision(String revision);
+
+    /**
+     * Reads the revisions of {@link #streamRevisionsSince(String, List)}, bounded by
+     * {@link GitConfig#getMaxNewRevisions()} and {@link GitConfig#getMaxNewRevisionAgeSeconds()}. A previous revision
+     * that is gone is reported instead of failing the search. The age bound, like {@code git log --since}, stops at the
+     * first revision that is too old. Neither the log nor the diffs go further than the bounds need: one revision past
+     * them, to tell a truncated range from a complete one.
+     */
+    public RevisionRange getRevisionRangeSince(String previousRevision, List<String> subPaths) {
+        if (!hasRevision(previousRevision)) {
+            return RevisionRange.unreachable(previousRevision);
+        }
+        int limit = gitConfig.getMaxNewRevisions();
+        long cutoff = gitConfig.getMaxNewRevisionAgeSeconds() > 0
+                ? System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(gitConfig.getMaxNewRevisionAgeSeconds())
+                : Long.MIN_VALUE;
+        List<Revision> revisions = new ArrayList<>();
+        try (Stream<Revision> stream = streamRevisionsSince(previousRevision, subPaths, limit > 0 ? limit + 1 : 0)) {
+            Iterator<Revision> iterator = stream.iterator();
+            while (iterator.hasNext()) {
+                Revision revision = iterator.next();
+                if ((limit > 0 && revisions.size() >= limit) || revision.getTimestamp().getTime() < cutoff) {
+                    return new RevisionRange(previousRevision, revisions, RevisionRange.Status.TRUNCATED);
+                }
+                revisions.add(revision);
+            }
+        }
+        return new RevisionRange(previousRevision, revisions, RevisionRange.Status.COMPLETE);
+    }
+
+    /**
+     * Looks up many revisions at once, sharing the object reader between them.
+     *
+     * @return the revisions keyed by the names asked for, in that order; names that do not resolve to a commit, or
+     * only ambiguously, are left out
+     */
+    public abstract Map<String, Revision> getDetailsForRevisions(Collection<String> revisions);
+
+    /**
+     * @see GitConfig#setMaxModifiedFiles(int)
+     */
+    protected int maxModifiedFiles() {
+        return gitConfig == null ? 0 : gitConfig.getMaxModifiedFiles();
+    }
+
+    /**
+     * @return the loader that log revisions get instead of their changed files, or {@code null} when the log reads
+     * them itself, see {@link GitConfig#setModifiedFilesMode(ModifiedFilesMode)}
+     */
+    protected ModifiedFilesLoader modifiedFilesLoader() {
+        switch (gitConfig == null ? ModifiedFilesMode.EAGER : gitConfig.getModifiedFilesMode()) {
+            case LAZY:
+                return revision -> {
+                    Revision details = getDetailsForRevision(revision.getRevision());
+                    revision.addTruncatedModifiedFiles(details.getTruncatedModifiedFiles());
+                    return details.getModifiedFiles();
+                };
+            case NONE:
+                return ModifiedFilesLoader.NONE;
+            default:
+                return null;
+        }
+    }
+
     public Map<String, String> getBranchToRevisionMap() {
         return getBranchToRevisionMap("refs/remotes/origin/");
     }
@@ -104,30 +391,144 @@ public abstract class GitHelper {
     }
 
     public void fetchAndReset(String refSpec, String revision) {
-        fetch(refSpec);
-        gc();
-
-        if (shouldReset()) {
-            stdOut.consumeLine(String.format("[GIT] Reset working directory %s", workingDir));
-            cleanAllUnversionedFiles();
-            if (isSubmoduleEnabled()) {
-                removeSubmoduleSectionsFromGitConfig();
+        fetchAndReset(refSpec, revision, System.nanoTime());
+    }
+
+    private void fetchAndReset(String refSpec, String revision, long requestedAt) {
+        inPhase(GitPhase.FETCH_AND_RESET, attributes("refSpec", refSpec, "revision", revision), () -> {
+            cancellationToken.throwIfCancelled();
+            if (mirror != null) {
+                updateMirror(requestedAt);
+                cancellationToken.throwIfCancelled();
+            }
+            inPhase(GitPhase.FETCH, attributes("refSpec", refSpec), () -> fetch(refSpec));
+            cancellationToken.throwIfCancelled();
+            inPhase(GitPhase.MAINTENANCE, attributes(), this::maintain);
+
+            if (shouldReset()) {
+                cancellationToken.throwIfCancelled();
+                WorkingCopyStatus status = isSubmoduleEnabled() ? null : workingCopyStatus(revision);
+                if (status != null && status.isUpToDate()) {
+                    stdOut.consumeLine(String.format("[GIT] Working directory %s is already at %s", workingDir, status.getHead()));
+                    return;
+                }
+                stdOut.consumeLine(String.format("[GIT] Reset working directory %s", workingDir));
+                if (status == null || status.hasUntrackedFiles()) {
+                    inPhase(GitPhase.CLEAN, attributes("pass", "before-reset"), this::cleanAllUnversionedFiles);
+                }
+                if (isSubmoduleEnabled()) {
+                    inPhase(GitPhase.SUBMODULE_CONFIG_CLEANUP, attributes(), this::removeSubmoduleSectionsFromGitConfig);
+                }
+                cancellationToken.throwIfCancelled();
+                inPhase(GitPhase.RESET, attributes("revision", revision), () -> resetHard(revision));
+                if (isSubmoduleEnabled()) {
+                    inPhase(GitPhase.SUBMODULE_CHECKOUT, attributes(), this::checkoutAllModifiedFilesInSubmodules);
+                    updateSubmoduleWithInit();
+                }
+                cancellationToken.throwIfCancelled();
+                inPhase(GitPhase.CLEAN, attributes("pass", "after-reset"), this::cleanAllUnversionedFiles);
             }
-            resetHard(revision);
-            if (isSubmoduleEnabled()) {
-                checkoutAllModifiedFilesInSubmodules();
-                updateSubmoduleWithInit();
+        });
+    }
+
+    private void updateMirror(long requestedAt) {
+        LocalMirror mirror = this.mirror;
+        inPhase(GitPhase.MIRROR_FETCH, attributes("mirror", mirror.getDirectory().getPath()),
+                () -> mirror.update(requestedAt, cancellationToken, this::cloneMirror, () -> fetchMirror(mirror.getDirectory())));
+    }
+
+    /**
+     * Runs {@code body} as {@code phase}, reporting its start and end to the phase listeners.
+     */
+    protected void inPhase(GitPhase phase, Map<String, String> attributes, Runnable body) {
+        PhaseEvent started = PhaseEvent.started(phase, workingDir, attributes);
+        for (PhaseListener listener : phaseListeners) {
+            try {
+                listener.phaseStarted(started);
+            } catch (RuntimeException ignore) {
+            }
+        }
+        Throwable failure = null;
+        try {
+            body.run();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            PhaseEvent ended = started.ended(failure);
+            for (PhaseListener listener : phaseListeners) {
+                try {
+                    listener.phaseEnded(ended);
+                } catch (RuntimeException ignore) {
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> attributes(String... keysAndValues) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            if (keysAndValues[i + 1] != null) {
+                attributes.put(keysAndValues[i], keysAndValues[i + 1]);
             }
-            cleanAllUnversionedFiles();
         }
+        return attributes;
     }
 
     protected abstract boolean shouldReset();
 
+    /**
+     * Compares HEAD, index and working tree with {@code revision}, so that {@link #fetchAndReset(String, String)} can
+     * skip cleaning and resetting a working copy that is already there. Working copies with sub-modules are always
+     * reset.
+     *
+     * @return {@code null} if the status could not be determined
+     */
+    public abstract WorkingCopyStatus workingCopyStatus(String revision);
+
     public abstract void cleanAllUnversionedFiles();
 
+    /**
+     * Runs the maintenance tasks the {@link MaintenancePolicy} asks for and records them in the repository.
+     */
+    public void maintain() {
+        File gitDir = GitDirs.resolve(workingDir);
+        MaintenanceState state = MaintenanceState.load(gitDir);
+        try {
+            for (MaintenanceTask task : maintenancePolicy.plan(gitDir, state, System.currentTimeMillis())) {
+                cancellationToken.throwIfCancelled();
+                switch (task) {
+                    case GC:
+                        fullGc();
+                        break;
+                    case REPACK:
+                        repack();
+                        break;
+                    case PACK_REFS:
+                        packRefs();
+                        break;
+                }
+                state.ran(task, System.currentTimeMillis());
+            }
+        } finally {
+            state.save(gitDir);
+        }
+    }
+
+    /**
+     * {@code git gc --auto}: collects garbage only once the repository has accumulated enough loose objects or packs.
+     */
     public abstract void gc();
 
+    /**
+     * Collects garbage unconditionally; only run when the {@link MaintenancePolicy} asks for {@link MaintenanceTask#GC}.
+     */
+    protected abstract void fullGc();
+
+    public abstract void repack();
+
+    public abstract void packRefs();
+
     public boolean isSubmoduleEnabled() {
         return new File(workingDir, ".gitmodules").exists();
     }
@@ -140,16 +541,65 @@ public abstract class GitHelper {
 
     public abstract void checkoutAllModifiedFilesInSubmodules();
 
-    public abstract int getSubModuleCommitCount(String subModuleFolder);
+    public int getSubModuleCommitCount(String subModuleFolder) {
+        return commitCount(subModuleFolder);
+    }
+
+    private int commitCount(String subModuleFolder) {
+        File repositoryDir = subModuleFolder == null ? workingDir : new File(workingDir, subModuleFolder);
+        String tip = headCommit(subModuleFolder);
+        if (new File(GitDirs.resolve(repositoryDir), "shallow").exists()) {
+            // deepening a shallow clone changes the count without moving the tip
+            return countCommits(subModuleFolder, tip);
+        }
+        CommitCountCache.Count known = CommitCountCache.get(repositoryDir);
+        if (known != null && known.tip.equals(tip)) {
+            return known.count;
+        }
+        int count = -1;
+        if (known != null) {
+            try {
+                int[] divergence = countDivergence(subModuleFolder, known.tip, tip);
+                count = known.count - divergence[0] + divergence[1];
+            } catch (CancellationException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                // the known tip is gone, e.g. after a force-push and gc
+            }
+        }
+        if (count < 0) {
+            count = countCommits(subModuleFolder, tip);
+        }
+        CommitCountCache.put(repositoryDir, tip, count);
+        return count;
+    }
+
+    /**
+     * @param subModuleFolder {@code null} for the working directory itself
+     * @return the SHA of the commit HEAD points to
+     */
+    protected abstract String headCommit(String subModuleFolder);
+
+    /**
+     * Counts the commits reachable from {@code tip}, using the commit-graph and pack bitmaps where they exist.
+     */
+    protected abstract int countCommits(String subModuleFolder, String tip);
+
+    /**
+     * @return the number of commits reachable only from {@code from} and the number reachable only from {@code to}, as
+     * {@code git rev-list --count --left-right from...to} reports them
+     */
+    protected abstract int[] countDivergence(String subModuleFolder, String from, String to);
 
     public void updateSubmoduleWithInit() {
         stdOut.consumeLine("[GIT] Updating git sub-modules");
 
-        submoduleInit();
+        inPhase(GitPhase.SUBMODULE_INIT, attributes(), this::submoduleInit);
 
-        submoduleSync();
+        inPhase(GitPhase.SUBMODULE_SYNC, attributes(), this::submoduleSync);
 
-        submoduleUpdate();
+        cancellationToken.throwIfCancelled();
+        inPhase(GitPhase.SUBMODULE_UPDATE, attributes(), this::submoduleUpdate);
 
         stdOut.consumeLine("[GIT] Cleaning unversioned files and sub-modules");
         printSubmoduleStatus();
@@ -178,4 +628,11 @@ public abstract class GitHelper {
     public abstract void changeSubmoduleUrl(String submoduleName, String newUrl);
 
     public abstract void push();
+
+    /**
+     * Releases resources kept between calls, such as open repositories. The helper can still be used afterwards.
+     */
+    @Override
+    public void close() {
+    }
 }
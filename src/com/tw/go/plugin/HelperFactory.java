@@ -4,10 +4,32 @@ import com.tw.go.plugin.cmd.ProcessOutputStreamConsumer;
 import com.tw.go.plugin.git.GitCmdHelper;
 import com.tw.go.plugin.jgit.JGitHelper;
 import com.tw.go.plugin.model.GitConfig;
+import com.tw.go.plugin.util.StringUtil;
 
 import java.io.File;
 
 public class HelperFactory {
+    private static volatile File mirrorsDirectory;
+    private static volatile long mirrorFreshForMillis = LocalMirror.DEFAULT_FRESH_FOR_MILLIS;
+
+    /**
+     * Makes the helpers created from now on keep one bare {@link LocalMirror} per repository URL in {@code directory},
+     * and clone their working directories from it, so that materials on the same URL share its objects and its fetches.
+     * {@code null}, the default, clones every working directory from the remote.
+     */
+    public static void setMirrorsDirectory(File directory) {
+        setMirrorsDirectory(directory, LocalMirror.DEFAULT_FRESH_FOR_MILLIS);
+    }
+
+    /**
+     * As {@link #setMirrorsDirectory(File)}, with a fetch of a mirror also serving the requests for it that come within
+     * {@code freshForMillis} after it started, see {@link LocalMirror#setFreshForMillis(long)}.
+     */
+    public static void setMirrorsDirectory(File directory, long freshForMillis) {
+        mirrorFreshForMillis = freshForMillis;
+        mirrorsDirectory = directory;
+    }
+
     public static GitHelper git(GitConfig gitConfig, File workingDirectory, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr) {
         GitHelper gitCmd = gitCmd(gitConfig, workingDirectory, stdOut, stdErr);
         if (isAvailable(gitCmd))
@@ -17,11 +39,11 @@ public class HelperFactory {
     }
 
     public static GitHelper gitCmd(GitConfig gitConfig, File workingDirectory, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr) {
-        return new GitCmdHelper(gitConfig, workingDirectory, stdOut, stdErr);
+        return mirrored(new GitCmdHelper(gitConfig, workingDirectory, stdOut, stdErr), gitConfig);
     }
 
     public static GitHelper jGit(GitConfig gitConfig, File workingDirectory, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr) {
-        return new JGitHelper(gitConfig, workingDirectory, stdOut, stdErr);
+        return mirrored(new JGitHelper(gitConfig, workingDirectory, stdOut, stdErr), gitConfig);
     }
 
     public static GitHelper git(GitConfig gitConfig, File workingDirectory) {
@@ -33,11 +55,21 @@ public class HelperFactory {
     }
 
     public static GitHelper gitCmd(GitConfig gitConfig, File workingDirectory) {
-        return new GitCmdHelper(gitConfig, workingDirectory);
+        return mirrored(new GitCmdHelper(gitConfig, workingDirectory), gitConfig);
     }
 
     public static GitHelper jGit(GitConfig gitConfig, File workingDirectory) {
-        return new JGitHelper(gitConfig, workingDirectory);
+        return mirrored(new JGitHelper(gitConfig, workingDirectory), gitConfig);
+    }
+
+    private static GitHelper mirrored(GitHelper helper, GitConfig gitConfig) {
+        File directory = mirrorsDirectory;
+        if (directory != null && gitConfig != null && !StringUtil.isEmpty(gitConfig.getUrl())) {
+            LocalMirror mirror = LocalMirror.of(directory, gitConfig.getUrl(), gitConfig.getUsername());
+            mirror.setFreshForMillis(mirrorFreshForMillis);
+            helper.setMirror(mirror);
+        }
+        return helper;
     }
 
     private static boolean isAvailable(GitHelper gitCmd) {
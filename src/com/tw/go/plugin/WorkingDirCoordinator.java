@@ -0,0 +1,187 @@
+package com.tw.go.plugin;
+
+import com.tw.go.plugin.cmd.CancellationToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps concurrent {@code cloneOrFetch} calls on one working directory from racing on {@code index.lock} or deleting
+ * each other's clone:
+ * <ul>
+ * <li>a call made while another for the same directory and flight is in flight waits for it and shares its outcome
+ * instead of fetching again; if that one was cancelled, the waiting call runs its own</li>
+ * <li>other calls take turns, holding an in-JVM lock and then a file lock next to the working directory
+ * ({@code .name.lock}) that other processes using this library respect</li>
+ * </ul>
+ * Directories are told apart by their canonical path, so spellings through symbolic links share flights and locks.
+ * Waiting calls stop with a {@link CancellationException} when their own token is cancelled.
+ */
+class WorkingDirCoordinator {
+    static final long WAIT_CHECK_MILLIS = 100;
+
+    private static final Map<String, CompletableFuture<Void>> flights = new HashMap<>();
+    private static final Map<String, DirectoryLock> locks = new HashMap<>();
+
+    /**
+     * @param flight what the call does, such as the ref spec, URL and branch of a fetch; only calls with equal flights
+     *               share an outcome
+     */
+    static void run(File workingDir, String flight, CancellationToken cancellationToken, Runnable body) {
+        File directory = canonical(workingDir);
+        String key = directory.getPath() + '\0' + (flight == null ? "" : flight);
+        while (true) {
+            CompletableFuture<Void> outcome;
+            boolean leader = false;
+            synchronized (flights) {
+                outcome = flights.get(key);
+                if (outcome == null) {
+                    outcome = new CompletableFuture<>();
+                    flights.put(key, outcome);
+                    leader = true;
+                }
+            }
+            if (leader) {
+                lead(directory, key, outcome, cancellationToken, body);
+                return;
+            }
+            Throwable failure = await(outcome, cancellationToken);
+            if (failure == null) {
+                return;
+            }
+            if (!(failure instanceof CancellationException)) {
+                throw new RuntimeException(String.format("Concurrent clone or fetch of %s failed", directory), failure);
+            }
+        }
+    }
+
+    // the directory need not exist yet; getCanonicalFile resolves the links of the part that does
+    private static File canonical(File workingDir) {
+        try {
+            return workingDir.getCanonicalFile();
+        } catch (IOException e) {
+            return workingDir.getAbsoluteFile().toPath().normalize().toFile();
+        }
+    }
+
+    private static void lead(File directory, String key, CompletableFuture<Void> flight, CancellationToken cancellationToken, Runnable body) {
+        Throwable failure = null;
+        try {
+            exclusively(directory, cancellationToken, body);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            // later calls start a flight of their own
+            synchronized (flights) {
+                flights.remove(key);
+            }
+            if (failure == null) {
+                flight.complete(null);
+            } else {
+                flight.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static Throwable await(CompletableFuture<Void> flight, CancellationToken cancellationToken) {
+        while (true) {
+            cancellationToken.throwIfCancelled();
+            try {
+                flight.get(WAIT_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                return null;
+            } catch (ExecutionException e) {
+                return e.getCause();
+            } catch (TimeoutException ignore) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("interrupted while waiting for a concurrent clone or fetch");
+            }
+        }
+    }
+
+    private static void exclusively(File directory, CancellationToken cancellationToken, Runnable body) {
+        DirectoryLock lock;
+        synchronized (locks) {
+            lock = locks.computeIfAbsent(directory.getPath(), path -> new DirectoryLock());
+            lock.users++;
+        }
+        try {
+            acquire(lock.lock, cancellationToken);
+            try {
+                FileChannel channel = lockFile(directory, cancellationToken);
+                try {
+                    body.run();
+                } finally {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(String.format("Could not lock working directory %s", directory), e);
+            } finally {
+                lock.lock.unlock();
+            }
+        } finally {
+            synchronized (locks) {
+                if (--lock.users == 0) {
+                    locks.remove(directory.getPath());
+                }
+            }
+        }
+    }
+
+    private static void acquire(ReentrantLock lock, CancellationToken cancellationToken) {
+        try {
+            while (!lock.tryLock(WAIT_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                cancellationToken.throwIfCancelled();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for the working directory lock");
+        }
+    }
+
+    // closing the channel releases the lock; the lock file is left in place, as deleting it would let another process
+    // lock a file nobody else sees
+    private static FileChannel lockFile(File directory, CancellationToken cancellationToken) throws IOException {
+        File parent = directory.getParentFile();
+        if (parent == null) {
+            parent = directory;
+        }
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Could not create " + parent);
+        }
+        File lockFile = new File(parent, "." + directory.getName() + ".lock");
+        FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            while (true) {
+                if (channel.tryLock() != null) {
+                    return channel;
+                }
+                cancellationToken.throwIfCancelled();
+                Thread.sleep(WAIT_CHECK_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            channel.close();
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for " + lockFile);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static class DirectoryLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        private int users;
+    }
+}
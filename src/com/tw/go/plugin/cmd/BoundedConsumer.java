@@ -0,0 +1,267 @@
+package com.tw.go.plugin.cmd;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A {@link StreamConsumer} with a bounded memory footprint. It keeps the first {@code headLines} and the last
+ * {@code tailLines} lines and counts what was dropped in between: {@link #asList()} returns the kept lines only and
+ * {@link #omittedLines()} says how many are missing after the head, while {@link #toString()} renders the window with
+ * an omission marker.
+ * <p>
+ * In spill mode the lines after the head are also appended to a temporary file whose line offsets are kept in memory,
+ * and {@link #asList()} reads the complete output back lazily with constant-time {@code get}. The file is deleted on
+ * {@link #close()}, or once neither the consumer nor a list it returned is reachable.
+ */
+public class BoundedConsumer implements StreamConsumer, Closeable {
+    public static final int DEFAULT_HEAD_LINES = 1000;
+    public static final int DEFAULT_TAIL_LINES = 100;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final int headLines;
+    private final int tailLines;
+    private final boolean spillToDisk;
+    private final List<String> head = new ArrayList<>();
+    private final Deque<String> tail = new ArrayDeque<>();
+    private int lineCount;
+    private SpillFile spillFile;
+    private Cleaner.Cleanable cleanable;
+
+    public BoundedConsumer() {
+        this(DEFAULT_HEAD_LINES, DEFAULT_TAIL_LINES, false);
+    }
+
+    public BoundedConsumer(int headLines, int tailLines) {
+        this(headLines, tailLines, false);
+    }
+
+    public BoundedConsumer(int headLines, int tailLines, boolean spillToDisk) {
+        this.headLines = headLines;
+        this.tailLines = tailLines;
+        this.spillToDisk = spillToDisk;
+    }
+
+    public static BoundedConsumer spilling() {
+        return new BoundedConsumer(DEFAULT_HEAD_LINES, DEFAULT_TAIL_LINES, true);
+    }
+
+    @Override
+    public synchronized void consumeLine(String line) {
+        lineCount++;
+        if (head.size() < headLines) {
+            head.add(line);
+            return;
+        }
+        if (tailLines > 0) {
+            if (tail.size() == tailLines) {
+                tail.removeFirst();
+            }
+            tail.addLast(line);
+        }
+        if (spillToDisk) {
+            spill(line);
+        }
+    }
+
+    /**
+     * The output as far as it was kept: complete in spill mode, otherwise the head followed directly by the tail, with
+     * {@link #omittedLines()} lines missing in between.
+     */
+    @Override
+    public synchronized List<String> asList() {
+        if (spillFile != null) {
+            return new SpilledLines(new ArrayList<>(head), lineCount);
+        }
+        List<String> lines = new ArrayList<>(head);
+        lines.addAll(tail);
+        return lines;
+    }
+
+    public synchronized int lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * The number of lines missing from {@link #asList()}, between the head and the tail.
+     */
+    @Override
+    public synchronized int omittedLines() {
+        return spillFile != null ? 0 : windowOmittedLines();
+    }
+
+    @Override
+    public synchronized String toString() {
+        List<String> window = new ArrayList<>(head);
+        if (windowOmittedLines() > 0) {
+            window.add(omissionMarker(windowOmittedLines()));
+        }
+        window.addAll(tail);
+        return String.join(System.lineSeparator(), window);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (cleanable != null) {
+            cleanable.clean();
+        }
+    }
+
+    static String omissionMarker(int omittedLines) {
+        return String.format("... %d lines omitted ...", omittedLines);
+    }
+
+    private int windowOmittedLines() {
+        return lineCount - head.size() - tail.size();
+    }
+
+    private void spill(String line) {
+        try {
+            if (spillFile == null) {
+                spillFile = new SpillFile(Files.createTempFile("git-cmd-output", ".lines"));
+                cleanable = CLEANER.register(this, spillFile);
+            }
+            spillFile.write(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // an inner class, so the consumer and with it the spill file stay alive as long as the list (or an iterator of it)
+    private class SpilledLines extends AbstractList<String> implements RandomAccess {
+        private final List<String> head;
+        private final int size;
+
+        private SpilledLines(List<String> head, int size) {
+            this.head = head;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            return index < head.size() ? head.get(index) : spillFile.read(index - head.size());
+        }
+    }
+
+    /**
+     * Lines are written back to back; their start offsets are indexed as they are written, so any line is read with one
+     * positional read, and sequential reads are served from a read-ahead buffer. No stream stays open between reads.
+     */
+    private static class SpillFile implements Runnable {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final Path path;
+        private FileChannel channel;
+        private final ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long readBufferStart = -1;
+        private long[] offsets = new long[1024];
+        private int lines;
+        private long length;
+        private long flushed;
+
+        private SpillFile(Path path) throws IOException {
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        private synchronized void write(String line) throws IOException {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            if (lines == offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[lines++] = length;
+            length += bytes.length;
+            if (bytes.length > writeBuffer.remaining()) {
+                flush();
+            }
+            if (bytes.length > writeBuffer.capacity()) {
+                writeFully(ByteBuffer.wrap(bytes));
+            } else {
+                writeBuffer.put(bytes);
+            }
+        }
+
+        private void flush() throws IOException {
+            writeBuffer.flip();
+            writeFully(writeBuffer);
+            writeBuffer.clear();
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer, flushed);
+            }
+        }
+
+        private synchronized String read(int line) {
+            long start = offsets[line];
+            long end = line + 1 < lines ? offsets[line + 1] : length;
+            int size = (int) (end - start);
+            try {
+                if (channel == null) {
+                    throw new IOException("Spilled output was deleted: " + path);
+                }
+                if (flushed < length) {
+                    flush();
+                }
+                if (size > readBuffer.capacity()) {
+                    ByteBuffer bytes = ByteBuffer.allocate(size);
+                    readFully(bytes, start);
+                    return new String(bytes.array(), StandardCharsets.UTF_8);
+                }
+                if (readBufferStart < 0 || start < readBufferStart || end > readBufferStart + readBuffer.limit()) {
+                    readBuffer.clear();
+                    readBuffer.limit((int) Math.min(readBuffer.capacity(), length - start));
+                    readFully(readBuffer, start);
+                    readBufferStart = start;
+                }
+                return new String(readBuffer.array(), (int) (start - readBufferStart), size, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void readFully(ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Spilled output was truncated: " + path);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void run() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                Files.deleteIfExists(path);
+            } catch (IOException ignore) {
+            }
+            channel = null;
+        }
+    }
+}
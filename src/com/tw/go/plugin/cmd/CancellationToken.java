@@ -0,0 +1,44 @@
+package com.tw.go.plugin.cmd;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Cooperative cancellation of a git operation. {@link #cancel()} may be called from any thread: running commands are
+ * terminated through their registered callbacks and the next {@link #throwIfCancelled()} check stops the pipeline.
+ */
+public class CancellationToken {
+    private final List<Runnable> callbacks = new CopyOnWriteArrayList<>();
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("git operation cancelled");
+        }
+    }
+
+    /**
+     * Runs {@code callback} on cancellation, immediately if the token is already cancelled.
+     *
+     * @return a handle that unregisters the callback when closed
+     */
+    public AutoCloseable onCancel(Runnable callback) {
+        callbacks.add(callback);
+        if (cancelled && callbacks.remove(callback)) {
+            callback.run();
+        }
+        return () -> callbacks.remove(callback);
+    }
+}
@@ -0,0 +1,47 @@
+package com.tw.go.plugin.cmd;
+
+/**
+ * Filled in by {@link Console} as a command runs, including when it fails, for callers that record metrics.
+ */
+public class CommandStats {
+    private int exitCode = -1;
+    private long stdOutBytes;
+    private long stdErrBytes;
+    private long durationNanos;
+
+    /**
+     * The exit code, or -1 if the command could not be started or was terminated before it reported one.
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public long getStdOutBytes() {
+        return stdOutBytes;
+    }
+
+    public long getStdErrBytes() {
+        return stdErrBytes;
+    }
+
+    public long getOutputBytes() {
+        return stdOutBytes + stdErrBytes;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    void exited(int exitCode) {
+        this.exitCode = exitCode;
+    }
+
+    void read(long stdOutBytes, long stdErrBytes) {
+        this.stdOutBytes = stdOutBytes;
+        this.stdErrBytes = stdErrBytes;
+    }
+
+    void finished(long durationNanos) {
+        this.durationNanos = durationNanos;
+    }
+}
@@ -1,11 +1,12 @@
 package com.tw.go.plugin.cmd;
 
 import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.Executor;
-import org.apache.commons.exec.PumpStreamHandler;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class Console {
     public static CommandLine createCommand(String... args) {
@@ -15,21 +16,75 @@ public class Console {
     }
 
     public static ConsoleResult runOrBomb(CommandLine commandLine, File workingDir, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr) {
-        Executor executor = new DefaultExecutor();
-        executor.setStreamHandler(new PumpStreamHandler(stdOut, stdErr));
-        if (workingDir != null) {
-            executor.setWorkingDirectory(workingDir);
-        }
+        return runOrBomb(commandLine, workingDir, stdOut, stdErr, 0, null);
+    }
 
+    /**
+     * @param timeoutSeconds zero or less for no timeout
+     * @param token          may be {@code null}
+     */
+    public static ConsoleResult runOrBomb(CommandLine commandLine, File workingDir, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr, long timeoutSeconds, CancellationToken token) {
+        return runOrBomb(commandLine, workingDir, stdOut, stdErr, timeoutSeconds, token, null);
+    }
+
+    /**
+     * @param stats filled in even when the command fails; may be {@code null}
+     */
+    public static ConsoleResult runOrBomb(CommandLine commandLine, File workingDir, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr, long timeoutSeconds, CancellationToken token, CommandStats stats) {
+        int exitCode;
         try {
-            int exitCode = executor.execute(commandLine);
-            return new ConsoleResult(exitCode, stdOut.output(), stdErr.output());
+            exitCode = ProcessLauncher.defaultLauncher().run(commandLine, workingDir, stdOut, stdErr, TimeUnit.SECONDS.toMillis(timeoutSeconds), token, stats);
+        } catch (CancellationException e) {
+            throw cancelled(commandLine, workingDir);
+        } catch (TimeoutException e) {
+            throw new RuntimeException(getMessage(String.format("Exception (%s)", e.getMessage()), commandLine, workingDir), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(getMessage("Interrupted", commandLine, workingDir), e);
         } catch (Exception e) {
             throw new RuntimeException(getMessage(String.format("Exception (%s)", e.getMessage()), commandLine, workingDir), e);
         }
+        if (exitCode != 0) {
+            throw new RuntimeException(getMessage(String.format("Exception (Process exited with an error: %s)", exitCode), commandLine, workingDir));
+        }
+        return new ConsoleResult(exitCode, stdOut, stdErr);
+    }
+
+    public static ConsoleStream stream(CommandLine commandLine, File workingDir, ProcessOutputStreamConsumer stdErr) {
+        return stream(commandLine, workingDir, stdErr, 0, null, null);
+    }
+
+    /**
+     * @param timeoutSeconds zero or less for no timeout; it covers the command from start until the stream is closed
+     * @param token          may be {@code null}
+     * @param stats          filled in when the stream is closed; may be {@code null}
+     */
+    public static ConsoleStream stream(CommandLine commandLine, File workingDir, ProcessOutputStreamConsumer stdErr, long timeoutSeconds, CancellationToken token, CommandStats stats) {
+        if (token != null && token.isCancelled()) {
+            throw cancelled(commandLine, workingDir);
+        }
+        Process process = start(commandLine, workingDir, ProcessBuilder.Redirect.PIPE);
+        try {
+            process.getOutputStream().close();
+        } catch (IOException ignore) {
+        }
+        ProcessWatchdog watchdog = ProcessWatchdog.watch(process, TimeUnit.SECONDS.toMillis(timeoutSeconds), token);
+        return new ConsoleStream(commandLine, workingDir, process, ProcessLauncher.defaultLauncher().pump(process.getErrorStream(), stdErr), watchdog, stats);
+    }
+
+    public static Process start(CommandLine commandLine, File workingDir, ProcessBuilder.Redirect stdErr) {
+        try {
+            return ProcessLauncher.defaultLauncher().start(commandLine, workingDir, stdErr);
+        } catch (IOException e) {
+            throw new RuntimeException(getMessage(String.format("Exception (%s)", e.getMessage()), commandLine, workingDir), e);
+        }
+    }
+
+    static CancellationException cancelled(CommandLine commandLine, File workingDir) {
+        return new CancellationException(getMessage("Cancelled", commandLine, workingDir));
     }
 
-    private static String getMessage(String type, CommandLine commandLine, File workingDir) {
+    static String getMessage(String type, CommandLine commandLine, File workingDir) {
         return String.format("%s Occurred: %s - %s", type, commandLine.toString(), workingDir);
     }
 }
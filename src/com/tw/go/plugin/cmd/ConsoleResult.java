@@ -1,11 +1,23 @@
 package com.tw.go.plugin.cmd;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
-public class ConsoleResult {
+/**
+ * The outcome of a command run by {@link Console}. Output that was spilled to disk stays readable until the result is
+ * closed, or is no longer reachable.
+ */
+public class ConsoleResult implements Closeable {
+    static final int EXCERPT_HEAD_LINES = 20;
+    static final int EXCERPT_TAIL_LINES = 20;
+
     private final int exitCode;
-    private final List<String> stdOut;
-    private final List<String> stdErr;
+    private ProcessOutputStreamConsumer stdOutConsumer;
+    private ProcessOutputStreamConsumer stdErrConsumer;
+    private List<String> stdOut;
+    private List<String> stdErr;
 
     public ConsoleResult(int exitCode, List<String> stdOut, List<String> stdErr) {
         this.exitCode = exitCode;
@@ -13,15 +25,93 @@ public class ConsoleResult {
         this.stdErr = stdErr;
     }
 
+    // the consumers are only copied when the output is asked for; most callers never look at it
+    ConsoleResult(int exitCode, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr) {
+        this.exitCode = exitCode;
+        this.stdOutConsumer = stdOut;
+        this.stdErrConsumer = stdErr;
+    }
+
     public int exitCode() {
         return exitCode;
     }
 
-    public List<String> stdOut() {
+    public synchronized List<String> stdOut() {
+        if (stdOut == null && stdOutConsumer != null) {
+            stdOut = stdOutConsumer.output();
+        }
         return stdOut;
     }
 
-    public List<String> stdErr() {
+    public synchronized List<String> stdErr() {
+        if (stdErr == null && stdErrConsumer != null) {
+            stdErr = stdErrConsumer.output();
+        }
         return stdErr;
     }
+
+    /**
+     * The number of lines a bounded consumer left out of the middle of {@link #stdOut()}.
+     */
+    public int stdOutOmittedLines() {
+        return stdOutConsumer == null ? 0 : stdOutConsumer.omittedLines();
+    }
+
+    public int stdErrOmittedLines() {
+        return stdErrConsumer == null ? 0 : stdErrConsumer.omittedLines();
+    }
+
+    public String stdOutExcerpt() {
+        return excerpt(stdOut(), stdOutOmittedLines());
+    }
+
+    public String stdErrExcerpt() {
+        return excerpt(stdErr(), stdErrOmittedLines());
+    }
+
+    /**
+     * Deletes spilled output; the lists returned by {@link #stdOut()} and {@link #stdErr()} must not be read after.
+     */
+    @Override
+    public void close() {
+        for (ProcessOutputStreamConsumer consumer : new ProcessOutputStreamConsumer[]{stdOutConsumer, stdErrConsumer}) {
+            try {
+                if (consumer != null) {
+                    consumer.close();
+                }
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * Joins the first and last lines of the output for an error message, leaving out the middle of long outputs.
+     */
+    public static String excerpt(List<String> lines) {
+        return excerpt(lines, 0);
+    }
+
+    /**
+     * As {@link #excerpt(List)}, for output that already misses {@code omittedLines} lines from its middle.
+     */
+    public static String excerpt(List<String> lines, int omittedLines) {
+        if (lines == null) {
+            return "";
+        }
+        int size = lines.size();
+        if (size <= EXCERPT_HEAD_LINES + EXCERPT_TAIL_LINES && omittedLines == 0) {
+            return String.join(System.lineSeparator(), lines);
+        }
+        List<String> excerpt = new ArrayList<>(EXCERPT_HEAD_LINES + EXCERPT_TAIL_LINES + 1);
+        int index = 0;
+        for (String line : lines) {
+            if (index < EXCERPT_HEAD_LINES || index >= size - EXCERPT_TAIL_LINES) {
+                excerpt.add(line);
+            } else if (index == EXCERPT_HEAD_LINES) {
+                excerpt.add(BoundedConsumer.omissionMarker(size - EXCERPT_HEAD_LINES - EXCERPT_TAIL_LINES + omittedLines));
+            }
+            index++;
+        }
+        return String.join(System.lineSeparator(), excerpt);
+    }
 }
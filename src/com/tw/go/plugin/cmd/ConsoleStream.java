@@ -0,0 +1,104 @@
+package com.tw.go.plugin.cmd;
+
+import org.apache.commons.exec.CommandLine;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A running command whose stdout is read incrementally by the caller instead of being collected into a
+ * {@link ConsoleResult}. Closing the stream waits for the command and bombs on a non-zero exit code, unless the caller
+ * stopped reading early, in which case the command is destroyed.
+ */
+public class ConsoleStream implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CommandLine commandLine;
+    private final File workingDir;
+    private final Process process;
+    private final Future<Long> stdErrPump;
+    private final ProcessWatchdog watchdog;
+    private final CommandStats stats;
+    private final long start = System.nanoTime();
+    private long stdOutBytes;
+    private final InputStream stdOut;
+    private boolean exhausted;
+    private boolean closed;
+
+    ConsoleStream(CommandLine commandLine, File workingDir, Process process, Future<Long> stdErrPump, ProcessWatchdog watchdog, CommandStats stats) {
+        this.commandLine = commandLine;
+        this.workingDir = workingDir;
+        this.process = process;
+        this.stdErrPump = stdErrPump;
+        this.watchdog = watchdog;
+        this.stats = stats;
+        this.stdOut = new FilterInputStream(new BufferedInputStream(process.getInputStream(), BUFFER_SIZE)) {
+            @Override
+            public int read() throws IOException {
+                int read = super.read();
+                exhaustedAt(read == -1 ? -1 : 1);
+                return read;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return exhaustedAt(super.read(b, off, len));
+            }
+        };
+    }
+
+    private int exhaustedAt(int read) {
+        if (read == -1) {
+            exhausted = true;
+        } else {
+            stdOutBytes += read;
+        }
+        return read;
+    }
+
+    public InputStream stdOut() {
+        return stdOut;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!exhausted) {
+            ProcessWatchdog.destroyTree(process);
+        }
+        try {
+            stdOut.close();
+            int exitCode = process.waitFor();
+            long stdErrBytes = ProcessLauncher.await(stdErrPump);
+            if (stats != null) {
+                stats.exited(exitCode);
+                stats.read(stdOutBytes, stdErrBytes);
+                stats.finished(System.nanoTime() - start);
+            }
+            watchdog.check();
+            if (exhausted && exitCode != 0) {
+                throw new RuntimeException(Console.getMessage(String.format("Exception (Process exited with an error: %s)", exitCode), commandLine, workingDir));
+            }
+        } catch (CancellationException e) {
+            throw Console.cancelled(commandLine, workingDir);
+        } catch (IOException | TimeoutException e) {
+            throw new RuntimeException(Console.getMessage(String.format("Exception (%s)", e.getMessage()), commandLine, workingDir), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ProcessWatchdog.destroyTree(process);
+            throw new RuntimeException(Console.getMessage("Interrupted", commandLine, workingDir), e);
+        } finally {
+            watchdog.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.tw.go.plugin.cmd;
+
+import org.apache.commons.exec.CommandLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Starts commands with {@link ProcessBuilder}. Stdout of {@link #run} is split into lines on the calling thread and
+ * only stderr is pumped in the background, on virtual threads where the JVM has them and on a shared daemon pool
+ * otherwise, so a command costs at most one borrowed thread.
+ */
+public class ProcessLauncher {
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final ProcessLauncher DEFAULT = new ProcessLauncher(defaultPumps());
+
+    private final ExecutorService pumps;
+
+    /**
+     * @param pumps executor running the stderr pumps
+     */
+    ProcessLauncher(ExecutorService pumps) {
+        this.pumps = pumps;
+    }
+
+    public static ProcessLauncher defaultLauncher() {
+        return DEFAULT;
+    }
+
+    public Process start(CommandLine commandLine, File workingDir, ProcessBuilder.Redirect stdErr) throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(commandLine.toStrings()).redirectError(stdErr);
+        if (workingDir != null) {
+            processBuilder.directory(workingDir);
+        }
+        return processBuilder.start();
+    }
+
+    public int run(CommandLine commandLine, File workingDir, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr) throws IOException, InterruptedException, TimeoutException {
+        return run(commandLine, workingDir, stdOut, stdErr, 0, null, null);
+    }
+
+    /**
+     * @param timeoutMillis zero or less for no timeout
+     * @param token         may be {@code null}
+     * @param stats         filled in even when the command fails; may be {@code null}
+     * @throws TimeoutException      when the watchdog terminated the command after {@code timeoutMillis}
+     * @throws CancellationException when the command was terminated because {@code token} was cancelled
+     */
+    public int run(CommandLine commandLine, File workingDir, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr, long timeoutMillis, CancellationToken token, CommandStats stats) throws IOException, InterruptedException, TimeoutException {
+        if (token != null) {
+            token.throwIfCancelled();
+        }
+        long start = System.nanoTime();
+        Process process = start(commandLine, workingDir, ProcessBuilder.Redirect.PIPE);
+        long stdOutBytes = 0;
+        long stdErrBytes = 0;
+        try (ProcessWatchdog watchdog = ProcessWatchdog.watch(process, timeoutMillis, token)) {
+            process.getOutputStream().close();
+            Future<Long> stdErrPump = pump(process.getErrorStream(), stdErr);
+            stdOutBytes = pumpLines(process.getInputStream(), stdOut);
+            int exitCode = process.waitFor();
+            stdErrBytes = await(stdErrPump);
+            if (stats != null) {
+                stats.exited(exitCode);
+            }
+            watchdog.check();
+            return exitCode;
+        } finally {
+            if (process.isAlive()) {
+                ProcessWatchdog.destroyTree(process);
+            }
+            if (stats != null) {
+                stats.read(stdOutBytes, stdErrBytes);
+                stats.finished(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes pumped, once the stream is exhausted
+     */
+    public Future<Long> pump(InputStream input, ProcessOutputStreamConsumer consumer) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return pumpLines(input, consumer);
+            } catch (IOException ignore) {
+                // the process went away; whatever was read has been consumed
+                return 0L;
+            }
+        }, pumps);
+    }
+
+    static long await(Future<Long> pump) throws InterruptedException {
+        try {
+            return pump.get();
+        } catch (ExecutionException ignore) {
+            return 0;
+        }
+    }
+
+    /**
+     * Splits the stream into lines the way commons-exec's {@code LogOutputStream} does: {@code \n}, {@code \r} and
+     * {@code \r\n} end a line. Lines are decoded as UTF-8 straight from the read buffer.
+     *
+     * @return the number of bytes read
+     */
+    static long pumpLines(InputStream input, ProcessOutputStreamConsumer consumer) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] line = new byte[BUFFER_SIZE];
+        int lineLength = 0;
+        long total = 0;
+        boolean skip = false;
+        int read;
+        try (InputStream in = input) {
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n' || b == '\r') {
+                        if (!skip) {
+                            consumer.consumeLine(new String(line, 0, lineLength, StandardCharsets.UTF_8));
+                            lineLength = 0;
+                        }
+                    } else {
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, line.length * 2);
+                        }
+                        line[lineLength++] = b;
+                    }
+                    skip = b == '\r';
+                }
+            }
+        } finally {
+            if (lineLength > 0) {
+                consumer.consumeLine(new String(line, 0, lineLength, StandardCharsets.UTF_8));
+            }
+        }
+        return total;
+    }
+
+    private static ExecutorService defaultPumps() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "git-cmd-pump");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
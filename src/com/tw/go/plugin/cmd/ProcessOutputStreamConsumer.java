@@ -2,6 +2,8 @@ package com.tw.go.plugin.cmd;
 
 import org.apache.commons.exec.LogOutputStream;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.List;
 
 public class ProcessOutputStreamConsumer extends LogOutputStream {
@@ -19,6 +21,21 @@ public class ProcessOutputStreamConsumer extends LogOutputStream {
         return streamConsumer.asList();
     }
 
+    public int omittedLines() {
+        return streamConsumer.omittedLines();
+    }
+
+    /**
+     * Also closes the stream consumer, which releases whatever backs {@link #output()}.
+     */
+    @Override
+    public void close() throws IOException {
+        super.close();
+        if (streamConsumer instanceof Closeable) {
+            ((Closeable) streamConsumer).close();
+        }
+    }
+
     @Override
     protected void processLine(String line, int level) {
         consumeLine(line);
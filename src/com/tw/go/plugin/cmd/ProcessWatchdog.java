@@ -0,0 +1,100 @@
+package com.tw.go.plugin.cmd;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Terminates a command's process tree when it runs longer than its timeout or when its {@link CancellationToken} is
+ * cancelled. git hands network work to child processes (remote helpers, ssh), so the descendants are terminated along
+ * with git itself; otherwise they would keep the output pipes open and the reader blocked.
+ */
+public class ProcessWatchdog implements AutoCloseable {
+    static final long KILL_GRACE_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "git-cmd-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Process process;
+    private final long timeoutMillis;
+    private final ScheduledFuture<?> timeout;
+    private final AutoCloseable cancellation;
+    private volatile boolean timedOut;
+    private volatile boolean cancelled;
+
+    private ProcessWatchdog(Process process, long timeoutMillis, CancellationToken token) {
+        this.process = process;
+        this.timeoutMillis = timeoutMillis;
+        this.timeout = timeoutMillis > 0 ? timer.schedule(this::timeOut, timeoutMillis, TimeUnit.MILLISECONDS) : null;
+        this.cancellation = token != null ? token.onCancel(this::cancel) : null;
+    }
+
+    /**
+     * @param timeoutMillis zero or less for no timeout
+     * @param token         may be {@code null}
+     */
+    public static ProcessWatchdog watch(Process process, long timeoutMillis, CancellationToken token) {
+        return new ProcessWatchdog(process, timeoutMillis, token);
+    }
+
+    private void timeOut() {
+        timedOut = true;
+        destroyTree(process);
+    }
+
+    private void cancel() {
+        cancelled = true;
+        destroyTree(process);
+    }
+
+    /**
+     * Reports why the watchdog terminated the process, if it did.
+     */
+    public void check() throws TimeoutException {
+        if (cancelled) {
+            throw new CancellationException("git operation cancelled");
+        }
+        if (timedOut) {
+            throw new TimeoutException(String.format("Timed out after %s seconds", TimeUnit.MILLISECONDS.toSeconds(timeoutMillis)));
+        }
+    }
+
+    @Override
+    public void close() {
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        if (cancellation != null) {
+            try {
+                cancellation.close();
+            } catch (Exception ignore) {
+            }
+        }
+    }
+
+    /**
+     * Asks the process and its descendants to terminate and kills whatever is still alive after a grace period.
+     */
+    public static void destroyTree(Process process) {
+        List<ProcessHandle> tree = process.descendants().collect(Collectors.toList());
+        tree.add(0, process.toHandle());
+        for (ProcessHandle handle : tree) {
+            handle.destroy();
+        }
+        timer.schedule(() -> {
+            for (ProcessHandle handle : tree) {
+                if (handle.isAlive()) {
+                    handle.destroyForcibly();
+                }
+            }
+        }, KILL_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+}
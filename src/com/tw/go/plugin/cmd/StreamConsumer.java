@@ -6,4 +6,11 @@ public interface StreamConsumer {
     void consumeLine(String line);
 
     List<String> asList();
+
+    /**
+     * The number of consumed lines missing from {@link #asList()}, for consumers that bound what they keep.
+     */
+    default int omittedLines() {
+        return 0;
+    }
 }
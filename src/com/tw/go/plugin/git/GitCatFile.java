@@ -0,0 +1,264 @@
+package com.tw.go.plugin.git;
+
+import com.tw.go.plugin.cmd.CancellationToken;
+import com.tw.go.plugin.cmd.Console;
+import com.tw.go.plugin.cmd.InMemoryConsumer;
+import com.tw.go.plugin.cmd.ProcessOutputStreamConsumer;
+import com.tw.go.plugin.cmd.ProcessWatchdog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A long-lived {@code git cat-file --batch} (or {@code --batch-check}) process answering object lookups over its
+ * stdin/stdout. The process is started on first use and restarted once if it has died in the meantime. Where git
+ * supports it, {@code --batch} rewrites author and committer through the mailmap, as {@code git log} does.
+ */
+public class GitCatFile implements Closeable {
+    private final File workingDir;
+    private final boolean contents;
+    // guards the process; callers queued behind a slow lookup poll it so they can still be cancelled
+    private final ReentrantLock lock = new ReentrantLock();
+    private Process process;
+    private OutputStream requests;
+    private InputStream responses;
+    private long lastUsed = System.currentTimeMillis();
+
+    GitCatFile(File workingDir, boolean contents) {
+        this.workingDir = workingDir;
+        this.contents = contents;
+    }
+
+    /**
+     * Looks up any object name git understands (full or abbreviated SHA, ref name, {@code rev^{commit}}).
+     *
+     * @return the object, without content for {@code --batch-check}, or {@code null} when it is missing or ambiguous
+     */
+    public GitObject lookup(String name) {
+        return lookup(name, 0, null);
+    }
+
+    /**
+     * As {@link #lookup(String)}, killing the process and dropping it from the pool when git does not answer within
+     * {@code timeoutMillis} (zero or less for no timeout); the next lookup starts a new one. Cancelling {@code token}
+     * (may be {@code null}) stops the lookup, or the wait for another caller's, with a {@link CancellationException}.
+     */
+    public GitObject lookup(String name, long timeoutMillis, CancellationToken token) {
+        if (name.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Object name must not contain a new line: " + name);
+        }
+        acquire(token);
+        try {
+            if (token != null) {
+                token.throwIfCancelled();
+            }
+            lastUsed = System.currentTimeMillis();
+            try {
+                return request(name, timeoutMillis, token);
+            } catch (IOException e) {
+                close();
+                try {
+                    return request(name, timeoutMillis, token);
+                } catch (IOException retry) {
+                    close();
+                    throw new RuntimeException(String.format("git cat-file failed for %s - %s", name, workingDir), retry);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquire(CancellationToken token) {
+        try {
+            while (!lock.tryLock(100, TimeUnit.MILLISECONDS)) {
+                if (token != null) {
+                    token.throwIfCancelled();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("interrupted while waiting for git cat-file");
+        }
+    }
+
+    private GitObject request(String name, long timeoutMillis, CancellationToken token) throws IOException {
+        if (process == null || !process.isAlive()) {
+            start();
+        }
+        try (ProcessWatchdog watchdog = ProcessWatchdog.watch(process, timeoutMillis, token)) {
+            try {
+                return exchange(name);
+            } catch (IOException e) {
+                try {
+                    watchdog.check();
+                } catch (TimeoutException timeout) {
+                    close();
+                    GitCatFilePool.discard(this);
+                    throw new RuntimeException(String.format("git cat-file did not answer for %s - %s", name, workingDir), timeout);
+                } catch (CancellationException cancelled) {
+                    close();
+                    throw cancelled;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private GitObject exchange(String name) throws IOException {
+        requests.write((name + "\n").getBytes(StandardCharsets.UTF_8));
+        requests.flush();
+
+        String header = readLine();
+        if (header.endsWith(" missing") || header.endsWith(" ambiguous")) {
+            return null;
+        }
+        String[] parts = header.split(" ");
+        if (parts.length != 3) {
+            throw new IOException("Unable to parse git cat-file output line: " + header);
+        }
+        byte[] content = null;
+        if (contents) {
+            content = readFully(Integer.parseInt(parts[2]));
+            if (responses.read() != '\n') {
+                throw new IOException("Unable to parse git cat-file output for: " + header);
+            }
+        }
+        return new GitObject(parts[0], parts[1], content);
+    }
+
+    private void start() {
+        close();
+        String[] args = contents && batchUsesMailmap() ? new String[]{"cat-file", "--use-mailmap", "--batch"} : new String[]{"cat-file", contents ? "--batch" : "--batch-check"};
+        process = Console.start(Console.createCommand(args), workingDir, ProcessBuilder.Redirect.DISCARD);
+        requests = new BufferedOutputStream(process.getOutputStream());
+        responses = new BufferedInputStream(process.getInputStream());
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = responses.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException("git cat-file exited - " + workingDir);
+            }
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private byte[] readFully(int size) throws IOException {
+        byte[] content = new byte[size];
+        int offset = 0;
+        while (offset < size) {
+            int read = responses.read(content, offset, size - offset);
+            if (read == -1) {
+                throw new EOFException("git cat-file exited - " + workingDir);
+            }
+            offset += read;
+        }
+        return content;
+    }
+
+    /**
+     * Whether {@code --batch} applies the mailmap; git before 2.41 rewrites the commit but reports the size of the
+     * original, so its output cannot be read.
+     */
+    static boolean batchUsesMailmap() {
+        return Mailmap.SUPPORTED;
+    }
+
+    File workingDir() {
+        return workingDir;
+    }
+
+    /**
+     * Stops the process unless a lookup is using it or it was used after {@code idleSince}; the evictor must not wait
+     * behind a lookup.
+     */
+    void closeIfIdleSince(long idleSince) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (lastUsed < idleSince) {
+                close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (process == null) {
+                return;
+            }
+            try {
+                requests.close();
+            } catch (IOException ignore) {
+            }
+            process.destroy();
+            process = null;
+            requests = null;
+            responses = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Mailmap {
+        private static final boolean SUPPORTED = isGitAtLeast(2, 41);
+
+        private static boolean isGitAtLeast(int major, int minor) {
+            try {
+                ProcessOutputStreamConsumer stdOut = new ProcessOutputStreamConsumer(new InMemoryConsumer());
+                Console.runOrBomb(Console.createCommand("--version"), null, stdOut, new ProcessOutputStreamConsumer(new InMemoryConsumer()));
+                // git version 2.39.5, git version 2.45.1.windows.1, git version 2.39.3 (Apple Git-146)
+                String[] version = stdOut.output().get(0).replaceFirst("^git version ", "").split("[. ]");
+                int actualMajor = Integer.parseInt(version[0]);
+                return actualMajor > major || actualMajor == major && Integer.parseInt(version[1]) >= minor;
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+    }
+
+    public static class GitObject {
+        private final String id;
+        private final String type;
+        private final byte[] content;
+
+        GitObject(String id, String type, byte[] content) {
+            this.id = id;
+            this.type = type;
+            this.content = content;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public byte[] getContent() {
+            return content;
+        }
+    }
+}
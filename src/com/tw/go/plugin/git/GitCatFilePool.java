@@ -0,0 +1,75 @@
+package com.tw.go.plugin.git;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one {@link GitCatFile} per working directory and mode so object lookups do not fork a git process each time.
+ * Processes that have not been used for {@link #IDLE_TIMEOUT_MILLIS} are stopped; they are started again on next use.
+ * Those of working directories that no longer exist, or that stopped answering, are dropped from the pool.
+ */
+public class GitCatFilePool {
+    static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Map<String, GitCatFile> processes = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "git-cat-file-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        evictor.scheduleWithFixedDelay(GitCatFilePool::evictIdle, IDLE_TIMEOUT_MILLIS, IDLE_TIMEOUT_MILLIS / 2, TimeUnit.MILLISECONDS);
+    }
+
+    public static GitCatFile batch(File workingDir) {
+        return get(workingDir, true);
+    }
+
+    public static GitCatFile batchCheck(File workingDir) {
+        return get(workingDir, false);
+    }
+
+    private static GitCatFile get(File workingDir, boolean contents) {
+        File directory = workingDir.getAbsoluteFile();
+        return processes.computeIfAbsent(key(directory, contents), key -> new GitCatFile(directory, contents));
+    }
+
+    /**
+     * Stops the processes of a working directory, e.g. before it is deleted and cloned again.
+     */
+    public static void evict(File workingDir) {
+        File directory = workingDir.getAbsoluteFile();
+        for (boolean contents : new boolean[]{true, false}) {
+            GitCatFile catFile = processes.remove(key(directory, contents));
+            if (catFile != null) {
+                catFile.close();
+            }
+        }
+    }
+
+    static void evictIdle() {
+        long idleSince = System.currentTimeMillis() - IDLE_TIMEOUT_MILLIS;
+        for (GitCatFile catFile : processes.values()) {
+            if (!catFile.workingDir().isDirectory()) {
+                processes.values().remove(catFile);
+                catFile.closeIfIdleSince(Long.MAX_VALUE);
+            } else {
+                catFile.closeIfIdleSince(idleSince);
+            }
+        }
+    }
+
+    static void discard(GitCatFile catFile) {
+        processes.values().remove(catFile);
+        catFile.close();
+    }
+
+    private static String key(File workingDir, boolean contents) {
+        return (contents ? "batch:" : "batch-check:") + workingDir.getPath();
+    }
+}
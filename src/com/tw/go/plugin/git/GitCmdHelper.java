@@ -1,29 +1,43 @@
 package com.tw.go.plugin.git;
 
 import com.tw.go.plugin.GitHelper;
+import com.tw.go.plugin.cmd.BoundedConsumer;
+import com.tw.go.plugin.cmd.CommandStats;
 import com.tw.go.plugin.cmd.Console;
 import com.tw.go.plugin.cmd.ConsoleResult;
-import com.tw.go.plugin.cmd.InMemoryConsumer;
+import com.tw.go.plugin.cmd.ConsoleStream;
 import com.tw.go.plugin.cmd.ProcessOutputStreamConsumer;
+import com.tw.go.plugin.metrics.GitOperation;
+import com.tw.go.plugin.metrics.OperationTimer;
+import com.tw.go.plugin.model.FileAction;
 import com.tw.go.plugin.model.GitConfig;
+import com.tw.go.plugin.model.ModifiedFile;
+import com.tw.go.plugin.model.ModifiedFilesLoader;
 import com.tw.go.plugin.model.Revision;
+import com.tw.go.plugin.model.WorkingCopyStatus;
 import com.tw.go.plugin.util.StringUtil;
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.io.FileUtils;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class GitCmdHelper extends GitHelper {
     private static final Pattern GIT_SUBMODULE_STATUS_PATTERN = Pattern.compile("^.[0-9a-fA-F]{40} (.+?)( \\(.+\\))?$");
     private static final Pattern GIT_SUBMODULE_URL_PATTERN = Pattern.compile("^submodule\\.(.+)\\.url (.+)$");
-    private static final Pattern GIT_DIFF_TREE_PATTERN = Pattern.compile("^(.{1,3})\\s+(.+)$");
+    private static final Pattern GIT_DIFF_TREE_PATTERN = Pattern.compile("^([A-Z]{1,3})(\\d*)\\s+(.+)$");
+
+    private Boolean mailmapConfigured;
 
     public GitCmdHelper(GitConfig gitConfig, File workingDir) {
-        this(gitConfig, workingDir, new ProcessOutputStreamConsumer(new InMemoryConsumer()), new ProcessOutputStreamConsumer(new InMemoryConsumer()));
+        this(gitConfig, workingDir, new ProcessOutputStreamConsumer(new BoundedConsumer()), new ProcessOutputStreamConsumer(new BoundedConsumer()));
     }
 
     public GitCmdHelper(GitConfig gitConfig, File workingDir, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr) {
@@ -39,7 +53,7 @@ public class GitCmdHelper extends GitHelper {
     @Override
     public void checkConnection() {
         CommandLine gitCmd = Console.createCommand("ls-remote", gitConfig.getEffectiveUrl());
-        runAndGetOutput(gitCmd);
+        runAndGetOutput(gitCmd, workingDir, timeout(GitConfig::getFetchTimeoutSeconds));
     }
 
     @Override
@@ -54,8 +68,48 @@ public class GitCmdHelper extends GitHelper {
 
         args.add(gitConfig.getEffectiveUrl());
         args.add(workingDir.getAbsolutePath());
+        GitCatFilePool.evict(workingDir);
         CommandLine gitClone = Console.createCommand(args.toArray(new String[0]));
-        runAndGetOutput(gitClone, null, stdOut, stdErr);
+        runAndGetOutput(gitClone, null, stdOut, stdErr, timeout(GitConfig::getCloneTimeoutSeconds));
+    }
+
+    @Override
+    protected void cloneMirror(File directory) {
+        stdOut.consumeLine(String.format("[GIT] Creating mirror %s", directory));
+        // working directories borrowing its objects may still need unreachable ones
+        CommandLine gitClone = Console.createCommand("clone", "--mirror", "--config", "gc.pruneExpire=never", gitConfig.getEffectiveUrl(), directory.getAbsolutePath());
+        try (OperationTimer timer = metrics.start(GitOperation.MIRROR_FETCH)) {
+            runAndGetOutput(gitClone, null, stdOut, stdErr, timeout(GitConfig::getCloneTimeoutSeconds), timer);
+        }
+        // the mirror is shared, so its config keeps no credentials; every fetch brings its own
+        CommandLine setUrl = Console.createCommand("remote", "set-url", "origin", gitConfig.getUrl());
+        runAndGetOutput(setUrl, directory, stdOut, stdErr, timeout(GitConfig::getCloneTimeoutSeconds));
+    }
+
+    @Override
+    protected void fetchMirror(File directory) {
+        stdOut.consumeLine(String.format("[GIT] Fetching mirror %s", directory));
+        CommandLine gitFetch = Console.createCommand("fetch", "--prune", gitConfig.getEffectiveUrl(), MIRROR_REFS);
+        try (OperationTimer timer = metrics.start(GitOperation.MIRROR_FETCH)) {
+            runAndGetOutput(gitFetch, directory, stdOut, stdErr, timeout(GitConfig::getFetchTimeoutSeconds), timer);
+        }
+    }
+
+    @Override
+    protected void cloneFromMirror(File directory) {
+        List<String> args = new ArrayList<>(Arrays.asList("clone", "--shared", String.format("--branch=%s", gitConfig.getEffectiveBranch())));
+        if (gitConfig.isNoCheckout()) {
+            args.add("--no-checkout");
+        }
+        if (gitConfig.isShallowClone()) {
+            stdOut.consumeLine("[GIT] Working directories share the full history of their mirror; ignoring shallow clone");
+        }
+        args.add(directory.getAbsolutePath());
+        args.add(workingDir.getAbsolutePath());
+        GitCatFilePool.evict(workingDir);
+        CommandLine gitClone = Console.createCommand(args.toArray(new String[0]));
+        runAndGetOutput(gitClone, null, stdOut, stdErr, timeout(GitConfig::getCloneTimeoutSeconds));
+        runOrBomb(Console.createCommand("remote", "set-url", "origin", gitConfig.getEffectiveUrl()));
     }
 
     @Override
@@ -77,15 +131,58 @@ public class GitCmdHelper extends GitHelper {
     }
 
     @Override
-    public int getCommitCount() {
-        CommandLine gitCmd = Console.createCommand("rev-list", "HEAD", "--count");
-        return Integer.parseInt(runAndGetOutput(gitCmd).stdOut().get(0));
+    protected String headCommit(String subModuleFolder) {
+        File repositoryDir = repositoryDir(subModuleFolder);
+        GitCatFile.GitObject head = GitCatFilePool.batchCheck(repositoryDir).lookup("HEAD^{commit}", lookupTimeoutMillis(), cancellationToken);
+        if (head == null) {
+            throw new RuntimeException(String.format("Unable to resolve HEAD - %s", repositoryDir));
+        }
+        return head.getId();
+    }
+
+    @Override
+    protected int countCommits(String subModuleFolder, String tip) {
+        CommandLine gitCmd = Console.createCommand("rev-list", "--count", "--use-bitmap-index", tip);
+        return Integer.parseInt(runAndGetOutput(gitCmd, repositoryDir(subModuleFolder)).stdOut().get(0).trim());
+    }
+
+    @Override
+    protected int[] countDivergence(String subModuleFolder, String from, String to) {
+        CommandLine gitCmd = Console.createCommand("rev-list", "--count", "--left-right", from + "..." + to);
+        String[] counts = runAndGetOutput(gitCmd, repositoryDir(subModuleFolder)).stdOut().get(0).trim().split("\\s+");
+        return new int[]{Integer.parseInt(counts[0]), Integer.parseInt(counts[1])};
+    }
+
+    private File repositoryDir(String subModuleFolder) {
+        return subModuleFolder == null ? workingDir : new File(workingDir, subModuleFolder);
     }
 
     @Override
     public String currentRevision() {
-        CommandLine gitLog = Console.createCommand("log", "-1", "--pretty=format:%H", "--no-decorate", "--no-color");
-        return runAndGetOutput(gitLog).stdOut().stream().findFirst().orElse(null);
+        return headCommit(null);
+    }
+
+    @Override
+    protected String advertisedTip(String branch) {
+        // the ref is passed as a pattern, which git >= 2.18 turns into an ls-refs prefix on protocol v2
+        String ref = "refs/heads/" + branch;
+        CommandLine gitLsRemote = Console.createCommand("-c", "protocol.version=2", "ls-remote", "origin", ref);
+        try (OperationTimer timer = metrics.start(GitOperation.LS_REMOTE);
+             ConsoleResult result = runAndGetOutput(gitLsRemote, workingDir, timeout(GitConfig::getFetchTimeoutSeconds), timer)) {
+            for (String line : result.stdOut()) {
+                String[] parts = line.split("\t");
+                if (parts.length == 2 && parts[1].equals(ref)) {
+                    return parts[0];
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    protected String resolveCommit(String revision) {
+        GitCatFile.GitObject commit = GitCatFilePool.batchCheck(workingDir).lookup(revision + "^{commit}", lookupTimeoutMillis(), cancellationToken);
+        return commit == null ? null : commit.getId();
     }
 
     @Override
@@ -93,6 +190,11 @@ public class GitCmdHelper extends GitHelper {
         return gitLog(logArgs());
     }
 
+    @Override
+    public Stream<Revision> streamAllRevisions() {
+        return streamGitLog(logArgs());
+    }
+
     @Override
     public Revision getLatestRevision() {
         return getLatestRevision(null);
@@ -116,13 +218,25 @@ public class GitCmdHelper extends GitHelper {
         return gitLog(logArgs(subPaths, String.format("%s..%s", revision, gitConfig.getRemoteBranch())));
     }
 
+    @Override
+    public Stream<Revision> streamRevisionsSince(String revision, List<String> subPaths) {
+        return streamRevisionsSince(revision, subPaths, 0);
+    }
+
+    @Override
+    protected Stream<Revision> streamRevisionsSince(String revision, List<String> subPaths, int maxCount) {
+        return streamGitLog(logArgs(subPaths, maxCount > 0 ? "-n" + maxCount : null, String.format("%s..%s", revision, gitConfig.getRemoteBranch())));
+    }
+
     private String[] logArgs(String... revisionLimits) {
         return logArgs(null, revisionLimits);
     }
 
     private String[] logArgs(List<String> subPaths, String... revisionLimits) {
         String[] logs = Stream.of(
-                Stream.of("log", "--date=iso", "--pretty=medium", "--no-decorate", "--no-color"),
+                Stream.of("log"),
+                logFormatArgs(),
+                Stream.of("--no-decorate", "--no-color"),
                 Stream.of(revisionLimits),
                 Stream.ofNullable(subPaths).flatMap(paths -> Stream.of("--")),
                 Stream.ofNullable(subPaths).flatMap(paths -> subPaths.stream().map(String::trim))
@@ -135,80 +249,225 @@ public class GitCmdHelper extends GitHelper {
 
     @Override
     public Revision getDetailsForRevision(String sha) {
-        return gitLog(logArgs("-1", sha))
-                .stream()
+        if (!readsCommitsThroughCatFile()) {
+            return detailsFromLog(sha);
+        }
+        Revision revision = new GitCommitReader(GitCatFilePool.batch(workingDir), workingDir, maxModifiedFiles(), lookupTimeoutMillis(), cancellationToken).read(sha);
+        if (revision == null) {
+            throw new RuntimeException(String.format("Unable to resolve revision %s - %s", sha, workingDir));
+        }
+        return withRenames(revision);
+    }
+
+    @Override
+    public boolean hasRevision(String revision) {
+        return GitCatFilePool.batchCheck(workingDir).lookup(revision + "^{commit}", lookupTimeoutMillis(), cancellationToken) != null;
+    }
+
+    @Override
+    public Map<String, Revision> getDetailsForRevisions(Collection<String> revisions) {
+        if (!readsCommitsThroughCatFile()) {
+            Map<String, Revision> details = new LinkedHashMap<>();
+            for (String name : revisions) {
+                if (hasRevision(name)) {
+                    details.put(name, detailsFromLog(name));
+                }
+            }
+            return details;
+        }
+        GitCommitReader reader = new GitCommitReader(GitCatFilePool.batch(workingDir), workingDir, maxModifiedFiles(), lookupTimeoutMillis(), cancellationToken);
+        Map<String, Revision> details = new LinkedHashMap<>();
+        for (String name : revisions) {
+            Revision revision = reader.read(name);
+            if (revision != null) {
+                details.put(name, withRenames(revision));
+            }
+        }
+        return details;
+    }
+
+    // commits read through cat-file show the raw author unless cat-file applies the mailmap as git log does
+    private boolean readsCommitsThroughCatFile() {
+        return GitCatFile.batchUsesMailmap() || !usesMailmap();
+    }
+
+    private boolean usesMailmap() {
+        if (new File(workingDir, ".mailmap").isFile()) {
+            return true;
+        }
+        if (mailmapConfigured == null) {
+            try {
+                mailmapConfigured = !runAndGetOutput(Console.createCommand("config", "--get-regexp", "^mailmap\\.")).stdOut().isEmpty();
+            } catch (RuntimeException e) {
+                // exits with 1 when nothing matches
+                mailmapConfigured = false;
+            }
+        }
+        return mailmapConfigured;
+    }
+
+    private Revision detailsFromLog(String name) {
+        return gitLog(logArgs("-1", name)).stream()
                 .findFirst()
-                .orElse(null);
+                .orElseThrow(() -> new RuntimeException(String.format("Unable to resolve revision %s - %s", name, workingDir)));
+    }
+
+    // GitCommitReader compares trees path by path, so a commit that may contain a rename is diffed again by git
+    private Revision withRenames(Revision revision) {
+        if (gitConfig == null || !gitConfig.isRenameDetection(false) || revision.getModifiedFiles() == null || !hasAddedAndDeletedFiles(revision)) {
+            return revision;
+        }
+        revision.setModifiedFiles(new ArrayList<>());
+        addModifiedFiles(revision);
+        return revision;
+    }
+
+    private static boolean hasAddedAndDeletedFiles(Revision revision) {
+        boolean added = false;
+        boolean deleted = false;
+        for (ModifiedFile file : revision.getModifiedFiles()) {
+            added |= file.getFileAction() == FileAction.ADDED;
+            deleted |= file.getFileAction() == FileAction.DELETED;
+        }
+        return added && deleted;
     }
 
     @Override
     public Map<String, String> getBranchToRevisionMap(String pattern) {
         CommandLine gitCmd = Console.createCommand("show-ref");
-        List<String> outputLines = runAndGetOutput(gitCmd).stdOut();
         Map<String, String> branchToRevisionMap = new HashMap<>();
-        for (String line : outputLines) {
-            if (line.contains(pattern)) {
-                String[] parts = line.split(" ");
-                String branch = parts[1].replace(pattern, "");
-                String revision = parts[0];
-                if (!branch.equals("HEAD")) {
-                    branchToRevisionMap.put(branch, revision);
+        try (ConsoleResult result = runAndGetOutput(gitCmd)) {
+            for (String line : result.stdOut()) {
+                if (line.contains(pattern)) {
+                    String[] parts = line.split(" ");
+                    String branch = parts[1].replace(pattern, "");
+                    String revision = parts[0];
+                    if (!branch.equals("HEAD")) {
+                        branchToRevisionMap.put(branch, revision);
+                    }
                 }
             }
         }
         return branchToRevisionMap;
     }
 
+    private Stream<String> logFormatArgs() {
+        if (!isSinglePassLog()) {
+            return Stream.of("--date=raw", "--pretty=medium");
+        }
+        if (modifiedFilesLoader() != null) {
+            // the changed files are read later, if at all, so git log does not diff any trees
+            return Stream.of("-z", "--pretty=format:" + GitLogParser.FORMAT);
+        }
+        return Stream.of(Stream.of("-z", "--root", "-c", "--name-status"), renameArgs(), Stream.of("--full-diff", "--pretty=format:" + GitLogParser.FORMAT)).flatMap(s -> s);
+    }
+
+    private Stream<String> renameArgs() {
+        if (gitConfig == null || !gitConfig.isRenameDetection(false)) {
+            return Stream.of("--no-renames");
+        }
+        return Stream.of("-M", "-l" + gitConfig.getRenameLimit());
+    }
+
+    private boolean isSinglePassLog() {
+        return gitConfig == null || gitConfig.isSinglePassLog();
+    }
+
     private List<Revision> gitLog(String... args) {
+        try (Stream<Revision> revisions = streamGitLog(args)) {
+            return revisions.collect(Collectors.toList());
+        }
+    }
+
+    // without the single-pass log, git log lists the revisions and each is diffed when the stream reaches it
+    private Stream<Revision> logThenDiff(String... args) {
         CommandLine gitLog = Console.createCommand(args);
-        List<String> gitLogOutput = runAndGetOutput(gitLog).stdOut();
+        List<Revision> revisions;
+        try (OperationTimer timer = metrics.start(GitOperation.GIT_LOG);
+             ConsoleResult gitLogOutput = runAndGetOutput(gitLog, workingDir, timeout(GitConfig::getLogTimeoutSeconds), timer)) {
+            revisions = new GitModificationParser().parse(gitLogOutput.stdOut());
+        }
 
-        List<Revision> revisions = new GitModificationParser().parse(gitLogOutput);
-        for (Revision revision : revisions) {
-            addModifiedFiles(revision);
+        ModifiedFilesLoader loader = modifiedFilesLoader();
+        return revisions.stream().map(revision -> {
+            cancellationToken.throwIfCancelled();
+            if (loader == null) {
+                addModifiedFiles(revision);
+            } else {
+                revision.setModifiedFilesLoader(loader);
+            }
+            return revision;
+        });
+    }
+
+    private Stream<Revision> streamGitLog(String... args) {
+        if (!isSinglePassLog()) {
+            return logThenDiff(args);
         }
-        return revisions;
+
+        OperationTimer timer = metrics.start(GitOperation.GIT_LOG);
+        CommandStats stats = new CommandStats();
+        ConsoleStream gitLogOutput = Console.stream(Console.createCommand(args), workingDir, new ProcessOutputStreamConsumer(new BoundedConsumer()), timeout(GitConfig::getLogTimeoutSeconds), cancellationToken, stats);
+        Stream<Revision> revisions = new GitLogParser(gitLogOutput.stdOut(), maxModifiedFiles()).stream();
+        ModifiedFilesLoader loader = modifiedFilesLoader();
+        if (loader != null) {
+            revisions = revisions.peek(revision -> revision.setModifiedFilesLoader(loader));
+        }
+        return revisions.onClose(() -> {
+            try {
+                gitLogOutput.close();
+            } finally {
+                timer.addProcess(stats);
+                timer.close();
+            }
+        });
     }
 
     private void addModifiedFiles(Revision revision) {
-        List<String> diffTreeOutput = diffTree(revision.getRevision()).stdOut();
+        String node = revision.getRevision();
+        try (ConsoleResult diffTree = diffTree(node)) {
+            addModifiedFiles(revision, diffTree);
+        }
+    }
 
-        for (String resultLine : diffTreeOutput) {
+    private void addModifiedFiles(Revision revision, ConsoleResult diffTree) {
+        String node = revision.getRevision();
+        int maxModifiedFiles = maxModifiedFiles();
+        int files = 0;
+        for (String resultLine : diffTree.stdOut()) {
             // First line is the node
-            if (resultLine.equals(revision.getRevision())) {
+            if (resultLine.equals(node)) {
+                continue;
+            }
+            if (maxModifiedFiles > 0 && files >= maxModifiedFiles) {
+                revision.addTruncatedModifiedFiles(1);
                 continue;
             }
 
             Matcher m = matchResultLine(resultLine);
             if (!m.find()) {
-                throw new RuntimeException(String.format("Unable to parse git-diff-tree output line: %s%nFrom output:%n %s", resultLine, String.join(System.lineSeparator(), diffTreeOutput)));
+                throw new RuntimeException(String.format("Unable to parse git-diff-tree output line: %s%nFrom output:%n %s", resultLine, diffTree.stdOutExcerpt()));
+            }
+            String path = m.group(3);
+            if (GitLogParser.hasSourcePath(m.group(1) + m.group(2))) {
+                path = path.substring(path.indexOf('\t') + 1);
             }
-            revision.createModifiedFile(m.group(2), parseGitAction(m.group(1).charAt(0)));
+            revision.createModifiedFile(path, FileAction.fromStatus(m.group(1).charAt(0)));
+            files++;
         }
     }
 
     private ConsoleResult diffTree(String node) {
-        CommandLine gitCmd = Console.createCommand("diff-tree", "--name-status", "--root", "-r", "-c", node);
-        return runAndGetOutput(gitCmd);
+        CommandLine gitCmd = Console.createCommand(Stream.of(Stream.of("diff-tree", "--name-status", "--root", "-r", "-c"), renameArgs(), Stream.of(node)).flatMap(s -> s).toArray(String[]::new));
+        try (OperationTimer timer = metrics.start(GitOperation.DIFF_TREE)) {
+            return runAndGetOutput(gitCmd, workingDir, timeout(GitConfig::getLogTimeoutSeconds), timer);
+        }
     }
 
     private Matcher matchResultLine(String resultLine) {
         return GIT_DIFF_TREE_PATTERN.matcher(resultLine);
     }
 
-    private String parseGitAction(char action) {
-        switch (action) {
-            case 'A':
-                return "added";
-            case 'M':
-                return "modified";
-            case 'D':
-                return "deleted";
-            default:
-                return "unknown";
-        }
-    }
-
     // http://www.kernel.org/pub/software/scm/git/docs/git-log.html
     private String modificationTemplate(String separator) {
         return "%cn <%ce>%n%H%n%ai%n%n%s%n%b%n" + separator;
@@ -217,22 +476,31 @@ public class GitCmdHelper extends GitHelper {
     @Override
     public void pull() {
         CommandLine gitCommit = Console.createCommand("pull");
-        runOrBomb(gitCommit);
+        runOrBomb(gitCommit, timeout(GitConfig::getFetchTimeoutSeconds));
     }
 
     @Override
     public void fetch(String refSpec) {
         stdOut.consumeLine("[GIT] Fetching changes");
-        List<String> args = new ArrayList<>(Arrays.asList("fetch", "origin", "--prune", "--recurse-submodules=no"));
+        // keeps the commit-graph current, which speeds up counting and walking the new commits
+        String source = getMirror() == null ? "origin" : getMirror().getDirectory().getAbsolutePath();
+        List<String> args = new ArrayList<>(Arrays.asList("-c", "fetch.writeCommitGraph=true", "fetch", source, "--prune", "--recurse-submodules=no"));
         if (!StringUtil.isEmpty(refSpec)) {
             args.add(refSpec);
+        } else if (getMirror() != null) {
+            // a path has no configured ref specs of its own
+            args.add(ORIGIN_BRANCHES);
+        }
+        try (OperationTimer timer = metrics.start(GitOperation.FETCH)) {
+            runOrBomb(Console.createCommand(args.toArray(new String[0])), timeout(GitConfig::getFetchTimeoutSeconds), timer);
         }
-        runOrBomb(Console.createCommand(args.toArray(new String[0])));
     }
 
     private void fetchToDepth(int depth) {
         stdOut.consumeLine(String.format("[GIT] Fetching to commit depth %s", depth == Integer.MAX_VALUE ? "[INFINITE]" : depth));
-        runOrBomb(Console.createCommand("fetch", "origin", "--depth=" + depth, "--recurse-submodules=no"));
+        try (OperationTimer timer = metrics.start(GitOperation.FETCH)) {
+            runOrBomb(Console.createCommand("fetch", "origin", "--depth=" + depth, "--recurse-submodules=no"), timeout(GitConfig::getFetchTimeoutSeconds), timer);
+        }
     }
 
     @Override
@@ -241,7 +509,9 @@ public class GitCmdHelper extends GitHelper {
 
         stdOut.consumeLine("[GIT] Updating working copy to revision " + revision);
         CommandLine gitResetHard = Console.createCommand("reset", "--hard", revision);
-        runOrBomb(gitResetHard);
+        try (OperationTimer timer = metrics.start(GitOperation.RESET_HARD)) {
+            runOrBomb(gitResetHard, 0, timer);
+        }
     }
 
     private void unshallowIfNecessary(int additionalFetchDepth, String revision) {
@@ -261,8 +531,12 @@ public class GitCmdHelper extends GitHelper {
 
     private boolean branchContains(String revision) {
         try {
-            ConsoleResult result = runAndGetOutput(Console.createCommand("branch", "-r", "--contains", revision));
-            return result.stdOut().stream().anyMatch(line -> line.contains(gitConfig.getRemoteBranch()));
+            if (GitCatFilePool.batchCheck(workingDir).lookup(revision + "^{commit}", lookupTimeoutMillis(), cancellationToken) == null) {
+                return false;
+            }
+            try (ConsoleResult result = runAndGetOutput(Console.createCommand("branch", "-r", "--contains", revision))) {
+                return result.stdOut().stream().anyMatch(line -> line.contains(gitConfig.getRemoteBranch()));
+            }
         } catch (Exception ignore) {
             return false;
         }
@@ -273,26 +547,77 @@ public class GitCmdHelper extends GitHelper {
         return !gitConfig.isNoCheckout();
     }
 
+    @Override
+    public WorkingCopyStatus workingCopyStatus(String revision) {
+        try (OperationTimer timer = metrics.start(GitOperation.STATUS)) {
+            GitCatFile objects = GitCatFilePool.batchCheck(workingDir);
+            GitCatFile.GitObject head = objects.lookup("HEAD^{commit}", lookupTimeoutMillis(), cancellationToken);
+            GitCatFile.GitObject target = objects.lookup(revision + "^{commit}", lookupTimeoutMillis(), cancellationToken);
+            if (head == null || target == null) {
+                return null;
+            }
+            // git status uses the untracked cache and fsmonitor where the repository has them enabled
+            CommandLine gitStatus = Console.createCommand("status", "--porcelain", "--no-renames");
+            try (ConsoleResult status = runAndGetOutput(gitStatus, workingDir, timeout(GitConfig::getCleanTimeoutSeconds), timer)) {
+                List<String> entries = status.stdOut();
+                int untracked = (int) entries.stream().filter(entry -> entry.startsWith("??")).count();
+                return new WorkingCopyStatus(head.getId(), target.getId(), entries.size() - untracked, untracked);
+            }
+        } catch (CancellationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
     @Override
     public void cleanAllUnversionedFiles() {
         stdOut.consumeLine("[GIT] Cleaning all unversioned files in working copy");
-        if (isSubmoduleEnabled()) {
-            for (Map.Entry<String, String> submoduleFolder : submoduleUrls().entrySet()) {
-                cleanUnversionedFiles(new File(workingDir, submoduleFolder.getKey()));
+        try (OperationTimer timer = metrics.start(GitOperation.CLEAN)) {
+            if (isSubmoduleEnabled()) {
+                for (Map.Entry<String, String> submoduleFolder : submoduleUrls().entrySet()) {
+                    cleanUnversionedFiles(new File(workingDir, submoduleFolder.getKey()), timer);
+                }
             }
+            cleanUnversionedFiles(workingDir, timer);
         }
-        cleanUnversionedFiles(workingDir);
     }
 
-    private void cleanUnversionedFiles(File workingDir) {
+    private void cleanUnversionedFiles(File workingDir, OperationTimer timer) {
         CommandLine gitClean = Console.createCommand("clean", "-dff");
-        runAndGetOutput(gitClean, workingDir, stdOut, stdErr);
+        runAndGetOutput(gitClean, workingDir, stdOut, stdErr, timeout(GitConfig::getCleanTimeoutSeconds), timer);
     }
 
     @Override
     public void gc() {
         stdOut.consumeLine("[GIT] Performing git gc");
-        runOrBomb(Console.createCommand("gc", "--auto"));
+        try (OperationTimer timer = metrics.start(GitOperation.GC)) {
+            runOrBomb(Console.createCommand("gc", "--auto"), 0, timer);
+        }
+    }
+
+    @Override
+    protected void fullGc() {
+        stdOut.consumeLine("[GIT] Performing full git gc");
+        try (OperationTimer timer = metrics.start(GitOperation.GC)) {
+            runOrBomb(Console.createCommand("-c", "repack.writeBitmaps=true", "gc"), 0, timer);
+        }
+    }
+
+    @Override
+    public void repack() {
+        stdOut.consumeLine("[GIT] Performing git repack");
+        try (OperationTimer timer = metrics.start(GitOperation.REPACK)) {
+            runOrBomb(Console.createCommand("repack", "-a", "-d", "-l", "--write-bitmap-index"), 0, timer);
+        }
+    }
+
+    @Override
+    public void packRefs() {
+        stdOut.consumeLine("[GIT] Performing git pack-refs");
+        try (OperationTimer timer = metrics.start(GitOperation.PACK_REFS)) {
+            runOrBomb(Console.createCommand("pack-refs", "--all"), 0, timer);
+        }
     }
 
     @Override
@@ -308,7 +633,7 @@ public class GitCmdHelper extends GitHelper {
         for (String submoduleLine : submoduleList) {
             Matcher m = GIT_SUBMODULE_URL_PATTERN.matcher(submoduleLine);
             if (!m.find()) {
-                throw new RuntimeException(String.format("Unable to parse git-config output line: %s%nFrom output:%n%s", submoduleLine, String.join(System.lineSeparator(), submoduleList)));
+                throw new RuntimeException(String.format("Unable to parse git-config output line: %s%nFrom output:%n%s", submoduleLine, ConsoleResult.excerpt(submoduleList)));
             }
             submoduleUrls.put(m.group(1), m.group(2));
         }
@@ -318,7 +643,9 @@ public class GitCmdHelper extends GitHelper {
     @Override
     public List<String> submoduleFolders() {
         CommandLine gitCmd = Console.createCommand("submodule", "status");
-        return submoduleFolders(runAndGetOutput(gitCmd).stdOut());
+        try (ConsoleResult result = runAndGetOutput(gitCmd)) {
+            return submoduleFolders(result.stdOut());
+        }
     }
 
     private List<String> submoduleFolders(List<String> submoduleLines) {
@@ -326,7 +653,7 @@ public class GitCmdHelper extends GitHelper {
         for (String submoduleLine : submoduleLines) {
             Matcher m = GIT_SUBMODULE_STATUS_PATTERN.matcher(submoduleLine);
             if (!m.find()) {
-                throw new RuntimeException(String.format("Unable to parse git-submodule output line: %s%nFrom output:%n%s", submoduleLine, String.join(System.lineSeparator(), submoduleLines)));
+                throw new RuntimeException(String.format("Unable to parse git-submodule output line: %s%nFrom output:%n%s", submoduleLine, ConsoleResult.excerpt(submoduleLines)));
             }
             submoduleFolders.add(m.group(1));
         }
@@ -347,12 +674,6 @@ public class GitCmdHelper extends GitHelper {
         runOrBomb(gitSubmoduleCheckout);
     }
 
-    @Override
-    public int getSubModuleCommitCount(String subModuleFolder) {
-        CommandLine gitCmd = Console.createCommand("rev-list", "HEAD", "--count");
-        return Integer.parseInt(runAndGetOutput(gitCmd, new File(workingDir, subModuleFolder)).stdOut().get(0));
-    }
-
     @Override
     public void submoduleInit() {
         CommandLine gitSubModuleInit = Console.createCommand("submodule", "init");
@@ -371,7 +692,9 @@ public class GitCmdHelper extends GitHelper {
     @Override
     public void submoduleUpdate() {
         CommandLine gitSubModuleUpdate = Console.createCommand("submodule", "update");
-        runOrBomb(gitSubModuleUpdate);
+        try (OperationTimer timer = metrics.start(GitOperation.SUBMODULE_UPDATE)) {
+            runOrBomb(gitSubModuleUpdate, timeout(GitConfig::getFetchTimeoutSeconds), timer);
+        }
     }
 
     @Override
@@ -448,8 +771,25 @@ public class GitCmdHelper extends GitHelper {
         runOrBomb(gitCommit);
     }
 
+    private int timeout(ToIntFunction<GitConfig> setting) {
+        return gitConfig == null ? 0 : setting.applyAsInt(gitConfig);
+    }
+
+    // an object lookup is a read like git log, and is bounded the same way
+    private long lookupTimeoutMillis() {
+        return TimeUnit.SECONDS.toMillis(timeout(GitConfig::getLogTimeoutSeconds));
+    }
+
     private void runOrBomb(CommandLine gitCmd) {
-        runAndGetOutput(gitCmd, workingDir, stdOut, stdErr);
+        runOrBomb(gitCmd, 0);
+    }
+
+    private void runOrBomb(CommandLine gitCmd, int timeoutSeconds) {
+        runOrBomb(gitCmd, timeoutSeconds, null);
+    }
+
+    private void runOrBomb(CommandLine gitCmd, int timeoutSeconds, OperationTimer timer) {
+        runAndGetOutput(gitCmd, workingDir, stdOut, stdErr, timeoutSeconds, timer);
     }
 
     private ConsoleResult runAndGetOutput(CommandLine gitCmd) {
@@ -457,10 +797,38 @@ public class GitCmdHelper extends GitHelper {
     }
 
     private ConsoleResult runAndGetOutput(CommandLine gitCmd, File workingDir) {
-        return runAndGetOutput(gitCmd, workingDir, new ProcessOutputStreamConsumer(new InMemoryConsumer()), new ProcessOutputStreamConsumer(new InMemoryConsumer()));
+        return runAndGetOutput(gitCmd, workingDir, 0);
+    }
+
+    private ConsoleResult runAndGetOutput(CommandLine gitCmd, File workingDir, int timeoutSeconds) {
+        return runAndGetOutput(gitCmd, workingDir, timeoutSeconds, null);
     }
 
-    private ConsoleResult runAndGetOutput(CommandLine gitCmd, File workingDir, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr) {
-        return Console.runOrBomb(gitCmd, workingDir, stdOut, stdErr);
+    // long output is spilled to a file owned by the result: callers reading all of it close the result, the others
+    // leave the file to be deleted once the result is unreachable
+    private ConsoleResult runAndGetOutput(CommandLine gitCmd, File workingDir, int timeoutSeconds, OperationTimer timer) {
+        BoundedConsumer output = BoundedConsumer.spilling();
+        try {
+            return runAndGetOutput(gitCmd, workingDir, new ProcessOutputStreamConsumer(output), new ProcessOutputStreamConsumer(new BoundedConsumer()), timeoutSeconds, timer);
+        } catch (RuntimeException e) {
+            output.close();
+            throw e;
+        }
+    }
+
+    private ConsoleResult runAndGetOutput(CommandLine gitCmd, File workingDir, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr, int timeoutSeconds) {
+        return runAndGetOutput(gitCmd, workingDir, stdOut, stdErr, timeoutSeconds, null);
+    }
+
+    private ConsoleResult runAndGetOutput(CommandLine gitCmd, File workingDir, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr, int timeoutSeconds, OperationTimer timer) {
+        if (timer == null) {
+            return Console.runOrBomb(gitCmd, workingDir, stdOut, stdErr, timeoutSeconds, cancellationToken);
+        }
+        CommandStats stats = new CommandStats();
+        try {
+            return Console.runOrBomb(gitCmd, workingDir, stdOut, stdErr, timeoutSeconds, cancellationToken, stats);
+        } finally {
+            timer.addProcess(stats);
+        }
     }
 }
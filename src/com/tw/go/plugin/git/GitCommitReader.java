@@ -0,0 +1,294 @@
+package com.tw.go.plugin.git;
+
+import com.tw.go.plugin.cmd.CancellationToken;
+import com.tw.go.plugin.model.FileAction;
+import com.tw.go.plugin.model.Revision;
+import com.tw.go.plugin.util.GitDirs;
+import com.tw.go.plugin.util.ObjectIds;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds a {@link Revision} from commit and tree objects read through {@link GitCatFile}, producing the same changed
+ * files as {@code git diff-tree --name-status --root -r -c} without starting a process per commit.
+ */
+class GitCommitReader {
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFDIR = 0040000;
+
+    private final GitCatFile catFile;
+    private final File workingDir;
+    private final int maxModifiedFiles;
+    private final long timeoutMillis;
+    private final CancellationToken cancellationToken;
+    private int uncollected;
+
+    GitCommitReader(GitCatFile catFile, File workingDir, int maxModifiedFiles, long timeoutMillis, CancellationToken cancellationToken) {
+        this.catFile = catFile;
+        this.workingDir = workingDir;
+        this.maxModifiedFiles = maxModifiedFiles;
+        this.timeoutMillis = timeoutMillis;
+        this.cancellationToken = cancellationToken;
+    }
+
+    Revision read(String name) {
+        GitCatFile.GitObject object = catFile.lookup(name + "^{commit}", timeoutMillis, cancellationToken);
+        if (object == null) {
+            return null;
+        }
+        Commit commit = new Commit(object.getContent());
+        List<String> parents = reachableParents(object.getId(), commit.parents);
+
+        Revision revision = new Revision(object.getId(), new Date(commit.time * 1000L), GitLogParser.comment(commit.message), commit.author, GitLogParser.emailId(commit.author), null);
+        revision.setMergeCommit(parents.size() > 1);
+        uncollected = 0;
+        Map<String, Character> changes = changes(commit.tree, parents);
+        revision.addTruncatedModifiedFiles(uncollected);
+        for (Map.Entry<String, Character> change : changes.entrySet()) {
+            if (maxModifiedFiles > 0 && revision.getModifiedFiles() != null && revision.getModifiedFiles().size() >= maxModifiedFiles) {
+                revision.addTruncatedModifiedFiles(changes.size() - maxModifiedFiles);
+                break;
+            }
+            revision.createModifiedFile(change.getKey(), FileAction.fromStatus(change.getValue()));
+        }
+        return revision;
+    }
+
+    // a single diff keeps maxModifiedFiles files and only counts the others; a merge needs every file of each parent
+    // to find those that differ from all of them
+    private Map<String, Character> changes(String tree, List<String> parents) {
+        int limit = parents.size() <= 1 ? maxModifiedFiles : 0;
+        if (parents.isEmpty()) {
+            Map<String, Character> changes = new LinkedHashMap<>();
+            diff(null, tree, "", changes, limit);
+            return changes;
+        }
+
+        Map<String, Character> changes = null;
+        for (String parent : parents) {
+            Map<String, Character> parentChanges = new LinkedHashMap<>();
+            diff(new Commit(lookup(parent).getContent()).tree, tree, "", parentChanges, limit);
+            if (changes == null) {
+                changes = parentChanges;
+            } else {
+                // combined diff (-c): only paths that differ from every parent
+                changes.keySet().retainAll(parentChanges.keySet());
+            }
+        }
+        return changes;
+    }
+
+    private void diff(String oldTree, String newTree, String prefix, Map<String, Character> changes, int limit) {
+        List<Entry> oldEntries = entries(oldTree);
+        List<Entry> newEntries = entries(newTree);
+        int i = 0;
+        int j = 0;
+        while (i < oldEntries.size() || j < newEntries.size()) {
+            int compare = i >= oldEntries.size() ? 1 : j >= newEntries.size() ? -1 : oldEntries.get(i).compareTo(newEntries.get(j));
+            if (compare < 0) {
+                removed(oldEntries.get(i++), prefix, changes, limit);
+            } else if (compare > 0) {
+                added(newEntries.get(j++), prefix, changes, limit);
+            } else {
+                Entry oldEntry = oldEntries.get(i++);
+                Entry newEntry = newEntries.get(j++);
+                if (oldEntry.id.equals(newEntry.id) && oldEntry.mode == newEntry.mode) {
+                    continue;
+                }
+                if (newEntry.isTree()) {
+                    diff(oldEntry.id, newEntry.id, prefix + newEntry.name + "/", changes, limit);
+                } else {
+                    put(changes, prefix + newEntry.name, (oldEntry.mode & S_IFMT) == (newEntry.mode & S_IFMT) ? 'M' : 'T', limit);
+                }
+            }
+        }
+    }
+
+    private void added(Entry entry, String prefix, Map<String, Character> changes, int limit) {
+        if (entry.isTree()) {
+            diff(null, entry.id, prefix + entry.name + "/", changes, limit);
+        } else {
+            put(changes, prefix + entry.name, 'A', limit);
+        }
+    }
+
+    private void removed(Entry entry, String prefix, Map<String, Character> changes, int limit) {
+        if (entry.isTree()) {
+            diff(entry.id, null, prefix + entry.name + "/", changes, limit);
+        } else {
+            put(changes, prefix + entry.name, 'D', limit);
+        }
+    }
+
+    private void put(Map<String, Character> changes, String path, char action, int limit) {
+        if (limit > 0 && changes.size() >= limit) {
+            uncollected++;
+        } else {
+            changes.put(path, action);
+        }
+    }
+
+    private List<Entry> entries(String tree) {
+        if (tree == null) {
+            return Collections.emptyList();
+        }
+        byte[] content = lookup(tree).getContent();
+        int idLength = tree.length() / 2;
+        List<Entry> entries = new ArrayList<>();
+        int position = 0;
+        while (position < content.length) {
+            int mode = 0;
+            while (content[position] != ' ') {
+                mode = (mode << 3) + (content[position++] - '0');
+            }
+            int nameStart = ++position;
+            while (content[position] != 0) {
+                position++;
+            }
+            byte[] name = new byte[position - nameStart];
+            System.arraycopy(content, nameStart, name, 0, name.length);
+            position++;
+            entries.add(new Entry(name, mode, ObjectIds.toHex(content, position, idLength)));
+            position += idLength;
+        }
+        return entries;
+    }
+
+    private GitCatFile.GitObject lookup(String id) {
+        GitCatFile.GitObject object = catFile.lookup(id, timeoutMillis, cancellationToken);
+        if (object == null) {
+            throw new RuntimeException(String.format("Missing git object %s - %s", id, workingDir));
+        }
+        return object;
+    }
+
+    // a shallow clone's boundary commits are treated as root commits, as git log and git diff-tree do
+    private List<String> reachableParents(String id, List<String> parents) {
+        if (parents.isEmpty() || shallowCommits().contains(id)) {
+            return Collections.emptyList();
+        }
+        List<String> reachable = new ArrayList<>(parents.size());
+        for (String parent : parents) {
+            if (catFile.lookup(parent, timeoutMillis, cancellationToken) != null) {
+                reachable.add(parent);
+            }
+        }
+        return reachable;
+    }
+
+    private Set<String> shallowCommits() {
+        File shallow = new File(GitDirs.resolve(workingDir), "shallow");
+        if (!shallow.isFile()) {
+            return Collections.emptySet();
+        }
+        try {
+            return new HashSet<>(Files.readAllLines(shallow.toPath(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return Collections.emptySet();
+        }
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final byte[] rawName;
+        private final String name;
+        private final int mode;
+        private final String id;
+
+        private Entry(byte[] rawName, int mode, String id) {
+            this.rawName = rawName;
+            this.name = new String(rawName, StandardCharsets.UTF_8);
+            this.mode = mode;
+            this.id = id;
+        }
+
+        private boolean isTree() {
+            return (mode & S_IFMT) == S_IFDIR;
+        }
+
+        // git's base_name_compare: trees sort as if their name ended with '/'
+        @Override
+        public int compareTo(Entry other) {
+            int length = Math.min(rawName.length, other.rawName.length);
+            for (int i = 0; i < length; i++) {
+                int compare = (rawName[i] & 0xff) - (other.rawName[i] & 0xff);
+                if (compare != 0) {
+                    return compare;
+                }
+            }
+            return terminator(length) - other.terminator(length);
+        }
+
+        private int terminator(int length) {
+            if (length < rawName.length) {
+                return rawName[length] & 0xff;
+            }
+            return isTree() ? '/' : 0;
+        }
+    }
+
+    private static class Commit {
+        private String tree;
+        private final List<String> parents = new ArrayList<>(2);
+        private String author = "";
+        private long time;
+        private final String message;
+
+        private Commit(byte[] content) {
+            int headerEnd = indexOf(content, "\n\n");
+            Charset encoding = StandardCharsets.UTF_8;
+            String[] headers = new String(content, 0, headerEnd < 0 ? content.length : headerEnd, StandardCharsets.UTF_8).split("\n");
+            for (String header : headers) {
+                if (header.startsWith("encoding ")) {
+                    encoding = charset(header.substring("encoding ".length()));
+                }
+            }
+            for (String header : new String(content, 0, headerEnd < 0 ? content.length : headerEnd, encoding).split("\n")) {
+                if (header.startsWith("tree ")) {
+                    tree = header.substring("tree ".length());
+                } else if (header.startsWith("parent ")) {
+                    parents.add(header.substring("parent ".length()));
+                } else if (header.startsWith("author ")) {
+                    int emailEnd = header.lastIndexOf('>');
+                    author = header.substring("author ".length(), emailEnd + 1);
+                    String[] date = header.substring(emailEnd + 1).trim().split(" ");
+                    time = Long.parseLong(date[0]);
+                }
+            }
+            message = headerEnd < 0 ? "" : new String(content, headerEnd + 2, content.length - headerEnd - 2, encoding);
+        }
+
+        private static Charset charset(String name) {
+            try {
+                return Charset.forName(name);
+            } catch (RuntimeException e) {
+                return StandardCharsets.UTF_8;
+            }
+        }
+
+        private static int indexOf(byte[] content, String separator) {
+            byte[] bytes = separator.getBytes(StandardCharsets.UTF_8);
+            outer:
+            for (int i = 0; i <= content.length - bytes.length; i++) {
+                for (int j = 0; j < bytes.length; j++) {
+                    if (content[i + j] != bytes[j]) {
+                        continue outer;
+                    }
+                }
+                return i;
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.tw.go.plugin.git;
+
+import com.tw.go.plugin.model.FileAction;
+import com.tw.go.plugin.model.Revision;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parses the output of {@code git log -z --name-status -c --pretty=format:FORMAT}, which carries the commit metadata
+ * and the changed paths of every commit in a single NUL-delimited stream.
+ * <p>
+ * Each commit is written as the five header fields of {@link #FORMAT} followed by {@code status NUL path NUL} pairs,
+ * or {@code status NUL source NUL path NUL} for a detected rename. Git separates the header from the first pair with a
+ * newline (or a NUL for combined merge diffs) and terminates each commit with a NUL, so empty tokens are skipped and the
+ * next commit is recognised by its object name.
+ */
+public class GitLogParser {
+    // http://www.kernel.org/pub/software/scm/git/docs/git-log.html
+    public static final String FORMAT = "%H%x00%P%x00%aN <%aE>%x00%at%x00%B%x00";
+    private static final int TAB_WIDTH = 8;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private final int maxModifiedFiles;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private byte[] spill = new byte[256];
+    private byte[] tokenBytes;
+    private int tokenStart;
+    private int tokenEnd;
+    private String pending;
+
+    public GitLogParser(InputStream input) {
+        this(input, 0);
+    }
+
+    /**
+     * @param maxModifiedFiles how many changed files to keep per revision, the others are only counted; {@code 0} keeps
+     *                         all of them
+     */
+    public GitLogParser(InputStream input, int maxModifiedFiles) {
+        this.input = input;
+        this.maxModifiedFiles = maxModifiedFiles;
+    }
+
+    public List<Revision> parse() throws IOException {
+        List<Revision> revisions = new ArrayList<>();
+        Revision revision;
+        while ((revision = next()) != null) {
+            revisions.add(revision);
+        }
+        return revisions;
+    }
+
+    public Stream<Revision> stream() {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Revision>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Revision> action) {
+                try {
+                    Revision revision = next();
+                    if (revision == null) {
+                        return false;
+                    }
+                    action.accept(revision);
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }, false);
+    }
+
+    public Revision next() throws IOException {
+        String sha = pending;
+        pending = null;
+        if (sha == null) {
+            if (!nextNonEmptyToken()) {
+                return null;
+            }
+            sha = tokenString();
+        }
+        requireToken();
+        boolean mergeCommit = indexOf(' ') >= 0;
+        requireToken();
+        String user = tokenString();
+        requireToken();
+        Date timestamp = new Date(tokenLong() * 1000L);
+        requireToken();
+        String comment = comment(tokenString());
+
+        Revision revision = new Revision(sha, timestamp, comment, user, emailId(user), null);
+        revision.setMergeCommit(mergeCommit);
+
+        int files = 0;
+        while (nextNonEmptyToken()) {
+            if (isObjectName()) {
+                pending = tokenString();
+                break;
+            }
+            char status = (char) tokenBytes[tokenStart];
+            boolean sourcePath = hasSourcePath(status, tokenEnd - tokenStart > 1 ? (char) tokenBytes[tokenStart + 1] : 0);
+            if (maxModifiedFiles > 0 && files >= maxModifiedFiles) {
+                skipToken();
+                if (sourcePath) {
+                    skipToken();
+                }
+                revision.addTruncatedModifiedFiles(1);
+                continue;
+            }
+            if (sourcePath) {
+                skipToken();
+            }
+            requireToken();
+            revision.createModifiedFile(tokenString(), FileAction.fromStatus(status));
+            files++;
+        }
+        return revision;
+    }
+
+    /**
+     * @param user the author as {@code name <email>}
+     */
+    static String emailId(String user) {
+        int start = user.lastIndexOf('<');
+        int end = user.lastIndexOf('>');
+        return start >= 0 && end > start ? user.substring(start + 1, end) : null;
+    }
+
+    public static String action(char action) {
+        return FileAction.fromStatus(action).getName();
+    }
+
+    // a rename or copy against a single parent carries a similarity score and is followed by the source and the
+    // destination path; a combined merge diff only lists the destination
+    static boolean hasSourcePath(String status) {
+        return hasSourcePath(status.charAt(0), status.length() > 1 ? status.charAt(1) : 0);
+    }
+
+    private static boolean hasSourcePath(char status, char next) {
+        return (status == 'R' || status == 'C') && next >= '0' && next <= '9';
+    }
+
+    // skips the empty tokens between commits and the newline git puts before the first changed file
+    private boolean nextNonEmptyToken() throws IOException {
+        while (nextToken()) {
+            if (tokenStart < tokenEnd && tokenBytes[tokenStart] == '\n') {
+                tokenStart++;
+            }
+            if (tokenStart < tokenEnd) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void requireToken() throws IOException {
+        if (!nextToken()) {
+            throw new IOException("Unexpected end of git-log output");
+        }
+    }
+
+    // reads past a path without decoding it
+    private void skipToken() throws IOException {
+        while (position < limit || fill()) {
+            for (int i = position; i < limit; i++) {
+                if (buffer[i] == 0) {
+                    position = i + 1;
+                    return;
+                }
+            }
+            position = limit;
+        }
+        throw new IOException("Unexpected end of git-log output");
+    }
+
+    /**
+     * Points the token at the bytes up to the next NUL. A token inside the read buffer is used in place; one that spans
+     * two reads is gathered in a spill buffer that is kept for the next one.
+     *
+     * @return false at the end of the output
+     */
+    private boolean nextToken() throws IOException {
+        int spilled = 0;
+        while (position < limit || fill()) {
+            for (int i = position; i < limit; i++) {
+                if (buffer[i] == 0) {
+                    if (spilled == 0) {
+                        token(buffer, position, i);
+                    } else {
+                        spilled = spill(spilled, position, i);
+                        token(spill, 0, spilled);
+                    }
+                    position = i + 1;
+                    return true;
+                }
+            }
+            spilled = spill(spilled, position, limit);
+            position = limit;
+        }
+        token(spill, 0, spilled);
+        return spilled > 0;
+    }
+
+    private void token(byte[] bytes, int start, int end) {
+        tokenBytes = bytes;
+        tokenStart = start;
+        tokenEnd = end;
+    }
+
+    private int spill(int spilled, int from, int to) {
+        int length = to - from;
+        if (spilled + length > spill.length) {
+            spill = Arrays.copyOf(spill, Math.max(spill.length * 2, spilled + length));
+        }
+        System.arraycopy(buffer, from, spill, spilled, length);
+        return spilled + length;
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = input.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    private String tokenString() {
+        return new String(tokenBytes, tokenStart, tokenEnd - tokenStart, StandardCharsets.UTF_8);
+    }
+
+    private long tokenLong() throws IOException {
+        long value = 0;
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            int digit = tokenBytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IOException("Unexpected timestamp in git-log output: " + tokenString());
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private int indexOf(char c) {
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            if (tokenBytes[i] == c) {
+                return i - tokenStart;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isObjectName() {
+        int length = tokenEnd - tokenStart;
+        if (length != 40 && length != 64) {
+            return false;
+        }
+        for (int i = tokenStart; i < tokenEnd; i++) {
+            byte c = tokenBytes[i];
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Renders the raw commit message the way {@code --pretty=medium} presents it, so comments stay identical to the
+     * ones read by {@link GitModificationParser}: leading and trailing blank lines are dropped, every line is
+     * right-trimmed and tabs are expanded. The JGit backend renders its comments with it as well.
+     */
+    public static String comment(String message) {
+        StringBuilder comment = new StringBuilder(message.length());
+        int blankLines = 0;
+        int start = 0;
+        while (start <= message.length()) {
+            int end = message.indexOf('\n', start);
+            if (end < 0) {
+                end = message.length();
+            }
+            int trimmed = end;
+            while (trimmed > start && isSpace(message.charAt(trimmed - 1))) {
+                trimmed--;
+            }
+            if (trimmed == start) {
+                blankLines++;
+            } else {
+                if (comment.length() > 0) {
+                    for (int i = 0; i <= blankLines; i++) {
+                        comment.append('\n');
+                    }
+                }
+                blankLines = 0;
+                expandTabs(comment, message, start, trimmed);
+            }
+            start = end + 1;
+        }
+        return comment.toString();
+    }
+
+    private static void expandTabs(StringBuilder comment, String message, int start, int end) {
+        int column = 0;
+        for (int i = start; i < end; i++) {
+            char c = message.charAt(i);
+            if (c == '\t') {
+                int spaces = TAB_WIDTH - (column % TAB_WIDTH);
+                for (int j = 0; j < spaces; j++) {
+                    comment.append(' ');
+                }
+                column = 0;
+            } else {
+                comment.append(c);
+                if (!Character.isLowSurrogate(c)) {
+                    column++;
+                }
+            }
+        }
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+}
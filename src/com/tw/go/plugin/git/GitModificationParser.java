@@ -3,57 +3,97 @@ package com.tw.go.plugin.git;
 import com.tw.go.plugin.model.Revision;
 import com.tw.go.plugin.util.DateUtils;
 
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Parses {@code git log --date=raw --pretty=medium}. Every line is dispatched on its first characters, so at most one
+ * pattern is matched against it. When parsing a whole log, the comment lines of a revision are gathered in one builder
+ * that is copied into the revision when its last line was read.
+ */
 public class GitModificationParser {
     private static final String SPACES = "\\s+";
-    private static final String COMMENT_INDENT = "\\s{4}";
-    private static final String COMMENT_TEXT = "(.*)";
     private static final String HASH = "(\\w+)";
-    private static final String DATE = "(.+)";
     private static final String AUTHOR = "(.+)";
     private static final String MULTIPLE_HASHES = "(.+)";
     private static final Pattern COMMIT_PATTERN = Pattern.compile("^commit" + SPACES + HASH + "$");
     private static final Pattern MERGE_PATTERN = Pattern.compile("^Merge:" + SPACES + MULTIPLE_HASHES + "$");
     private static final Pattern AUTHOR_PATTERN = Pattern.compile("^Author:" + SPACES + AUTHOR + "$");
-    private static final Pattern DATE_PATTERN = Pattern.compile("^Date:" + SPACES + DATE + "$");
-    private static final Pattern COMMENT_PATTERN = Pattern.compile("^" + COMMENT_INDENT + COMMENT_TEXT + "$");
+    private static final int COMMENT_INDENT = 4;
 
     private final LinkedList<Revision> revisions = new LinkedList<>();
+    private final StringBuilder comment = new StringBuilder();
 
     public List<Revision> parse(List<String> output) {
         for (String line : output) {
-            processLine(line);
+            process(line);
         }
+        finishComment();
         return revisions;
     }
 
+    /**
+     * Reads one more line; the last revision has its comment so far as soon as this returns.
+     */
     public void processLine(String line) {
-        Matcher matcher = COMMIT_PATTERN.matcher(line);
-        if (matcher.matches()) {
-            revisions.add(new Revision(matcher.group(1), null, "", "", null, null));
+        process(line);
+        if (comment.length() > 0) {
+            revisions.getLast().setComment(comment.toString());
         }
-        Matcher mergeMatcher = MERGE_PATTERN.matcher(line);
-        if(mergeMatcher.matches()) {
-            revisions.getLast().setMergeCommit(true);
+    }
+
+    private void process(String line) {
+        if (line.startsWith("commit")) {
+            Matcher matcher = COMMIT_PATTERN.matcher(line);
+            if (matcher.matches()) {
+                finishComment();
+                revisions.add(new Revision(matcher.group(1), null, "", "", null, null));
+            }
+        } else if (line.startsWith("Merge:")) {
+            if (MERGE_PATTERN.matcher(line).matches()) {
+                revisions.getLast().setMergeCommit(true);
+            }
+        } else if (line.startsWith("Author:")) {
+            Matcher authorMatcher = AUTHOR_PATTERN.matcher(line);
+            if (authorMatcher.matches()) {
+                revisions.getLast().setUser(authorMatcher.group(1));
+                revisions.getLast().setEmailId(GitLogParser.emailId(authorMatcher.group(1)));
+            }
+        } else if (line.startsWith("Date:")) {
+            long timestamp = DateUtils.toEpochMillis(line, "Date:".length(), line.length());
+            if (timestamp == DateUtils.INVALID) {
+                throw new RuntimeException("Unparseable date: \"" + line + "\"");
+            }
+            revisions.getLast().setTimestamp(new Date(timestamp));
+        } else if (isCommentLine(line)) {
+            if (comment.length() > 0) {
+                comment.append('\n');
+            }
+            comment.append(line, COMMENT_INDENT, line.length());
         }
-        Matcher authorMatcher = AUTHOR_PATTERN.matcher(line);
-        if (authorMatcher.matches()) {
-            revisions.getLast().setUser(authorMatcher.group(1));
+    }
+
+    private void finishComment() {
+        if (comment.length() > 0) {
+            revisions.getLast().setComment(comment.toString());
+            comment.setLength(0);
         }
-        Matcher dateMatcher = DATE_PATTERN.matcher(line);
-        if (dateMatcher.matches()) {
-            revisions.getLast().setTimestamp(DateUtils.parseISO8601(dateMatcher.group(1)));
+    }
+
+    // ^\s{4}(.*)$ for a single line
+    private static boolean isCommentLine(String line) {
+        if (line.length() < COMMENT_INDENT) {
+            return false;
         }
-        Matcher commentMatcher = COMMENT_PATTERN.matcher(line);
-        if (commentMatcher.matches()) {
-            Revision last = revisions.getLast();
-            String comment = last.getComment();
-            if (!comment.isEmpty()) comment += "\n";
-            last.setComment(comment + commentMatcher.group(1));
+        for (int i = 0; i < COMMENT_INDENT; i++) {
+            char c = line.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != 0x0B && c != '\f' && c != '\r') {
+                return false;
+            }
         }
+        return true;
     }
 }
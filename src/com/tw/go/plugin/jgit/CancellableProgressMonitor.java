@@ -0,0 +1,47 @@
+package com.tw.go.plugin.jgit;
+
+import com.tw.go.plugin.cmd.CancellationToken;
+import org.eclipse.jgit.lib.EmptyProgressMonitor;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports a JGit command as cancelled once the {@link CancellationToken} is cancelled or the operation's timeout has
+ * passed. JGit polls {@link #isCancelled()} between units of work; a read blocked on the network is bounded by the
+ * transport timeout instead.
+ */
+class CancellableProgressMonitor extends EmptyProgressMonitor {
+    private final String operation;
+    private final CancellationToken token;
+    private final int timeoutSeconds;
+    private final long deadline;
+
+    CancellableProgressMonitor(String operation, CancellationToken token, int timeoutSeconds) {
+        this.operation = operation;
+        this.token = token;
+        this.timeoutSeconds = timeoutSeconds;
+        this.deadline = timeoutSeconds > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds) : 0;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return token.isCancelled() || timedOut();
+    }
+
+    private boolean timedOut() {
+        return deadline != 0 && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * Throws if the operation was stopped by cancellation or its timeout, to report that instead of JGit's failure.
+     */
+    void check() {
+        if (token.isCancelled()) {
+            throw new CancellationException(operation + " cancelled");
+        }
+        if (timedOut()) {
+            throw new RuntimeException(String.format("%s timed out after %s seconds", operation, timeoutSeconds));
+        }
+    }
+}
@@ -1,17 +1,25 @@
 package com.tw.go.plugin.jgit;
 
 import com.tw.go.plugin.GitHelper;
-import com.tw.go.plugin.cmd.InMemoryConsumer;
+import com.tw.go.plugin.cmd.BoundedConsumer;
 import com.tw.go.plugin.cmd.ProcessOutputStreamConsumer;
+import com.tw.go.plugin.metrics.GitOperation;
+import com.tw.go.plugin.metrics.OperationTimer;
 import com.tw.go.plugin.model.GitConfig;
 import com.tw.go.plugin.model.ModifiedFile;
+import com.tw.go.plugin.model.ModifiedFilesLoader;
 import com.tw.go.plugin.model.Revision;
+import com.tw.go.plugin.model.WorkingCopyStatus;
+import com.tw.go.plugin.util.GitDirs;
 import com.tw.go.plugin.util.StringUtil;
 import org.apache.commons.io.FileUtils;
 import org.eclipse.jgit.api.*;
-import org.eclipse.jgit.diff.DiffEntry;
-import org.eclipse.jgit.diff.DiffFormatter;
-import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.errors.AmbiguousObjectException;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.RevisionSyntaxException;
+import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.internal.storage.file.GC;
 import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.revwalk.RevCommit;
 import org.eclipse.jgit.revwalk.RevWalk;
@@ -21,18 +29,31 @@ import org.eclipse.jgit.submodule.SubmoduleStatus;
 import org.eclipse.jgit.submodule.SubmoduleWalk;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
-import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
 import org.eclipse.jgit.util.FS;
-import org.eclipse.jgit.util.io.DisabledOutputStream;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 public class JGitHelper extends GitHelper {
+    private final Set<File> openedGitDirs = ConcurrentHashMap.newKeySet();
+    // guarded by this; the diffs block on reads, so they get threads of their own instead of the common pool's
+    private ForkJoinPool diffPool;
+
     public JGitHelper(GitConfig gitConfig, File workingDir) {
-        this(gitConfig, workingDir, new ProcessOutputStreamConsumer(new InMemoryConsumer()), new ProcessOutputStreamConsumer(new InMemoryConsumer()));
+        this(gitConfig, workingDir, new ProcessOutputStreamConsumer(new BoundedConsumer()), new ProcessOutputStreamConsumer(new BoundedConsumer()));
     }
 
     public JGitHelper(GitConfig gitConfig, File workingDir, ProcessOutputStreamConsumer stdOut, ProcessOutputStreamConsumer stdErr) {
@@ -47,9 +68,13 @@ public class JGitHelper extends GitHelper {
     @Override
     public void checkConnection() {
         try {
+            cancellationToken.throwIfCancelled();
             LsRemoteCommand lsRemote = Git.lsRemoteRepository().setHeads(true).setRemote(gitConfig.getUrl());
+            lsRemote.setTimeout(timeout(GitConfig::getFetchTimeoutSeconds));
             setCredentials(lsRemote);
             lsRemote.call();
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("check connection (ls-remote) failed", e);
         }
@@ -72,8 +97,90 @@ public class JGitHelper extends GitHelper {
             clone.setCloneSubmodules(true);
         }
         setCredentials(clone);
+        CancellableProgressMonitor monitor = monitor("clone", timeout(GitConfig::getCloneTimeoutSeconds));
+        clone.setTimeout(timeout(GitConfig::getCloneTimeoutSeconds)).setProgressMonitor(monitor);
+        RepositoryPool.evict(getGitDir(workingDir));
         try {
-            clone.call();
+            // the clone's repository is released; later calls use the pooled one
+            clone.call().close();
+        } catch (Exception e) {
+            monitor.check();
+            throw new RuntimeException("clone failed", e);
+        }
+    }
+
+    @Override
+    protected void cloneMirror(File directory) {
+        stdOut.consumeLine(String.format("[GIT] Creating mirror %s", directory));
+        CloneCommand clone = Git.cloneRepository()
+                .setURI(gitConfig.getUrl())
+                .setBare(true)
+                .setMirror(true)
+                .setDirectory(directory);
+        setCredentials(clone);
+        CancellableProgressMonitor monitor = monitor("mirror clone", timeout(GitConfig::getCloneTimeoutSeconds));
+        clone.setTimeout(timeout(GitConfig::getCloneTimeoutSeconds)).setProgressMonitor(monitor);
+        OperationTimer timer = metrics.start(GitOperation.MIRROR_FETCH);
+        try (Git git = clone.call()) {
+            // working directories borrowing its objects may still need unreachable ones
+            StoredConfig config = git.getRepository().getConfig();
+            config.setString("gc", null, "pruneExpire", "never");
+            config.save();
+        } catch (Exception e) {
+            timer.failed();
+            monitor.check();
+            throw new RuntimeException("mirror clone failed", e);
+        } finally {
+            timer.close();
+        }
+    }
+
+    @Override
+    protected void fetchMirror(File directory) {
+        stdOut.consumeLine(String.format("[GIT] Fetching mirror %s", directory));
+        CancellableProgressMonitor monitor = monitor("mirror fetch", timeout(GitConfig::getFetchTimeoutSeconds));
+        OperationTimer timer = metrics.start(GitOperation.MIRROR_FETCH);
+        try (Repository repository = new FileRepositoryBuilder().setGitDir(directory).setBare().build()) {
+            // from this helper's URL with its credentials, whoever created the mirror
+            FetchCommand fetch = new Git(repository).fetch().setRemote(gitConfig.getUrl()).setRefSpecs(new RefSpec(MIRROR_REFS)).setRemoveDeletedRefs(true);
+            setCredentials(fetch);
+            fetch.setTimeout(timeout(GitConfig::getFetchTimeoutSeconds)).setProgressMonitor(monitor);
+            fetch.call();
+        } catch (Exception e) {
+            timer.failed();
+            monitor.check();
+            throw new RuntimeException("mirror fetch failed", e);
+        } finally {
+            timer.close();
+        }
+    }
+
+    @Override
+    protected void cloneFromMirror(File directory) {
+        if (gitConfig.isNoCheckout()) {
+            stdOut.consumeLine("JGit implementation does not support noCheckout; cloning full...");
+        }
+        String branch = gitConfig.getEffectiveBranch();
+        RepositoryPool.evict(getGitDir(workingDir));
+        try (Git git = Git.init().setDirectory(workingDir).setInitialBranch(branch).call()) {
+            File alternates = new File(getGitDir(workingDir), "objects/info/alternates");
+            FileUtils.writeStringToFile(alternates, new File(directory, "objects").getAbsolutePath() + "\n", StandardCharsets.UTF_8);
+            StoredConfig config = git.getRepository().getConfig();
+            config.setString("remote", "origin", "url", gitConfig.getUrl());
+            config.setString("remote", "origin", "fetch", ORIGIN_BRANCHES);
+            config.save();
+        } catch (Exception e) {
+            throw new RuntimeException("clone failed", e);
+        }
+        // finds every object through the alternates, so only updates refs
+        fetch(null);
+        try (Repository repository = getRepository(workingDir)) {
+            new Git(repository).checkout()
+                    .setCreateBranch(true)
+                    .setName(branch)
+                    .setStartPoint("origin/" + branch)
+                    .setUpstreamMode(CreateBranchCommand.SetupUpstreamMode.TRACK)
+                    .call();
         } catch (Exception e) {
             throw new RuntimeException("clone failed", e);
         }
@@ -109,37 +216,109 @@ public class JGitHelper extends GitHelper {
     }
 
     @Override
-    public int getCommitCount() {
-        try (Repository repository = getRepository(workingDir)) {
-            Git git = new Git(repository);
-            return (int) StreamSupport.stream(git.log().call().spliterator(), false).count();
-        } catch (Exception e) {
+    protected String headCommit(String subModuleFolder) {
+        try (Repository repository = openRepository(subModuleFolder); RevWalk walk = new RevWalk(repository)) {
+            return parseCommit(repository, walk, Constants.HEAD).getName();
+        } catch (IOException e) {
+            throw new RuntimeException("resolve HEAD failed", e);
+        }
+    }
+
+    @Override
+    protected int countCommits(String subModuleFolder, String tip) {
+        try (Repository repository = openRepository(subModuleFolder); RevWalk walk = new RevWalk(repository)) {
+            walk.setRetainBody(false);
+            walk.markStart(parseCommit(repository, walk, tip));
+            return count(walk);
+        } catch (IOException e) {
             throw new RuntimeException("commit count failed", e);
         }
     }
 
+    @Override
+    protected int[] countDivergence(String subModuleFolder, String from, String to) {
+        try (Repository repository = openRepository(subModuleFolder)) {
+            return new int[]{countOnlyIn(repository, from, to), countOnlyIn(repository, to, from)};
+        } catch (IOException e) {
+            throw new RuntimeException("commit count failed", e);
+        }
+    }
+
+    private int countOnlyIn(Repository repository, String tip, String excluded) throws IOException {
+        try (RevWalk walk = new RevWalk(repository)) {
+            walk.setRetainBody(false);
+            walk.markStart(parseCommit(repository, walk, tip));
+            walk.markUninteresting(parseCommit(repository, walk, excluded));
+            return count(walk);
+        }
+    }
+
+    private int count(RevWalk walk) throws IOException {
+        int count = 0;
+        while (walk.next() != null) {
+            count++;
+        }
+        return count;
+    }
+
+    private Repository openRepository(String subModuleFolder) throws IOException {
+        if (subModuleFolder == null) {
+            return getRepository(workingDir);
+        }
+        Repository repository = SubmoduleWalk.getSubmoduleRepository(workingDir, subModuleFolder);
+        if (repository == null) {
+            throw new RuntimeException(String.format("Sub-module %s is not checked out - %s", subModuleFolder, workingDir));
+        }
+        return repository;
+    }
+
     @Override
     public String currentRevision() {
-        return getLatestRevision().getRevision();
+        return headCommit(null);
     }
 
     @Override
-    public List<Revision> getAllRevisions() {
+    protected String advertisedTip(String branch) {
+        OperationTimer timer = metrics.start(GitOperation.LS_REMOTE);
         try (Repository repository = getRepository(workingDir)) {
-            Git git = new Git(repository);
-            LogCommand logCmd = git.log();
-            Iterable<RevCommit> log = logCmd.call();
-            List<Revision> revisionObjs = new ArrayList<>();
-            for (RevCommit commit : log) {
-                Revision revisionObj = getRevisionObj(repository, commit);
-                revisionObjs.add(revisionObj);
-            }
-            return revisionObjs;
+            cancellationToken.throwIfCancelled();
+            // asks only for refs/heads/*, which JGit sends as an ls-refs prefix on protocol v2
+            LsRemoteCommand lsRemote = new Git(repository).lsRemote().setRemote("origin").setHeads(true);
+            lsRemote.setTimeout(timeout(GitConfig::getFetchTimeoutSeconds));
+            setCredentials(lsRemote);
+            Ref tip = lsRemote.callAsMap().get(Constants.R_HEADS + branch);
+            return tip == null ? null : tip.getObjectId().getName();
+        } catch (CancellationException e) {
+            timer.failed();
+            throw e;
         } catch (Exception e) {
-            throw new RuntimeException("get all revisions failed", e);
+            timer.failed();
+            throw new RuntimeException("ls-remote failed", e);
+        } finally {
+            timer.close();
+        }
+    }
+
+    @Override
+    protected String resolveCommit(String revision) {
+        try (Repository repository = getRepository(workingDir)) {
+            ObjectId commit = repository.resolve(revision + "^{commit}");
+            return commit == null ? null : commit.getName();
+        } catch (IOException | RevisionSyntaxException e) {
+            return null;
         }
     }
 
+    @Override
+    public List<Revision> getAllRevisions() {
+        return listRevisions(null, null, "get all revisions failed");
+    }
+
+    @Override
+    public Stream<Revision> streamAllRevisions() {
+        return streamRevisions(null, null, "get all revisions failed");
+    }
+
     @Override
     public Revision getLatestRevision() {
         return getLatestRevision(null);
@@ -147,14 +326,14 @@ public class JGitHelper extends GitHelper {
 
     @Override
     public Revision getLatestRevision(List<String> subPaths) {
-        try (Repository repository = getRepository(workingDir)) {
+        try (Repository repository = getRepository(workingDir); RevisionMaterializer materializer = new RevisionMaterializer(repository, gitConfig, metrics)) {
             Git git = new Git(repository);
             LogCommand logCmd = git.log().setMaxCount(1);
             addPathsToLogCommand(logCmd, subPaths);
             Iterable<RevCommit> log = logCmd.call();
             Iterator<RevCommit> iterator = log.iterator();
             if (iterator.hasNext()) {
-                return getRevisionObj(repository, iterator.next());
+                return materializer.materialize(iterator.next(), modifiedFilesLoader());
             }
         } catch (Exception e) {
             throw new RuntimeException("get latest revision failed", e);
@@ -169,46 +348,159 @@ public class JGitHelper extends GitHelper {
 
     @Override
     public List<Revision> getRevisionsSince(String previousRevision, List<String> subPaths) {
-        try (Repository repository = getRepository(workingDir)) {
-            Git git = new Git(repository);
-            LogCommand logCmd = git.log();
-            addPathsToLogCommand(logCmd, subPaths);
-            Iterable<RevCommit> log = logCmd.call();
-            List<RevCommit> newCommits = new ArrayList<>();
-            for (RevCommit commit : log) {
-                if (commit.getName().equals(previousRevision)) {
-                    break;
-                }
-                newCommits.add(commit);
+        return listRevisions(previousRevision, subPaths, "get newer revisions failed");
+    }
+
+    @Override
+    public Stream<Revision> streamRevisionsSince(String previousRevision, List<String> subPaths) {
+        return streamRevisions(previousRevision, subPaths, "get newer revisions failed");
+    }
+
+    // like git log [previousRevision..remoteBranch]: all of HEAD's history, or the commits of the remote branch that
+    // previousRevision cannot reach, so the walk stops at the merge base instead of searching for previousRevision
+    private Stream<Revision> streamRevisions(String previousRevision, List<String> subPaths, String failureMessage) {
+        CancellableProgressMonitor monitor = monitor("log", timeout(GitConfig::getLogTimeoutSeconds));
+        OperationTimer timer = metrics.start(GitOperation.GIT_LOG);
+        Repository repository = null;
+        RevWalk walk = null;
+        try {
+            repository = getRepository(workingDir);
+            walk = logWalk(repository, previousRevision, subPaths);
+            Repository logRepository = repository;
+            RevWalk logWalk = walk;
+            RevisionMaterializer materializer = new RevisionMaterializer(repository, gitConfig, metrics);
+            ModifiedFilesLoader loader = modifiedFilesLoader();
+            return StreamSupport.stream(walk.spliterator(), false)
+                    .map(commit -> {
+                        try {
+                            if (monitor.isCancelled()) {
+                                monitor.check();
+                            }
+                            Revision revision = materializer.materialize(commit, loader);
+                            commit.disposeBody();
+                            return revision;
+                        } catch (RuntimeException e) {
+                            timer.failed();
+                            throw e;
+                        } catch (Exception e) {
+                            timer.failed();
+                            throw new RuntimeException(failureMessage, e);
+                        }
+                    })
+                    .onClose(() -> {
+                        materializer.close();
+                        logWalk.close();
+                        logRepository.close();
+                        timer.close();
+                    });
+        } catch (Exception e) {
+            if (walk != null) {
+                walk.close();
+            }
+            if (repository != null) {
+                repository.close();
             }
+            timer.failed();
+            timer.close();
+            throw new RuntimeException(failureMessage, e);
+        }
+    }
 
-            List<Revision> revisionObjs = new ArrayList<>();
-            if (!newCommits.isEmpty()) {
-                for (RevCommit newCommit : newCommits) {
-                    Revision revisionObj = getRevisionObj(repository, newCommit);
-                    revisionObjs.add(revisionObj);
+    // the whole range is walked before any commit is diffed, so the diffs can be split between the threads of diffPool
+    private List<Revision> listRevisions(String previousRevision, List<String> subPaths, String failureMessage) {
+        int parallelism = gitConfig == null ? 1 : gitConfig.getDiffParallelism();
+        if (parallelism <= 1) {
+            try (Stream<Revision> revisions = streamRevisions(previousRevision, subPaths, failureMessage)) {
+                return revisions.collect(Collectors.toList());
+            }
+        }
+        CancellableProgressMonitor monitor = monitor("log", timeout(GitConfig::getLogTimeoutSeconds));
+        OperationTimer timer = metrics.start(GitOperation.GIT_LOG);
+        try (Repository repository = getRepository(workingDir); RevWalk walk = logWalk(repository, previousRevision, subPaths)) {
+            List<RevCommit> commits = new ArrayList<>();
+            for (RevCommit commit : walk) {
+                if (monitor.isCancelled()) {
+                    monitor.check();
                 }
+                commits.add(commit);
             }
-            return revisionObjs;
+            return RevisionMaterializer.materialize(repository, gitConfig, metrics, commits, modifiedFilesLoader(), diffPool(parallelism), RevisionMaterializer.MIN_COMMITS_PER_TASK, monitor);
         } catch (Exception e) {
-            throw new RuntimeException("get newer revisions failed", e);
+            timer.failed();
+            monitor.check();
+            throw new RuntimeException(failureMessage, e);
+        } finally {
+            timer.close();
+        }
+    }
+
+    private RevWalk logWalk(Repository repository, String previousRevision, List<String> subPaths) throws IOException {
+        RevWalk walk = new RevWalk(repository);
+        try {
+            walk.markStart(parseCommit(repository, walk, previousRevision == null ? Constants.HEAD : gitConfig.getRemoteBranch()));
+            if (previousRevision != null) {
+                walk.markUninteresting(parseCommit(repository, walk, previousRevision));
+            }
+            if (subPaths != null) {
+                walk.setTreeFilter(AndTreeFilter.create(PathFilterGroup.createFromStrings(subPaths.stream().map(String::trim).collect(Collectors.toList())), TreeFilter.ANY_DIFF));
+            }
+            return walk;
+        } catch (IOException | RuntimeException e) {
+            walk.close();
+            throw e;
+        }
+    }
+
+    private RevCommit parseCommit(Repository repository, RevWalk walk, String name) throws IOException {
+        RevCommit commit = lookupCommit(repository, walk, name);
+        if (commit == null) {
+            throw new RuntimeException(String.format("Unable to resolve revision %s - %s", name, workingDir));
+        }
+        return commit;
+    }
+
+    @Override
+    public boolean hasRevision(String revision) {
+        try (Repository repository = getRepository(workingDir); RevWalk walk = new RevWalk(repository)) {
+            return lookupCommit(repository, walk, revision) != null;
+        } catch (IOException e) {
+            throw new RuntimeException("revision lookup failed", e);
         }
     }
 
     @Override
     public Revision getDetailsForRevision(String sha) {
-        try (Repository repository = getRepository(workingDir)) {
-            Git git = new Git(repository);
-            LogCommand logCmd = git.log().all();
-            Iterable<RevCommit> log = logCmd.call();
-            for (RevCommit commit : log) {
-                if (commit.getName().equals(sha)) {
-                    return getRevisionObj(repository, commit);
+        Revision revision = getDetailsForRevisions(Collections.singletonList(sha)).get(sha);
+        if (revision == null) {
+            throw new RuntimeException(String.format("Unable to resolve revision %s - %s", sha, workingDir));
+        }
+        return revision;
+    }
+
+    @Override
+    public Map<String, Revision> getDetailsForRevisions(Collection<String> revisions) {
+        try (Repository repository = getRepository(workingDir); RevWalk walk = new RevWalk(repository);
+             RevisionMaterializer materializer = new RevisionMaterializer(repository, gitConfig, metrics)) {
+            Map<String, Revision> details = new LinkedHashMap<>();
+            for (String name : revisions) {
+                RevCommit commit = lookupCommit(repository, walk, name);
+                if (commit != null) {
+                    details.put(name, materializer.materialize(commit));
                 }
             }
-            return null;
+            return details;
         } catch (Exception e) {
-            throw new RuntimeException("get latest revision failed", e);
+            throw new RuntimeException("get revision details failed", e);
+        }
+    }
+
+    // resolves names, including abbreviated SHAs, directly through the object database instead of walking history
+    private RevCommit lookupCommit(Repository repository, RevWalk walk, String name) throws IOException {
+        try {
+            ObjectId id = repository.resolve(name + "^{commit}");
+            return id != null ? walk.parseCommit(id) : null;
+        } catch (AmbiguousObjectException | IncorrectObjectTypeException | MissingObjectException | RevisionSyntaxException e) {
+            return null;
         }
     }
 
@@ -236,30 +528,47 @@ public class JGitHelper extends GitHelper {
 
     @Override
     public void fetch(String refSpec) {
+        CancellableProgressMonitor monitor = monitor("fetch", timeout(GitConfig::getFetchTimeoutSeconds));
+        OperationTimer timer = metrics.start(GitOperation.FETCH);
         try (Repository repository = getRepository(workingDir)) {
             Git git = new Git(repository);
             FetchCommand fetch = git
                     .fetch()
                     .setRemoveDeletedRefs(true)
                     .setRecurseSubmodules(SubmoduleConfig.FetchRecurseSubmodulesMode.NO);
+            if (getMirror() != null) {
+                fetch.setRemote(getMirror().getDirectory().getAbsolutePath());
+            }
             if (!StringUtil.isEmpty(refSpec)) {
                 fetch.setRefSpecs(new RefSpec(refSpec));
+            } else if (getMirror() != null) {
+                // a path has no configured ref specs of its own
+                fetch.setRefSpecs(new RefSpec(ORIGIN_BRANCHES));
             }
             setCredentials(fetch);
+            fetch.setTimeout(timeout(GitConfig::getFetchTimeoutSeconds)).setProgressMonitor(monitor);
             fetch.call();
         } catch (Exception e) {
+            timer.failed();
+            monitor.check();
             throw new RuntimeException("fetch failed", e);
+        } finally {
+            timer.close();
         }
     }
 
     @Override
     public void resetHard(String revision) {
+        OperationTimer timer = metrics.start(GitOperation.RESET_HARD);
         try (Repository repository = getRepository(workingDir)) {
             Git git = new Git(repository);
             ResetCommand reset = git.reset().setMode(ResetCommand.ResetType.HARD).setRef(revision);
             reset.call();
         } catch (Exception e) {
+            timer.failed();
             throw new RuntimeException("reset failed", e);
+        } finally {
+            timer.close();
         }
     }
 
@@ -269,19 +578,60 @@ public class JGitHelper extends GitHelper {
         return true;
     }
 
+    @Override
+    public WorkingCopyStatus workingCopyStatus(String revision) {
+        CancellableProgressMonitor monitor = monitor("status", timeout(GitConfig::getCleanTimeoutSeconds));
+        OperationTimer timer = metrics.start(GitOperation.STATUS);
+        try (Repository repository = getRepository(workingDir)) {
+            ObjectId head = repository.resolve(Constants.HEAD + "^{commit}");
+            ObjectId target = repository.resolve(revision + "^{commit}");
+            if (head == null || target == null) {
+                return null;
+            }
+            IndexDiff diff = new IndexDiff(repository, head, new FileTreeIterator(repository));
+            if (!diff.diff(monitor, ProgressMonitor.UNKNOWN, ProgressMonitor.UNKNOWN, "status")) {
+                monitor.check();
+            }
+            int trackedChanges = diff.getAdded().size() + diff.getChanged().size() + diff.getRemoved().size()
+                    + diff.getMissing().size() + diff.getModified().size() + diff.getConflicting().size();
+            int untracked = diff.getUntracked().size() + diff.getUntrackedFolders().size();
+            return new WorkingCopyStatus(head.name(), target.name(), trackedChanges, untracked);
+        } catch (CancellationException e) {
+            timer.failed();
+            throw e;
+        } catch (Exception e) {
+            timer.failed();
+            monitor.check();
+            return null;
+        } finally {
+            timer.close();
+        }
+    }
+
     @Override
     public void cleanAllUnversionedFiles() {
+        CancellableProgressMonitor monitor = monitor("clean", timeout(GitConfig::getCleanTimeoutSeconds));
+        OperationTimer timer = metrics.start(GitOperation.CLEAN);
         try (Repository repository = getRepository(workingDir);
              Git git = new Git(repository);
              SubmoduleWalk walk = SubmoduleWalk.forIndex(repository)) {
             while (walk.next()) {
+                monitor.check();
                 cleanSubmoduleOfAllUnversionedFiles(walk);
             }
 
+            monitor.check();
             CleanCommand clean = git.clean().setCleanDirectories(true);
             clean.call();
+        } catch (CancellationException e) {
+            timer.failed();
+            throw e;
         } catch (Exception e) {
+            timer.failed();
+            monitor.check();
             throw new RuntimeException("clean failed", e);
+        } finally {
+            timer.close();
         }
     }
 
@@ -296,14 +646,108 @@ public class JGitHelper extends GitHelper {
         }
     }
 
+    // GarbageCollectCommand has no equivalent of gc --auto, so gc() collects in full as it always has on JGit; only the
+    // gc the maintenance policy asks for also writes the commit-graph
     @Override
     public void gc() {
+        gc(false);
+    }
+
+    @Override
+    protected void fullGc() {
+        gc(true);
+    }
+
+    private void gc(boolean commitGraph) {
+        CancellableProgressMonitor monitor = monitor("gc", 0);
+        OperationTimer timer = metrics.start(GitOperation.GC);
         try (Repository repository = getRepository(workingDir)) {
-            Git git = new Git(repository);
-            GarbageCollectCommand gc = git.gc();
-            gc.call();
+            String[] previous = commitGraph ? enableCommitGraph(repository.getConfig()) : null;
+            try {
+                Git git = new Git(repository);
+                GarbageCollectCommand gc = git.gc().setProgressMonitor(monitor);
+                gc.call();
+            } finally {
+                if (previous != null) {
+                    restoreCommitGraph(repository.getConfig(), previous);
+                }
+            }
         } catch (Exception e) {
+            timer.failed();
+            monitor.check();
             throw new RuntimeException("gc failed", e);
+        } finally {
+            timer.close();
+        }
+    }
+
+    @Override
+    public void repack() {
+        CancellableProgressMonitor monitor = monitor("repack", 0);
+        OperationTimer timer = metrics.start(GitOperation.REPACK);
+        try (Repository repository = getRepository(workingDir)) {
+            String[] previous = enableCommitGraph(repository.getConfig());
+            try {
+                if (repository instanceof FileRepository) {
+                    GC gc = new GC((FileRepository) repository);
+                    gc.setProgressMonitor(monitor);
+                    gc.repack();
+                    gc.prunePacked();
+                } else {
+                    // the public API only collects in full, which includes the repack
+                    new Git(repository).gc().setProgressMonitor(monitor).call();
+                }
+            } finally {
+                restoreCommitGraph(repository.getConfig(), previous);
+            }
+        } catch (Exception e) {
+            timer.failed();
+            monitor.check();
+            throw new RuntimeException("repack failed", e);
+        } finally {
+            timer.close();
+        }
+    }
+
+    // JGit only reads and writes the commit-graph when its config asks for it; git does both by default. The settings
+    // go to the in-memory config for the one collection and are put back after it, the user's config file is left alone
+    private static String[] enableCommitGraph(StoredConfig config) {
+        String[] previous = {
+                config.getString(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_COMMIT_GRAPH),
+                config.getString(ConfigConstants.CONFIG_GC_SECTION, null, ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH)
+        };
+        config.setBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_COMMIT_GRAPH, true);
+        config.setBoolean(ConfigConstants.CONFIG_GC_SECTION, null, ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, true);
+        return previous;
+    }
+
+    private static void restoreCommitGraph(StoredConfig config, String[] previous) {
+        restore(config, ConfigConstants.CONFIG_CORE_SECTION, ConfigConstants.CONFIG_COMMIT_GRAPH, previous[0]);
+        restore(config, ConfigConstants.CONFIG_GC_SECTION, ConfigConstants.CONFIG_KEY_WRITE_COMMIT_GRAPH, previous[1]);
+    }
+
+    private static void restore(StoredConfig config, String section, String name, String value) {
+        if (value == null) {
+            config.unset(section, null, name);
+        } else {
+            config.setString(section, null, name, value);
+        }
+    }
+
+    @Override
+    public void packRefs() {
+        OperationTimer timer = metrics.start(GitOperation.PACK_REFS);
+        try (Repository repository = getRepository(workingDir)) {
+            if (repository instanceof FileRepository) {
+                new GC((FileRepository) repository).packRefs();
+            } else {
+                new Git(repository).gc().call();
+            }
+        } catch (Exception e) {
+            timer.failed();
+            throw new RuntimeException("pack-refs failed", e);
+        } finally {
+            timer.close();
         }
     }
 
@@ -359,17 +803,6 @@ public class JGitHelper extends GitHelper {
         }
     }
 
-    @Override
-    public int getSubModuleCommitCount(String subModuleFolder) {
-        try (Repository repository = getRepository(workingDir);
-             Repository subModuleRepository = SubmoduleWalk.getSubmoduleRepository(repository, subModuleFolder)) {
-            Git git = new Git(subModuleRepository);
-            return (int) StreamSupport.stream(git.log().call().spliterator(), false).count();
-        } catch (Exception e) {
-            throw new RuntimeException("sub-module commit count failed", e);
-        }
-    }
-
     @Override
     public void submoduleInit() {
         try (Repository repository = getRepository(workingDir)) {
@@ -392,18 +825,25 @@ public class JGitHelper extends GitHelper {
 
     @Override
     public void submoduleUpdate() {
+        CancellableProgressMonitor monitor = monitor("sub-module update", timeout(GitConfig::getFetchTimeoutSeconds));
+        OperationTimer timer = metrics.start(GitOperation.SUBMODULE_UPDATE);
         try (Repository repository = getRepository(workingDir)) {
             Git git = new Git(repository);
-            git.submoduleUpdate().call();
+            git.submoduleUpdate().setTimeout(timeout(GitConfig::getFetchTimeoutSeconds)).setProgressMonitor(monitor).call();
         } catch (Exception e) {
+            timer.failed();
+            monitor.check();
             throw new RuntimeException("sub-module update failed", e);
+        } finally {
+            timer.close();
         }
     }
 
     @Override
     public void init() {
+        RepositoryPool.evict(getGitDir(workingDir));
         try {
-            Git.init().setDirectory(workingDir).call();
+            Git.init().setDirectory(workingDir).call().close();
 
             FileRepositoryBuilder
                     .create(new File(workingDir.getAbsolutePath(), ".git"))
@@ -502,58 +942,42 @@ public class JGitHelper extends GitHelper {
         }
     }
 
-    private Revision getRevisionObj(Repository repository, RevCommit commit) throws IOException {
-        String commitSHA = commit.getName();
-        Date commitTime = commit.getAuthorIdent().getWhen();
-        String comment = commit.getFullMessage().trim();
-        String user = commit.getAuthorIdent().getName();
-        String emailId = commit.getAuthorIdent().getEmailAddress();
-        List<ModifiedFile> modifiedFiles = new ArrayList<>();
-        if (commit.getParentCount() == 0) {
-            TreeWalk treeWalk = new TreeWalk(repository);
-            treeWalk.addTree(commit.getTree());
-            treeWalk.setRecursive(false);
-            while (treeWalk.next()) {
-                modifiedFiles.add(new ModifiedFile(treeWalk.getPathString(), "added"));
-            }
-        } else {
-            RevWalk rw = new RevWalk(repository);
-            RevCommit parent = rw.parseCommit(commit.getParent(0).getId());
-            DiffFormatter diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE);
-            diffFormatter.setRepository(repository);
-            diffFormatter.setDiffComparator(RawTextComparator.DEFAULT);
-            diffFormatter.setDetectRenames(true);
-            List<DiffEntry> diffEntries = diffFormatter.scan(parent.getTree(), commit.getTree());
-            for (DiffEntry diffEntry : diffEntries) {
-                modifiedFiles.add(new ModifiedFile(diffEntry.getNewPath(), getAction(diffEntry.getChangeType().name())));
+    private Repository getRepository(File folder) throws IOException {
+        File gitDir = getGitDir(folder);
+        openedGitDirs.add(gitDir);
+        return RepositoryPool.open(gitDir);
+    }
+
+    private synchronized ForkJoinPool diffPool(int parallelism) {
+        if (diffPool == null || diffPool.getParallelism() != parallelism) {
+            if (diffPool != null) {
+                diffPool.shutdown();
             }
+            diffPool = new ForkJoinPool(parallelism);
         }
-        boolean isMergeCommit = commit.getParentCount() > 1;
-
-        Revision revision = new Revision(commitSHA, commitTime, comment, user, emailId, modifiedFiles);
-        revision.setMergeCommit(isMergeCommit);
-        return revision;
+        return diffPool;
     }
 
-    private String getAction(String gitAction) {
-        if (gitAction.equalsIgnoreCase("ADD") || gitAction.equalsIgnoreCase("RENAME")) {
-            return "added";
-        }
-        if (gitAction.equals("MODIFY")) {
-            return "modified";
+    /**
+     * Releases the pooled repositories this helper has opened and stops its diff threads. Other helpers of the same
+     * directories open the repositories again.
+     */
+    @Override
+    public void close() {
+        for (File gitDir : openedGitDirs) {
+            RepositoryPool.evict(gitDir);
         }
-        if (gitAction.equals("DELETE")) {
-            return "deleted";
+        openedGitDirs.clear();
+        synchronized (this) {
+            if (diffPool != null) {
+                diffPool.shutdown();
+                diffPool = null;
+            }
         }
-        return "unknown";
-    }
-
-    private Repository getRepository(File folder) throws IOException {
-        return new FileRepositoryBuilder().setGitDir(getGitDir(folder)).readEnvironment().findGitDir().build();
     }
 
     private File getGitDir(File folder) {
-        return new File(folder, ".git");
+        return GitDirs.resolve(folder);
     }
 
     private void setCredentials(TransportCommand command) {
@@ -561,4 +985,12 @@ public class JGitHelper extends GitHelper {
             command.setCredentialsProvider(new UsernamePasswordCredentialsProvider(gitConfig.getUsername(), gitConfig.getPassword()));
         }
     }
+
+    private int timeout(ToIntFunction<GitConfig> setting) {
+        return gitConfig == null ? 0 : setting.applyAsInt(gitConfig);
+    }
+
+    private CancellableProgressMonitor monitor(String operation, int timeoutSeconds) {
+        return new CancellableProgressMonitor(operation, cancellationToken, timeoutSeconds);
+    }
 }
@@ -0,0 +1,120 @@
+package com.tw.go.plugin.jgit;
+
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one open {@link Repository} per git directory so that config, refs and pack indexes are read once and not on
+ * every call. Each {@link #open(File)} increments the repository's use count and the caller's {@code close()}
+ * decrements it; the pool holds one more use, released when the repository has not been opened for
+ * {@link #IDLE_TIMEOUT_MILLIS} or is evicted. Callers still using it keep it open until they close it.
+ */
+class RepositoryPool {
+    static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Map<File, PooledRepository> repositories = new HashMap<>();
+    private static final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jgit-repository-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        evictor.scheduleWithFixedDelay(RepositoryPool::evictIdle, IDLE_TIMEOUT_MILLIS, IDLE_TIMEOUT_MILLIS / 2, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the shared repository of {@code gitDir}; close it when done, e.g. with try-with-resources
+     */
+    static Repository open(File gitDir) throws IOException {
+        File key = gitDir.getAbsoluteFile();
+        synchronized (repositories) {
+            Object identity = identity(key);
+            PooledRepository pooled = repositories.get(key);
+            if (pooled != null && !Objects.equals(pooled.identity, identity)) {
+                // the directory was deleted or replaced behind our back, e.g. cloned again by another process; a
+                // replacement that reuses the inodes goes unnoticed, so helpers evict before re-creating a repository
+                repositories.remove(key);
+                pooled.repository.close();
+                pooled = null;
+            }
+            if (pooled == null) {
+                pooled = new PooledRepository(new FileRepositoryBuilder().setGitDir(key).readEnvironment().findGitDir().build(), identity);
+                repositories.put(key, pooled);
+            }
+            pooled.lastUsed = System.currentTimeMillis();
+            pooled.repository.incrementOpen();
+            return pooled.repository;
+        }
+    }
+
+    /**
+     * Releases the pool's use of a repository, e.g. before its directory is deleted and cloned again.
+     */
+    static void evict(File gitDir) {
+        PooledRepository pooled;
+        synchronized (repositories) {
+            pooled = repositories.remove(gitDir.getAbsoluteFile());
+        }
+        if (pooled != null) {
+            pooled.repository.close();
+        }
+    }
+
+    static void evictIdle() {
+        long idleSince = System.currentTimeMillis() - IDLE_TIMEOUT_MILLIS;
+        synchronized (repositories) {
+            for (Iterator<PooledRepository> iterator = repositories.values().iterator(); iterator.hasNext(); ) {
+                PooledRepository pooled = iterator.next();
+                if (pooled.lastUsed < idleSince) {
+                    iterator.remove();
+                    pooled.repository.close();
+                }
+            }
+        }
+    }
+
+    // git never replaces these directories itself, so a different file key means a different repository
+    private static Object identity(File gitDir) {
+        try {
+            return Arrays.asList(fileKey(gitDir), fileKey(new File(gitDir, "objects")));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Object fileKey(File file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        return attributes.fileKey() != null ? attributes.fileKey() : attributes.creationTime();
+    }
+
+    static boolean isPooled(File gitDir) {
+        synchronized (repositories) {
+            return repositories.containsKey(gitDir.getAbsoluteFile());
+        }
+    }
+
+    private static class PooledRepository {
+        private final Repository repository;
+        private final Object identity;
+        private long lastUsed;
+
+        private PooledRepository(Repository repository, Object identity) {
+            this.repository = repository;
+            this.identity = identity;
+        }
+    }
+}
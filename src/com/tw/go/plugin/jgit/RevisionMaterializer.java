@@ -0,0 +1,221 @@
+package com.tw.go.plugin.jgit;
+
+import com.tw.go.plugin.git.GitLogParser;
+import com.tw.go.plugin.metrics.GitMetrics;
+import com.tw.go.plugin.metrics.GitOperation;
+import com.tw.go.plugin.metrics.OperationTimer;
+import com.tw.go.plugin.model.FileAction;
+import com.tw.go.plugin.model.GitConfig;
+import com.tw.go.plugin.model.ModifiedFilesLoader;
+import com.tw.go.plugin.model.Revision;
+import org.eclipse.jgit.diff.DiffConfig;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.RenameDetector;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Turns commits into {@link Revision}s, rendering them exactly as the command line backend does (see
+ * {@link GitLogParser} and {@code GitCommitReader}). One materializer keeps a single {@link ObjectReader}, parent walk
+ * and tree walk for all the commits it is given, so a log of many commits reuses the reader's caches instead of opening
+ * new walks per commit. It is not thread-safe; {@link #materialize(Repository, GitConfig, GitMetrics, List, ModifiedFilesLoader, ForkJoinPool, int, CancellableProgressMonitor)}
+ * gives every fork-join task its own.
+ */
+class RevisionMaterializer implements AutoCloseable {
+    static final int MIN_COMMITS_PER_TASK = 64;
+
+    private final GitMetrics metrics;
+    private final ObjectReader reader;
+    private final RevWalk parents;
+    private final TreeWalk treeWalk;
+    private final RenameDetector renames;
+    private final int maxModifiedFiles;
+    private int uncollected;
+
+    RevisionMaterializer(Repository repository, GitConfig gitConfig, GitMetrics metrics) {
+        this.metrics = metrics;
+        this.maxModifiedFiles = gitConfig == null ? 0 : gitConfig.getMaxModifiedFiles();
+        this.reader = repository.newObjectReader();
+        this.parents = new RevWalk(reader);
+        this.parents.setRetainBody(false);
+        this.treeWalk = new TreeWalk(repository, reader);
+        this.treeWalk.setRecursive(true);
+        this.treeWalk.setFilter(TreeFilter.ANY_DIFF);
+        this.renames = gitConfig == null || gitConfig.isRenameDetection(true) ? renameDetector(repository, gitConfig) : null;
+    }
+
+    private RenameDetector renameDetector(Repository repository, GitConfig gitConfig) {
+        RenameDetector detector = new RenameDetector(reader, repository.getConfig().get(DiffConfig.KEY));
+        if (gitConfig == null) {
+            return detector;
+        }
+        detector.setRenameLimit(gitConfig.getRenameLimit());
+        detector.setBigFileThreshold(gitConfig.getRenameBlobSizeLimitBytes());
+        detector.setSkipContentRenamesForBinaryFiles(gitConfig.isRenameSkipBinary());
+        return detector;
+    }
+
+    /**
+     * Materializes the commits in order. With a pool of more than one thread the commits are split into contiguous runs
+     * of at least {@code minCommitsPerTask}, at most one per thread, and each run is diffed on the pool with its own
+     * reader.
+     *
+     * @param loader given to every revision instead of its changed files, or {@code null} to diff the commits
+     */
+    static List<Revision> materialize(Repository repository, GitConfig gitConfig, GitMetrics metrics, List<RevCommit> commits, ModifiedFilesLoader loader, ForkJoinPool pool, int minCommitsPerTask, CancellableProgressMonitor monitor) throws IOException {
+        int tasks = loader == null ? Math.min(pool.getParallelism(), commits.size() / Math.max(1, minCommitsPerTask)) : 1;
+        if (tasks <= 1) {
+            return materialize(repository, gitConfig, metrics, commits, loader, monitor);
+        }
+
+        List<ForkJoinTask<List<Revision>>> runs = new ArrayList<>(tasks);
+        int runLength = (commits.size() + tasks - 1) / tasks;
+        for (int from = 0; from < commits.size(); from += runLength) {
+            List<RevCommit> run = commits.subList(from, Math.min(commits.size(), from + runLength));
+            runs.add(pool.submit(ForkJoinTask.adapt(() -> materialize(repository, gitConfig, metrics, run, null, monitor))));
+        }
+        // every run is done with the repository before a failure is thrown
+        runs.forEach(ForkJoinTask::quietlyJoin);
+
+        List<Revision> revisions = new ArrayList<>(commits.size());
+        for (ForkJoinTask<List<Revision>> run : runs) {
+            revisions.addAll(run.join());
+        }
+        return revisions;
+    }
+
+    private static List<Revision> materialize(Repository repository, GitConfig gitConfig, GitMetrics metrics, List<RevCommit> commits, ModifiedFilesLoader loader, CancellableProgressMonitor monitor) throws IOException {
+        List<Revision> revisions = new ArrayList<>(commits.size());
+        try (RevisionMaterializer materializer = new RevisionMaterializer(repository, gitConfig, metrics)) {
+            for (RevCommit commit : commits) {
+                if (monitor.isCancelled()) {
+                    monitor.check();
+                }
+                revisions.add(materializer.materialize(commit, loader));
+            }
+        }
+        return revisions;
+    }
+
+    Revision materialize(RevCommit commit) throws IOException {
+        return materialize(commit, null);
+    }
+
+    /**
+     * @param loader given to the revision instead of its changed files, or {@code null} to diff the commit
+     */
+    Revision materialize(RevCommit commit, ModifiedFilesLoader loader) throws IOException {
+        PersonIdent author = commit.getAuthorIdent();
+        String user = String.format("%s <%s>", author.getName(), author.getEmailAddress());
+        String comment = GitLogParser.comment(commit.getFullMessage());
+        Revision revision = new Revision(commit.getName(), author.getWhen(), comment, user, author.getEmailAddress(), new ArrayList<>());
+        revision.setMergeCommit(commit.getParentCount() > 1);
+        if (loader != null) {
+            revision.setModifiedFilesLoader(loader);
+            return revision;
+        }
+        OperationTimer timer = metrics.start(GitOperation.DIFF_TREE);
+        try {
+            addModifiedFiles(commit, revision);
+        } catch (IOException | RuntimeException e) {
+            timer.failed();
+            throw e;
+        } finally {
+            timer.close();
+        }
+        return revision;
+    }
+
+    // git diff-tree --name-status --root -r -c: every file of a root commit, and for a merge only the files that
+    // differ from all parents. A single diff only counts the files past maxModifiedFiles and, as over the rename limit,
+    // does not look for renames among them; merges need all files and are cut afterwards.
+    private void addModifiedFiles(RevCommit commit, Revision revision) throws IOException {
+        Map<String, Character> changes = null;
+        int limit = commit.getParentCount() <= 1 ? maxModifiedFiles : 0;
+        uncollected = 0;
+        if (commit.getParentCount() == 0) {
+            treeWalk.reset();
+            treeWalk.addTree(new EmptyTreeIterator());
+            treeWalk.addTree(commit.getTree());
+            changes = changes(limit);
+        }
+        for (RevCommit parent : commit.getParents()) {
+            RevTree parentTree = parents.parseCommit(parent).getTree();
+            treeWalk.reset(parentTree, commit.getTree());
+            Map<String, Character> parentChanges = changes(limit);
+            if (renames != null && uncollected == 0 && parentChanges.containsValue('A') && parentChanges.containsValue('D')) {
+                treeWalk.reset(parentTree, commit.getTree());
+                detectRenames(parentChanges);
+            }
+            if (changes == null) {
+                changes = parentChanges;
+            } else {
+                changes.keySet().retainAll(parentChanges.keySet());
+            }
+        }
+        int files = 0;
+        for (Map.Entry<String, Character> change : changes.entrySet()) {
+            if (maxModifiedFiles > 0 && files >= maxModifiedFiles) {
+                uncollected += changes.size() - files;
+                break;
+            }
+            revision.createModifiedFile(change.getKey(), FileAction.fromStatus(change.getValue()));
+            files++;
+        }
+        revision.addTruncatedModifiedFiles(uncollected);
+    }
+
+    private Map<String, Character> changes(int limit) throws IOException {
+        Map<String, Character> changes = new LinkedHashMap<>();
+        while (treeWalk.next()) {
+            if (limit > 0 && changes.size() >= limit) {
+                uncollected++;
+                continue;
+            }
+            int oldType = treeWalk.getRawMode(0) & FileMode.TYPE_MASK;
+            int newType = treeWalk.getRawMode(1) & FileMode.TYPE_MASK;
+            char action = oldType == FileMode.TYPE_MISSING ? 'A' : newType == FileMode.TYPE_MISSING ? 'D' : oldType == newType ? 'M' : 'T';
+            changes.put(treeWalk.getPathString(), action);
+        }
+        return changes;
+    }
+
+    // like git diff -M -l<limit>: over the rename limit only exact renames are found and the other files stay deleted
+    // and added; files of another type are never paired, so a type change keeps its own entry
+    private void detectRenames(Map<String, Character> changes) throws IOException {
+        renames.reset();
+        renames.addAll(DiffEntry.scan(treeWalk));
+        for (DiffEntry entry : renames.compute()) {
+            if (entry.getChangeType() == DiffEntry.ChangeType.RENAME && Objects.equals(changes.get(entry.getOldPath()), 'D')) {
+                changes.remove(entry.getOldPath());
+                changes.put(entry.getNewPath(), 'R');
+            } else if (entry.getChangeType() == DiffEntry.ChangeType.COPY) {
+                changes.put(entry.getNewPath(), 'C');
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        treeWalk.close();
+        parents.close();
+        reader.close();
+    }
+}
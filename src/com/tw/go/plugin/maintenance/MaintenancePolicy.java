@@ -0,0 +1,18 @@
+package com.tw.go.plugin.maintenance;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides which maintenance tasks {@link com.tw.go.plugin.GitHelper#maintain()} runs after a fetch. It is asked on every
+ * poll, so it should return quickly when nothing is due.
+ */
+public interface MaintenancePolicy {
+    MaintenancePolicy NEVER = (gitDir, state, now) -> Collections.emptyList();
+
+    /**
+     * @param state may be updated, e.g. to remember the check; it is saved after the tasks have run
+     */
+    List<MaintenanceTask> plan(File gitDir, MaintenanceState state, long now);
+}
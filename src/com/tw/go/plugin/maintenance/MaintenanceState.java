@@ -0,0 +1,91 @@
+package com.tw.go.plugin.maintenance;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * When maintenance was last checked for and run, kept in {@code .git/git-cmd-maintenance} so that it survives restarts
+ * and is shared by both backends.
+ */
+public class MaintenanceState {
+    static final String FILE_NAME = "git-cmd-maintenance";
+    private static final String LAST_CHECK = "lastCheck";
+
+    private final Properties properties;
+    private boolean dirty;
+
+    MaintenanceState(Properties properties) {
+        this.properties = properties;
+    }
+
+    public static MaintenanceState load(File gitDir) {
+        Properties properties = new Properties();
+        File file = new File(gitDir, FILE_NAME);
+        if (file.isFile()) {
+            try (InputStream input = Files.newInputStream(file.toPath())) {
+                properties.load(input);
+            } catch (IOException | IllegalArgumentException ignore) {
+                // a damaged state file only means maintenance is checked again
+                properties.clear();
+            }
+        }
+        return new MaintenanceState(properties);
+    }
+
+    public void save(File gitDir) {
+        if (!dirty) {
+            return;
+        }
+        try {
+            File file = new File(gitDir, FILE_NAME);
+            File temp = new File(gitDir, FILE_NAME + ".tmp");
+            try (OutputStream output = Files.newOutputStream(temp.toPath())) {
+                properties.store(output, null);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not save maintenance state in " + gitDir, e);
+        }
+    }
+
+    /**
+     * @return epoch millis of the last check, or 0 if there was none
+     */
+    public long lastCheck() {
+        return get(LAST_CHECK);
+    }
+
+    public void checked(long now) {
+        set(LAST_CHECK, now);
+    }
+
+    /**
+     * @return epoch millis of the last run of {@code task}, or 0 if it never ran
+     */
+    public long lastRun(MaintenanceTask task) {
+        return get(task.name());
+    }
+
+    public void ran(MaintenanceTask task, long now) {
+        set(task.name(), now);
+    }
+
+    private long get(String key) {
+        try {
+            return Long.parseLong(properties.getProperty(key, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void set(String key, long value) {
+        properties.setProperty(key, Long.toString(value));
+        dirty = true;
+    }
+}
@@ -0,0 +1,13 @@
+package com.tw.go.plugin.maintenance;
+
+public enum MaintenanceTask {
+    /**
+     * Full garbage collection; includes the work of the other tasks.
+     */
+    GC,
+    /**
+     * Consolidates packs into one and drops loose objects that are already packed.
+     */
+    REPACK,
+    PACK_REFS
+}
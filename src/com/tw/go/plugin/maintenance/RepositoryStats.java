@@ -0,0 +1,70 @@
+package com.tw.go.plugin.maintenance;
+
+import java.io.File;
+
+/**
+ * Counts the parts of a repository that slow git down when they pile up, reading only a few directory listings.
+ */
+public class RepositoryStats {
+    private final int looseObjects;
+    private final int packs;
+    private final int looseRefs;
+
+    public RepositoryStats(int looseObjects, int packs, int looseRefs) {
+        this.looseObjects = looseObjects;
+        this.packs = packs;
+        this.looseRefs = looseRefs;
+    }
+
+    /**
+     * @param looseRefLimit stops counting loose refs past this number, so a repository with many refs stays cheap
+     */
+    public static RepositoryStats of(File gitDir, int looseRefLimit) {
+        File objects = new File(gitDir, "objects");
+        return new RepositoryStats(estimateLooseObjects(objects), countPacks(new File(objects, "pack")), countFiles(new File(gitDir, "refs"), looseRefLimit + 1));
+    }
+
+    // like git gc --auto: objects are spread evenly over the 256 fan-out directories, so one of them is a fair sample
+    private static int estimateLooseObjects(File objects) {
+        String[] sample = new File(objects, "17").list((dir, name) -> name.length() == 38 || name.length() == 62);
+        return sample == null ? 0 : sample.length * 256;
+    }
+
+    // packs with a .keep file are left alone by repacking, so they do not count
+    private static int countPacks(File packDir) {
+        String[] packs = packDir.list((dir, name) -> name.endsWith(".pack") && !new File(dir, name.substring(0, name.length() - ".pack".length()) + ".keep").exists());
+        return packs == null ? 0 : packs.length;
+    }
+
+    private static int countFiles(File dir, int limit) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return 0;
+        }
+        int count = 0;
+        for (File child : children) {
+            if (count >= limit) {
+                break;
+            }
+            count += child.isDirectory() ? countFiles(child, limit - count) : 1;
+        }
+        return count;
+    }
+
+    public int getLooseObjects() {
+        return looseObjects;
+    }
+
+    public int getPacks() {
+        return packs;
+    }
+
+    public int getLooseRefs() {
+        return looseRefs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("looseObjects=%s, packs=%s, looseRefs=%s", looseObjects, packs, looseRefs);
+    }
+}
@@ -0,0 +1,62 @@
+package com.tw.go.plugin.maintenance;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs maintenance when the repository crosses a threshold, looking at it at most once per check interval:
+ * <ul>
+ * <li>{@link MaintenanceTask#GC} when there are too many loose objects or the last gc is older than the gc interval</li>
+ * <li>otherwise {@link MaintenanceTask#REPACK} when there are too many packs and {@link MaintenanceTask#PACK_REFS}
+ * when there are too many loose refs</li>
+ * </ul>
+ * The loose object and pack limits default to git's {@code gc.auto} and {@code gc.autoPackLimit}.
+ */
+public class ThresholdMaintenancePolicy implements MaintenancePolicy {
+    private final long checkIntervalMillis;
+    private final long gcIntervalMillis;
+    private final int looseObjectLimit;
+    private final int packLimit;
+    private final int looseRefLimit;
+
+    public ThresholdMaintenancePolicy() {
+        this(TimeUnit.MINUTES.toMillis(10), TimeUnit.DAYS.toMillis(7), 6700, 50, 500);
+    }
+
+    public ThresholdMaintenancePolicy(long checkIntervalMillis, long gcIntervalMillis, int looseObjectLimit, int packLimit, int looseRefLimit) {
+        this.checkIntervalMillis = checkIntervalMillis;
+        this.gcIntervalMillis = gcIntervalMillis;
+        this.looseObjectLimit = looseObjectLimit;
+        this.packLimit = packLimit;
+        this.looseRefLimit = looseRefLimit;
+    }
+
+    @Override
+    public List<MaintenanceTask> plan(File gitDir, MaintenanceState state, long now) {
+        long lastCheck = state.lastCheck();
+        if (lastCheck != 0 && now - lastCheck < checkIntervalMillis) {
+            return Collections.emptyList();
+        }
+        state.checked(now);
+        if (state.lastRun(MaintenanceTask.GC) == 0) {
+            // a fresh clone is fully packed; start the gc interval from here
+            state.ran(MaintenanceTask.GC, now);
+        }
+
+        RepositoryStats stats = RepositoryStats.of(gitDir, looseRefLimit);
+        if (stats.getLooseObjects() > looseObjectLimit || now - state.lastRun(MaintenanceTask.GC) >= gcIntervalMillis) {
+            return Collections.singletonList(MaintenanceTask.GC);
+        }
+        List<MaintenanceTask> tasks = new ArrayList<>(2);
+        if (stats.getPacks() > packLimit) {
+            tasks.add(MaintenanceTask.REPACK);
+        }
+        if (stats.getLooseRefs() > looseRefLimit) {
+            tasks.add(MaintenanceTask.PACK_REFS);
+        }
+        return tasks;
+    }
+}
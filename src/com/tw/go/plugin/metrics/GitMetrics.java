@@ -0,0 +1,16 @@
+package com.tw.go.plugin.metrics;
+
+/**
+ * Receives a sample for every measured git operation of a {@link com.tw.go.plugin.GitHelper}. Implementations are
+ * called on the thread running the operation and must be thread-safe when shared between helpers.
+ */
+public interface GitMetrics {
+    GitMetrics NOOP = sample -> {
+    };
+
+    void record(OperationSample sample);
+
+    default OperationTimer start(GitOperation operation) {
+        return new OperationTimer(this, operation);
+    }
+}
@@ -0,0 +1,16 @@
+package com.tw.go.plugin.metrics;
+
+public enum GitOperation {
+    LS_REMOTE,
+    FETCH,
+    MIRROR_FETCH,
+    GC,
+    REPACK,
+    PACK_REFS,
+    STATUS,
+    CLEAN,
+    RESET_HARD,
+    SUBMODULE_UPDATE,
+    GIT_LOG,
+    DIFF_TREE
+}
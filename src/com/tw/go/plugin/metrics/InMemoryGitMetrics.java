@@ -0,0 +1,89 @@
+package com.tw.go.plugin.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps every sample in memory and summarizes them per operation. Meant for tests and short diagnostics runs.
+ */
+public class InMemoryGitMetrics implements GitMetrics {
+    private static final long[] BUCKET_MILLIS = {1, 5, 10, 50, 100, 500, 1000, 5000, 10000, 60000};
+
+    private final List<OperationSample> samples = new ArrayList<>();
+
+    @Override
+    public synchronized void record(OperationSample sample) {
+        samples.add(sample);
+    }
+
+    public synchronized List<OperationSample> samples() {
+        return Collections.unmodifiableList(new ArrayList<>(samples));
+    }
+
+    public List<OperationSample> samples(GitOperation operation) {
+        return samples().stream().filter(sample -> sample.getOperation() == operation).collect(Collectors.toList());
+    }
+
+    public int count(GitOperation operation) {
+        return samples(operation).size();
+    }
+
+    public long totalDurationNanos(GitOperation operation) {
+        return samples(operation).stream().mapToLong(OperationSample::getDurationNanos).sum();
+    }
+
+    public long totalOutputBytes(GitOperation operation) {
+        return samples(operation).stream().mapToLong(OperationSample::getOutputBytes).sum();
+    }
+
+    public int totalProcessCount(GitOperation operation) {
+        return samples(operation).stream().mapToInt(OperationSample::getProcessCount).sum();
+    }
+
+    public Map<Integer, Long> exitCodes(GitOperation operation) {
+        return samples(operation).stream().collect(Collectors.groupingBy(OperationSample::getExitCode, TreeMap::new, Collectors.counting()));
+    }
+
+    /**
+     * Durations bucketed by upper bound in milliseconds; {@link Long#MAX_VALUE} collects everything slower than a
+     * minute.
+     */
+    public Map<Long, Long> durationHistogram(GitOperation operation) {
+        Map<Long, Long> histogram = new TreeMap<>();
+        for (long bucket : BUCKET_MILLIS) {
+            histogram.put(bucket, 0L);
+        }
+        histogram.put(Long.MAX_VALUE, 0L);
+        for (OperationSample sample : samples(operation)) {
+            histogram.merge(bucket(TimeUnit.NANOSECONDS.toMillis(sample.getDurationNanos())), 1L, Long::sum);
+        }
+        return histogram;
+    }
+
+    public Map<GitOperation, Integer> counts() {
+        Map<GitOperation, Integer> counts = new EnumMap<>(GitOperation.class);
+        for (OperationSample sample : samples()) {
+            counts.merge(sample.getOperation(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    public synchronized void clear() {
+        samples.clear();
+    }
+
+    private static long bucket(long millis) {
+        for (long bucket : BUCKET_MILLIS) {
+            if (millis <= bucket) {
+                return bucket;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,52 @@
+package com.tw.go.plugin.metrics;
+
+/**
+ * One completed {@link GitOperation}. JGit runs in process, so its samples have no processes and no output bytes.
+ */
+public class OperationSample {
+    private final GitOperation operation;
+    private final long durationNanos;
+    private final int exitCode;
+    private final long outputBytes;
+    private final int processCount;
+
+    public OperationSample(GitOperation operation, long durationNanos, int exitCode, long outputBytes, int processCount) {
+        this.operation = operation;
+        this.durationNanos = durationNanos;
+        this.exitCode = exitCode;
+        this.outputBytes = outputBytes;
+        this.processCount = processCount;
+    }
+
+    public GitOperation getOperation() {
+        return operation;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * The first non-zero exit code of the operation's processes, {@link OperationTimer#FAILED} for an operation that
+     * failed without one (e.g. in JGit), and 0 otherwise.
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * Bytes read from the stdout and stderr of the operation's processes.
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    public int getProcessCount() {
+        return processCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s{durationNanos=%s, exitCode=%s, outputBytes=%s, processCount=%s}", operation, durationNanos, exitCode, outputBytes, processCount);
+    }
+}
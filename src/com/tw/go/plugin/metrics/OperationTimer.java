@@ -0,0 +1,46 @@
+package com.tw.go.plugin.metrics;
+
+import com.tw.go.plugin.cmd.CommandStats;
+
+/**
+ * Measures one {@link GitOperation} from creation until {@link #close()}, collecting the processes it ran.
+ */
+public class OperationTimer implements AutoCloseable {
+    public static final int FAILED = -1;
+
+    private final GitMetrics metrics;
+    private final GitOperation operation;
+    private final long start = System.nanoTime();
+    private int exitCode;
+    private long outputBytes;
+    private int processCount;
+    private boolean closed;
+
+    OperationTimer(GitMetrics metrics, GitOperation operation) {
+        this.metrics = metrics;
+        this.operation = operation;
+    }
+
+    public void addProcess(CommandStats stats) {
+        processCount++;
+        outputBytes += stats.getOutputBytes();
+        if (exitCode == 0) {
+            exitCode = stats.getExitCode();
+        }
+    }
+
+    public void failed() {
+        if (exitCode == 0) {
+            exitCode = FAILED;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        metrics.record(new OperationSample(operation, System.nanoTime() - start, exitCode, outputBytes, processCount));
+    }
+}
@@ -0,0 +1,62 @@
+package com.tw.go.plugin.model;
+
+/**
+ * What a revision did to a file, named as in {@code git diff --name-status}.
+ */
+public enum FileAction {
+    ADDED("added", "added"),
+    MODIFIED("modified", "modified"),
+    DELETED("deleted", "deleted"),
+    RENAMED("renamed", "added"),
+    COPIED("copied", "added"),
+    UNKNOWN("unknown", "unknown");
+
+    private final String name;
+    private final String action;
+
+    FileAction(String name, String action) {
+        this.name = name;
+        this.action = action;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The name reported by {@link ModifiedFile#getAction()}, from the vocabulary GoCD knows: a renamed or copied file is
+     * an added file under its new path, as the JGit backend has always reported renames.
+     */
+    public String getAction() {
+        return action;
+    }
+
+    /**
+     * @param status the first letter of a {@code --name-status} line; type changes and anything else are unknown
+     */
+    public static FileAction fromStatus(char status) {
+        switch (status) {
+            case 'A':
+                return ADDED;
+            case 'M':
+                return MODIFIED;
+            case 'D':
+                return DELETED;
+            case 'R':
+                return RENAMED;
+            case 'C':
+                return COPIED;
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    public static FileAction of(String name) {
+        for (FileAction action : values()) {
+            if (action.name.equals(name)) {
+                return action;
+            }
+        }
+        return UNKNOWN;
+    }
+}
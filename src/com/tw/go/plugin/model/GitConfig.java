@@ -13,6 +13,22 @@ public class GitConfig {
     private boolean subModule = false;
     private boolean recursiveSubModuleUpdate = true;
     private boolean noCheckout = false;
+    private boolean singlePassLog = true;
+    private int cloneTimeoutSeconds = 0;
+    private int fetchTimeoutSeconds = 0;
+    private int logTimeoutSeconds = 0;
+    private int cleanTimeoutSeconds = 0;
+    private int maxNewRevisions = 0;
+    private int maxNewRevisionAgeSeconds = 0;
+    private int diffParallelism = 1;
+    // null for the backend's default
+    private Boolean renameDetection;
+    private int renameLimit = 1000;
+    private int renameBlobSizeLimitBytes = 50 * 1024 * 1024;
+    private boolean renameSkipBinary = true;
+    private ModifiedFilesMode modifiedFilesMode = ModifiedFilesMode.EAGER;
+    private int maxModifiedFiles = 0;
+    private boolean skipFetchWhenUnchanged = false;
     private Optional<ShallowClone> shallowClone = Optional.empty();
 
     public GitConfig(String url) {
@@ -128,6 +144,171 @@ public class GitConfig {
         this.noCheckout = noCheckout;
     }
 
+    public boolean isSinglePassLog() {
+        return singlePassLog;
+    }
+
+    public void setSinglePassLog(boolean singlePassLog) {
+        this.singlePassLog = singlePassLog;
+    }
+
+    public int getCloneTimeoutSeconds() {
+        return cloneTimeoutSeconds;
+    }
+
+    /**
+     * Limits how long a clone may run; {@code 0} (the default) waits forever. The same applies to the other timeouts.
+     */
+    public void setCloneTimeoutSeconds(int cloneTimeoutSeconds) {
+        this.cloneTimeoutSeconds = cloneTimeoutSeconds;
+    }
+
+    public int getFetchTimeoutSeconds() {
+        return fetchTimeoutSeconds;
+    }
+
+    public void setFetchTimeoutSeconds(int fetchTimeoutSeconds) {
+        this.fetchTimeoutSeconds = fetchTimeoutSeconds;
+    }
+
+    public int getLogTimeoutSeconds() {
+        return logTimeoutSeconds;
+    }
+
+    public void setLogTimeoutSeconds(int logTimeoutSeconds) {
+        this.logTimeoutSeconds = logTimeoutSeconds;
+    }
+
+    public int getCleanTimeoutSeconds() {
+        return cleanTimeoutSeconds;
+    }
+
+    public void setCleanTimeoutSeconds(int cleanTimeoutSeconds) {
+        this.cleanTimeoutSeconds = cleanTimeoutSeconds;
+    }
+
+    public int getMaxNewRevisions() {
+        return maxNewRevisions;
+    }
+
+    /**
+     * Limits how many revisions {@link com.tw.go.plugin.GitHelper#getRevisionRangeSince(String, List)} returns;
+     * {@code 0} (the default) returns all of them.
+     */
+    public void setMaxNewRevisions(int maxNewRevisions) {
+        this.maxNewRevisions = maxNewRevisions;
+    }
+
+    public int getMaxNewRevisionAgeSeconds() {
+        return maxNewRevisionAgeSeconds;
+    }
+
+    /**
+     * Stops {@link com.tw.go.plugin.GitHelper#getRevisionRangeSince(String, List)} at the first revision authored longer
+     * ago than this; {@code 0} (the default) does not look at the age.
+     */
+    public void setMaxNewRevisionAgeSeconds(int maxNewRevisionAgeSeconds) {
+        this.maxNewRevisionAgeSeconds = maxNewRevisionAgeSeconds;
+    }
+
+    public int getDiffParallelism() {
+        return diffParallelism;
+    }
+
+    /**
+     * Lets the JGit backend compute the changed files of a long log on a fork-join pool of this many threads, which the
+     * helper owns and stops on {@code close()}; {@code 1} (the default) diffs the commits one after another.
+     */
+    public void setDiffParallelism(int diffParallelism) {
+        this.diffParallelism = diffParallelism;
+    }
+
+    public Boolean getRenameDetection() {
+        return renameDetection;
+    }
+
+    public boolean isRenameDetection(boolean backendDefault) {
+        return renameDetection == null ? backendDefault : renameDetection;
+    }
+
+    /**
+     * Reports a moved file once, under its new name, as {@link FileAction#RENAMED} instead of as a deleted and an added
+     * file. {@code null}, the default, keeps what each backend has always done: the JGit backend detects renames, the
+     * command line backend does not, like {@code git log --no-renames}.
+     */
+    public void setRenameDetection(Boolean renameDetection) {
+        this.renameDetection = renameDetection;
+    }
+
+    public int getRenameLimit() {
+        return renameLimit;
+    }
+
+    /**
+     * Like {@code git log -l}: a commit that adds and deletes more files than this is only searched for exact renames,
+     * the others stay deleted and added files. {@code 0} removes the limit.
+     */
+    public void setRenameLimit(int renameLimit) {
+        this.renameLimit = renameLimit;
+    }
+
+    public int getRenameBlobSizeLimitBytes() {
+        return renameBlobSizeLimitBytes;
+    }
+
+    /**
+     * Files larger than this are only matched as exact renames. Only the JGit backend honours it and
+     * {@link #setRenameSkipBinary(boolean)}; git has no equivalent option.
+     */
+    public void setRenameBlobSizeLimitBytes(int renameBlobSizeLimitBytes) {
+        this.renameBlobSizeLimitBytes = renameBlobSizeLimitBytes;
+    }
+
+    public boolean isRenameSkipBinary() {
+        return renameSkipBinary;
+    }
+
+    public void setRenameSkipBinary(boolean renameSkipBinary) {
+        this.renameSkipBinary = renameSkipBinary;
+    }
+
+    public ModifiedFilesMode getModifiedFilesMode() {
+        return modifiedFilesMode;
+    }
+
+    /**
+     * Whether logs ({@code getAllRevisions}, {@code getRevisionsSince}, {@code getLatestRevision} and their streams) read
+     * the changed files of their revisions. Revisions looked up by name always carry them.
+     */
+    public void setModifiedFilesMode(ModifiedFilesMode modifiedFilesMode) {
+        this.modifiedFilesMode = modifiedFilesMode;
+    }
+
+    public int getMaxModifiedFiles() {
+        return maxModifiedFiles;
+    }
+
+    /**
+     * Keeps at most this many changed files per revision and counts the rest in
+     * {@link Revision#getTruncatedModifiedFiles()}; {@code 0} (the default) keeps all of them.
+     */
+    public void setMaxModifiedFiles(int maxModifiedFiles) {
+        this.maxModifiedFiles = maxModifiedFiles;
+    }
+
+    public boolean isSkipFetchWhenUnchanged() {
+        return skipFetchWhenUnchanged;
+    }
+
+    /**
+     * Asks the remote for the tip of the branch (like {@code git ls-remote}) before {@code cloneOrFetch} fetches, and
+     * skips fetch, maintenance, clean and reset when it is the tip the last fetch recorded and HEAD is already there.
+     * Local changes to a skipped working copy are left alone. Off by default.
+     */
+    public void setSkipFetchWhenUnchanged(boolean skipFetchWhenUnchanged) {
+        this.skipFetchWhenUnchanged = skipFetchWhenUnchanged;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -136,6 +317,21 @@ public class GitConfig {
         return subModule == gitConfig.subModule &&
                 recursiveSubModuleUpdate == gitConfig.recursiveSubModuleUpdate &&
                 noCheckout == gitConfig.noCheckout &&
+                singlePassLog == gitConfig.singlePassLog &&
+                cloneTimeoutSeconds == gitConfig.cloneTimeoutSeconds &&
+                fetchTimeoutSeconds == gitConfig.fetchTimeoutSeconds &&
+                logTimeoutSeconds == gitConfig.logTimeoutSeconds &&
+                cleanTimeoutSeconds == gitConfig.cleanTimeoutSeconds &&
+                maxNewRevisions == gitConfig.maxNewRevisions &&
+                maxNewRevisionAgeSeconds == gitConfig.maxNewRevisionAgeSeconds &&
+                diffParallelism == gitConfig.diffParallelism &&
+                renameLimit == gitConfig.renameLimit &&
+                renameBlobSizeLimitBytes == gitConfig.renameBlobSizeLimitBytes &&
+                renameSkipBinary == gitConfig.renameSkipBinary &&
+                modifiedFilesMode == gitConfig.modifiedFilesMode &&
+                maxModifiedFiles == gitConfig.maxModifiedFiles &&
+                skipFetchWhenUnchanged == gitConfig.skipFetchWhenUnchanged &&
+                Objects.equals(renameDetection, gitConfig.renameDetection) &&
                 Objects.equals(url, gitConfig.url) &&
                 Objects.equals(username, gitConfig.username) &&
                 Objects.equals(password, gitConfig.password) &&
@@ -145,6 +341,6 @@ public class GitConfig {
 
     @Override
     public int hashCode() {
-        return Objects.hash(url, username, password, branch, subModule, recursiveSubModuleUpdate, noCheckout, shallowClone);
+        return Objects.hash(url, username, password, branch, subModule, recursiveSubModuleUpdate, noCheckout, singlePassLog, cloneTimeoutSeconds, fetchTimeoutSeconds, logTimeoutSeconds, cleanTimeoutSeconds, maxNewRevisions, maxNewRevisionAgeSeconds, diffParallelism, renameDetection, renameLimit, renameBlobSizeLimitBytes, renameSkipBinary, modifiedFilesMode, maxModifiedFiles, skipFetchWhenUnchanged, shallowClone);
     }
 }
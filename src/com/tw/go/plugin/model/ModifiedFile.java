@@ -2,26 +2,56 @@ package com.tw.go.plugin.model;
 
 import java.util.Objects;
 
+/**
+ * A changed file of a {@link Revision}. The directory part of the path is interned, so the files of a large commit, and
+ * of many commits, share one copy of each directory name.
+ */
 public class ModifiedFile {
-    private final String fileName;
-    private final String action;
+    private final String directory;
+    private final String name;
+    private final FileAction action;
+    // the action given for an UNKNOWN file, returned as is by getAction()
+    private final String unknownAction;
 
+    /**
+     * @param action one of the {@link FileAction} names; any other, including {@code null}, is kept as given and
+     *               reported by {@link #getAction()} unchanged
+     */
     public ModifiedFile(String fileName, String action) {
-        this.fileName = fileName;
+        this(fileName, FileAction.of(action), action);
+    }
+
+    public ModifiedFile(String fileName, FileAction action) {
+        this(fileName, action, action.getName());
+    }
+
+    private ModifiedFile(String fileName, FileAction action, String actionName) {
+        int nameStart = fileName == null ? 0 : fileName.lastIndexOf('/') + 1;
+        this.directory = nameStart == 0 ? "" : fileName.substring(0, nameStart).intern();
+        this.name = nameStart == 0 ? fileName : fileName.substring(nameStart);
         this.action = action;
+        this.unknownAction = action == FileAction.UNKNOWN ? actionName : null;
     }
 
     public String getFileName() {
-        return fileName;
+        return directory.isEmpty() ? name : directory.concat(name);
     }
 
+    /**
+     * {@code added}, {@code modified} or {@code deleted}; renamed and copied files are reported as added, see
+     * {@link #getFileAction()} to tell them apart.
+     */
     public String getAction() {
+        return action == FileAction.UNKNOWN ? unknownAction : action.getAction();
+    }
+
+    public FileAction getFileAction() {
         return action;
     }
 
     @Override
     public String toString() {
-        return String.format("ModifiedFile{fileName='%s', action='%s'}", fileName, action);
+        return String.format("ModifiedFile{fileName='%s', action='%s'}", getFileName(), getAction());
     }
 
     @Override
@@ -31,14 +61,15 @@ public class ModifiedFile {
 
         ModifiedFile that = (ModifiedFile) o;
 
-        if (!Objects.equals(fileName, that.fileName)) return false;
-        return Objects.equals(action, that.action);
+        if (!directory.equals(that.directory) || !Objects.equals(name, that.name)) return false;
+        return action == that.action && Objects.equals(unknownAction, that.unknownAction);
     }
 
     @Override
     public int hashCode() {
+        String fileName = getFileName();
         int result = fileName != null ? fileName.hashCode() : 0;
-        result = 31 * result + (action != null ? action.hashCode() : 0);
+        result = 31 * result + Objects.hashCode(action == FileAction.UNKNOWN ? unknownAction : action.getName());
         return result;
     }
 }
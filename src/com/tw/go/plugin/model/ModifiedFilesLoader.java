@@ -0,0 +1,14 @@
+package com.tw.go.plugin.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Computes the changed files of a revision the first time they are asked for, see {@link ModifiedFilesMode#LAZY}.
+ */
+@FunctionalInterface
+public interface ModifiedFilesLoader {
+    ModifiedFilesLoader NONE = revision -> new ArrayList<>();
+
+    List<ModifiedFile> load(Revision revision);
+}
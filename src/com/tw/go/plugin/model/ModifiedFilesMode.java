@@ -0,0 +1,19 @@
+package com.tw.go.plugin.model;
+
+/**
+ * How the revisions of a log read their changed files.
+ */
+public enum ModifiedFilesMode {
+    /**
+     * The changed files are read along with the log.
+     */
+    EAGER,
+    /**
+     * Trees are only diffed when {@link Revision#getModifiedFiles()} is first called.
+     */
+    LAZY,
+    /**
+     * Only the commit metadata is read; revisions report no changed files.
+     */
+    NONE
+}
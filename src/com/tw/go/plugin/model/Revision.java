@@ -1,26 +1,38 @@
 package com.tw.go.plugin.model;
 
+import com.tw.go.plugin.util.ObjectIds;
+
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+/**
+ * A commit read from the log. A full object name is kept as its raw bytes and the timestamp as epoch millis; the
+ * getters render them as before, on every call.
+ */
 public class Revision {
-    private String revision;
-    private Date timestamp;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private byte[] id;
+    // the revision as given when it is not a full object name
+    private String name;
+    private long timestamp = NO_TIMESTAMP;
     private String comment;
     private String user;
     private String emailId;
     private List<ModifiedFile> modifiedFiles;
+    private ModifiedFilesLoader modifiedFilesLoader;
+    private int truncatedModifiedFiles;
     private boolean isMergeCommit;
 
     public Revision(String revision) {
-        this.revision = revision;
+        setRevision(revision);
         this.isMergeCommit = false;
     }
 
     public Revision(String revision, Date timestamp, String comment, String user, String emailId, List<ModifiedFile> modifiedFiles) {
-        this.revision = revision;
-        this.timestamp = timestamp;
+        setRevision(revision);
+        setTimestamp(timestamp);
         this.comment = comment;
         this.user = user;
         this.emailId = emailId;
@@ -29,19 +41,23 @@ public class Revision {
     }
 
     public String getRevision() {
-        return revision;
+        return id != null ? ObjectIds.toHex(id) : name;
     }
 
     public void setRevision(String revision) {
-        this.revision = revision;
+        this.id = ObjectIds.parse(revision);
+        this.name = id != null ? null : revision;
     }
 
+    /**
+     * A new {@link Date} on every call, which the caller may keep or change.
+     */
     public Date getTimestamp() {
-        return timestamp;
+        return timestamp == NO_TIMESTAMP ? null : new Date(timestamp);
     }
 
     public void setTimestamp(Date timestamp) {
-        this.timestamp = timestamp;
+        this.timestamp = timestamp == null ? NO_TIMESTAMP : timestamp.getTime();
     }
 
     public String getComment() {
@@ -68,17 +84,63 @@ public class Revision {
         this.emailId = emailId;
     }
 
+    /**
+     * Loads the changed files on the first call if the revision was read with {@link ModifiedFilesMode#LAZY}.
+     */
     public List<ModifiedFile> getModifiedFiles() {
+        if (modifiedFilesLoader != null) {
+            modifiedFiles = modifiedFilesLoader.load(this);
+            modifiedFilesLoader = null;
+        }
         return modifiedFiles;
     }
 
     public void setModifiedFiles(List<ModifiedFile> modifiedFiles) {
         this.modifiedFiles = modifiedFiles;
+        this.truncatedModifiedFiles = 0;
+        this.modifiedFilesLoader = null;
+    }
+
+    /**
+     * Replaces the changed files with {@code loader}, which is called once, when they are first read.
+     */
+    public void setModifiedFilesLoader(ModifiedFilesLoader loader) {
+        this.modifiedFiles = null;
+        this.truncatedModifiedFiles = 0;
+        this.modifiedFilesLoader = loader;
+    }
+
+    public boolean isModifiedFilesLoaded() {
+        return modifiedFilesLoader == null;
+    }
+
+    /**
+     * @return how many changed files were left out of {@link #getModifiedFiles()} by
+     * {@link GitConfig#setMaxModifiedFiles(int)}
+     */
+    public int getTruncatedModifiedFiles() {
+        getModifiedFiles();
+        return truncatedModifiedFiles;
+    }
+
+    public boolean isModifiedFilesTruncated() {
+        return getTruncatedModifiedFiles() > 0;
+    }
+
+    public void addTruncatedModifiedFiles(int count) {
+        truncatedModifiedFiles += count;
     }
 
     public final ModifiedFile createModifiedFile(String filename, String action) {
-        ModifiedFile file = new ModifiedFile(filename, action);
-        if (modifiedFiles == null) {
+        return addModifiedFile(new ModifiedFile(filename, action));
+    }
+
+    public final ModifiedFile createModifiedFile(String filename, FileAction action) {
+        return addModifiedFile(new ModifiedFile(filename, action));
+    }
+
+    private ModifiedFile addModifiedFile(ModifiedFile file) {
+        if (getModifiedFiles() == null) {
             modifiedFiles = new ArrayList<>();
         }
         modifiedFiles.add(file);
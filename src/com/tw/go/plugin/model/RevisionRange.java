@@ -0,0 +1,60 @@
+package com.tw.go.plugin.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The revisions found since a previously seen revision, and whether that search was complete.
+ */
+public class RevisionRange {
+    public enum Status {
+        COMPLETE,
+        /**
+         * The search stopped at {@link GitConfig#getMaxNewRevisions()} or {@link GitConfig#getMaxNewRevisionAgeSeconds()};
+         * there are older new revisions that were not returned.
+         */
+        TRUNCATED,
+        /**
+         * The previous revision is not in the repository any more, e.g. after a force-push and gc. No revisions were
+         * read; the caller decides whether to start over from the latest revision.
+         */
+        PREVIOUS_UNREACHABLE
+    }
+
+    private final String previousRevision;
+    private final List<Revision> revisions;
+    private final Status status;
+
+    public RevisionRange(String previousRevision, List<Revision> revisions, Status status) {
+        this.previousRevision = previousRevision;
+        this.revisions = revisions;
+        this.status = status;
+    }
+
+    public static RevisionRange unreachable(String previousRevision) {
+        return new RevisionRange(previousRevision, Collections.emptyList(), Status.PREVIOUS_UNREACHABLE);
+    }
+
+    public String getPreviousRevision() {
+        return previousRevision;
+    }
+
+    /**
+     * @return the new revisions, newest first
+     */
+    public List<Revision> getRevisions() {
+        return revisions;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isComplete() {
+        return status == Status.COMPLETE;
+    }
+
+    public boolean isPreviousReachable() {
+        return status != Status.PREVIOUS_UNREACHABLE;
+    }
+}
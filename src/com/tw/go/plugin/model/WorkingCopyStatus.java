@@ -0,0 +1,54 @@
+package com.tw.go.plugin.model;
+
+/**
+ * Where a working copy stands relative to the revision it is about to be reset to.
+ */
+public class WorkingCopyStatus {
+    private final String head;
+    private final String target;
+    private final int trackedChanges;
+    private final int untrackedFiles;
+
+    public WorkingCopyStatus(String head, String target, int trackedChanges, int untrackedFiles) {
+        this.head = head;
+        this.target = target;
+        this.trackedChanges = trackedChanges;
+        this.untrackedFiles = untrackedFiles;
+    }
+
+    public String getHead() {
+        return head;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public int getTrackedChanges() {
+        return trackedChanges;
+    }
+
+    public int getUntrackedFiles() {
+        return untrackedFiles;
+    }
+
+    public boolean isAtTarget() {
+        return head != null && head.equals(target);
+    }
+
+    public boolean hasUntrackedFiles() {
+        return untrackedFiles > 0;
+    }
+
+    /**
+     * @return whether a clean and reset to the target would not change anything
+     */
+    public boolean isUpToDate() {
+        return isAtTarget() && trackedChanges == 0 && untrackedFiles == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WorkingCopyStatus{head='%s', target='%s', trackedChanges=%s, untrackedFiles=%s}", head, target, trackedChanges, untrackedFiles);
+    }
+}
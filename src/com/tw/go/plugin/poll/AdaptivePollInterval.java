@@ -0,0 +1,51 @@
+package com.tw.go.plugin.poll;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls a repository that just changed at the minimum interval and backs off while it does not:
+ * <ul>
+ * <li>a poll that finds a new tip resets the interval to the minimum</li>
+ * <li>a poll that finds none multiplies it by the backoff factor</li>
+ * <li>a failed poll doubles it, so a host that refuses or rate-limits polls is asked less often</li>
+ * </ul>
+ * The interval never exceeds the maximum, so a quiet repository is still polled at least that often.
+ */
+public class AdaptivePollInterval implements PollIntervalPolicy {
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final double backoffFactor;
+
+    public AdaptivePollInterval() {
+        this(TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(15), 1.5);
+    }
+
+    public AdaptivePollInterval(long minIntervalMillis, long maxIntervalMillis, double backoffFactor) {
+        if (minIntervalMillis <= 0 || maxIntervalMillis < minIntervalMillis || backoffFactor < 1) {
+            throw new IllegalArgumentException(String.format("Invalid poll intervals: min %d ms, max %d ms, backoff %s", minIntervalMillis, maxIntervalMillis, backoffFactor));
+        }
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.backoffFactor = backoffFactor;
+    }
+
+    @Override
+    public long initialIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    @Override
+    public long nextIntervalMillis(long previousIntervalMillis, PollResult result) {
+        if (result.isFailed()) {
+            return clamp(previousIntervalMillis * 2.0);
+        }
+        if (result.isChanged()) {
+            return minIntervalMillis;
+        }
+        return clamp(previousIntervalMillis * backoffFactor);
+    }
+
+    private long clamp(double intervalMillis) {
+        return (long) Math.max(minIntervalMillis, Math.min(maxIntervalMillis, intervalMillis));
+    }
+}
@@ -0,0 +1,17 @@
+package com.tw.go.plugin.poll;
+
+/**
+ * Decides how long a {@link PollScheduler} waits before polling a repository again.
+ */
+public interface PollIntervalPolicy {
+    /**
+     * @return the wait before the first poll of a repository; the scheduler spreads first polls over it
+     */
+    long initialIntervalMillis();
+
+    /**
+     * @param previousIntervalMillis the wait before the poll that produced {@code result}
+     * @return the wait before the next poll, before jitter is applied
+     */
+    long nextIntervalMillis(long previousIntervalMillis, PollResult result);
+}
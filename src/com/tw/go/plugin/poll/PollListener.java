@@ -0,0 +1,12 @@
+package com.tw.go.plugin.poll;
+
+/**
+ * Receives the result of every poll of a scheduled repository, on the thread that ran it.
+ */
+@FunctionalInterface
+public interface PollListener {
+    PollListener NONE = result -> {
+    };
+
+    void polled(PollResult result);
+}
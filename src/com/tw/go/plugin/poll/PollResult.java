@@ -0,0 +1,76 @@
+package com.tw.go.plugin.poll;
+
+import java.io.File;
+
+/**
+ * The outcome of one {@code cloneOrFetch} run by a {@link PollScheduler}.
+ */
+public class PollResult {
+    private final File workingDir;
+    private final String previousRevision;
+    private final String revision;
+    private final Throwable failure;
+    private final long startedAt;
+    private final long durationMillis;
+
+    public PollResult(File workingDir, String previousRevision, String revision, Throwable failure, long startedAt, long durationMillis) {
+        this.workingDir = workingDir;
+        this.previousRevision = previousRevision;
+        this.revision = revision;
+        this.failure = failure;
+        this.startedAt = startedAt;
+        this.durationMillis = durationMillis;
+    }
+
+    public File getWorkingDir() {
+        return workingDir;
+    }
+
+    /**
+     * @return the branch tip recorded before this poll, {@code null} for the first poll of a repository
+     */
+    public String getPreviousRevision() {
+        return previousRevision;
+    }
+
+    /**
+     * @return the branch tip recorded by this poll, {@code null} if it failed
+     */
+    public String getRevision() {
+        return revision;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * @return whether the poll found a new branch tip; the first successful poll of a repository always does
+     */
+    public boolean isChanged() {
+        return revision != null && !revision.equals(previousRevision);
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "PollResult{" +
+                "workingDir=" + workingDir +
+                ", previousRevision='" + previousRevision + '\'' +
+                ", revision='" + revision + '\'' +
+                ", failure=" + failure +
+                ", durationMillis=" + durationMillis +
+                '}';
+    }
+}
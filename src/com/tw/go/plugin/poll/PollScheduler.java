@@ -0,0 +1,286 @@
+package com.tw.go.plugin.poll;
+
+import com.tw.go.plugin.GitHelper;
+import com.tw.go.plugin.HelperFactory;
+import com.tw.go.plugin.cmd.CancellationToken;
+import com.tw.go.plugin.model.GitConfig;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Polls many repositories with {@code cloneOrFetch}, each at its own interval, so callers do not have to coordinate
+ * their own thread pools:
+ * <ul>
+ * <li>at most {@code maxConcurrentPolls} polls run at a time, and at most {@code maxPollsPerHost} against one host;
+ * a poll that is due while its host is busy waits without holding a thread, and polls of other hosts go ahead</li>
+ * <li>first polls are spread over the initial interval and every later wait is varied by the jitter, so repositories
+ * scheduled together do not stay in step</li>
+ * <li>the {@link PollIntervalPolicy} adapts each repository's interval to how often it changes; by default an
+ * {@link AdaptivePollInterval}</li>
+ * </ul>
+ * Results are reported to the repository's {@link PollListener} and through {@link ScheduledPoll#nextResult()}.
+ */
+public class PollScheduler implements Closeable {
+    private final int maxConcurrentPolls;
+    private final int maxPollsPerHost;
+    private final PollIntervalPolicy intervalPolicy;
+    private final double jitter;
+    private final BiFunction<GitConfig, File, GitHelper> helpers;
+    private final Map<String, Integer> hostLimits = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    private final ThreadPoolExecutor workers;
+
+    // guarded by this
+    private final Set<ScheduledPoll> polls = new LinkedHashSet<>();
+    private final ArrayDeque<ScheduledPoll> ready = new ArrayDeque<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private int running;
+    private boolean closed;
+
+    public PollScheduler(int maxConcurrentPolls, int maxPollsPerHost) {
+        this(maxConcurrentPolls, maxPollsPerHost, new AdaptivePollInterval(), 0.1, HelperFactory::git);
+    }
+
+    /**
+     * @param jitter  how much a wait may vary either way, as a fraction of the interval between 0 and 1
+     * @param helpers creates the helper of a repository on its first poll
+     */
+    public PollScheduler(int maxConcurrentPolls, int maxPollsPerHost, PollIntervalPolicy intervalPolicy, double jitter, BiFunction<GitConfig, File, GitHelper> helpers) {
+        if (maxConcurrentPolls < 1 || maxPollsPerHost < 1 || jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException(String.format("Invalid poll limits: %d concurrent, %d per host, jitter %s", maxConcurrentPolls, maxPollsPerHost, jitter));
+        }
+        this.maxConcurrentPolls = maxConcurrentPolls;
+        this.maxPollsPerHost = maxPollsPerHost;
+        this.intervalPolicy = intervalPolicy;
+        this.jitter = jitter;
+        this.helpers = helpers;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "git-poll-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threads = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(maxConcurrentPolls, maxConcurrentPolls, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "git-poll-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Overrides {@code maxPollsPerHost} for one host, e.g. to poll an internal server harder than a public one.
+     */
+    public void setMaxPollsPerHost(String host, int maxPolls) {
+        hostLimits.put(host.toLowerCase(Locale.ROOT), maxPolls);
+        synchronized (this) {
+            dispatch();
+        }
+    }
+
+    public ScheduledPoll schedule(GitConfig gitConfig, File workingDir) {
+        return schedule(gitConfig, workingDir, PollListener.NONE);
+    }
+
+    /**
+     * Starts polling {@code workingDir}, first after a random part of the initial interval.
+     */
+    public synchronized ScheduledPoll schedule(GitConfig gitConfig, File workingDir, PollListener listener) {
+        if (closed) {
+            throw new IllegalStateException("Poll scheduler is closed");
+        }
+        long interval = intervalPolicy.initialIntervalMillis();
+        ScheduledPoll poll = new ScheduledPoll(this, gitConfig, workingDir, host(gitConfig.getEffectiveUrl()), listener, interval);
+        polls.add(poll);
+        schedule(poll, (long) (ThreadLocalRandom.current().nextDouble() * interval));
+        return poll;
+    }
+
+    public synchronized List<ScheduledPoll> getScheduledPolls() {
+        return new ArrayList<>(polls);
+    }
+
+    synchronized void pollNow(ScheduledPoll poll) {
+        if (poll.timer != null) {
+            poll.timer.cancel(false);
+        }
+        due(poll);
+    }
+
+    synchronized void cancel(ScheduledPoll poll) {
+        if (poll.cancelled) {
+            return;
+        }
+        poll.cancelled = true;
+        polls.remove(poll);
+        ready.remove(poll);
+        if (poll.timer != null) {
+            poll.timer.cancel(false);
+        }
+        poll.nextResult.cancel(false);
+        if (poll.running) {
+            // the helper is closed when the poll returns
+            poll.cancellationToken.cancel();
+        } else if (poll.helper != null) {
+            poll.helper.close();
+        }
+    }
+
+    private void schedule(ScheduledPoll poll, long delayMillis) {
+        poll.timer = timer.schedule(() -> {
+            synchronized (this) {
+                due(poll);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void due(ScheduledPoll poll) {
+        if (closed || poll.cancelled || poll.queued || poll.running) {
+            return;
+        }
+        poll.queued = true;
+        ready.add(poll);
+        dispatch();
+    }
+
+    // starts the polls that are due, oldest first, skipping those whose host is at its limit
+    private void dispatch() {
+        Iterator<ScheduledPoll> due = ready.iterator();
+        while (running < maxConcurrentPolls && due.hasNext()) {
+            ScheduledPoll poll = due.next();
+            int runningOnHost = runningPerHost.getOrDefault(poll.getHost(), 0);
+            if (runningOnHost >= hostLimits.getOrDefault(poll.getHost(), maxPollsPerHost)) {
+                continue;
+            }
+            due.remove();
+            poll.queued = false;
+            poll.running = true;
+            poll.cancellationToken = new CancellationToken();
+            running++;
+            runningPerHost.put(poll.getHost(), runningOnHost + 1);
+            CancellationToken cancellationToken = poll.cancellationToken;
+            workers.execute(() -> run(poll, cancellationToken));
+        }
+    }
+
+    private void run(ScheduledPoll poll, CancellationToken cancellationToken) {
+        PollResult result = poll(poll, cancellationToken);
+        CompletableFuture<PollResult> finished;
+        synchronized (this) {
+            poll.running = false;
+            running--;
+            runningPerHost.merge(poll.getHost(), -1, (a, b) -> a + b == 0 ? null : a + b);
+            finished = poll.nextResult;
+            if (poll.cancelled || closed) {
+                if (poll.helper != null) {
+                    poll.helper.close();
+                }
+            } else {
+                poll.nextResult = new CompletableFuture<>();
+                poll.intervalMillis = intervalPolicy.nextIntervalMillis(poll.intervalMillis, result);
+                schedule(poll, jittered(poll.intervalMillis));
+            }
+            dispatch();
+        }
+        try {
+            poll.listener.polled(result);
+        } catch (RuntimeException e) {
+            poll.lastListenerFailure = e;
+            poll.listenerFailures.incrementAndGet();
+        }
+        finished.complete(result);
+    }
+
+    private PollResult poll(ScheduledPoll poll, CancellationToken cancellationToken) {
+        long startedAt = System.currentTimeMillis();
+        String previous = poll.revision;
+        try {
+            if (poll.helper == null) {
+                poll.helper = helpers.apply(poll.getGitConfig(), poll.getWorkingDir());
+            }
+            poll.helper.setCancellationToken(cancellationToken);
+            poll.helper.cloneOrFetch();
+            poll.revision = poll.helper.remoteBranchTip();
+            return new PollResult(poll.getWorkingDir(), previous, poll.revision, null, startedAt, System.currentTimeMillis() - startedAt);
+        } catch (RuntimeException e) {
+            return new PollResult(poll.getWorkingDir(), previous, null, e, startedAt, System.currentTimeMillis() - startedAt);
+        }
+    }
+
+    private long jittered(long intervalMillis) {
+        double variation = jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(0, (long) (intervalMillis * (1 + variation)));
+    }
+
+    /**
+     * Stops polling: no new polls start, running ones are cancelled and the helpers are closed.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            for (ScheduledPoll poll : new ArrayList<>(polls)) {
+                cancel(poll);
+            }
+            closed = true;
+        }
+        timer.shutdownNow();
+        workers.shutdown();
+    }
+
+    /**
+     * @return the lower-cased host of a URL ({@code https://host:port/path}) or an scp-like address
+     * ({@code user@host:path}), or {@code ""} for a local path
+     */
+    static String host(String url) {
+        int scheme = url.indexOf("://");
+        if (scheme >= 0) {
+            if (url.regionMatches(true, 0, "file", 0, scheme)) {
+                return "";
+            }
+            int start = scheme + 3;
+            int end = url.indexOf('/', start);
+            String authority = url.substring(start, end < 0 ? url.length() : end);
+            authority = authority.substring(authority.lastIndexOf('@') + 1);
+            if (authority.startsWith("[")) {
+                int bracket = authority.indexOf(']');
+                return authority.substring(0, bracket < 0 ? authority.length() : bracket + 1).toLowerCase(Locale.ROOT);
+            }
+            int port = authority.indexOf(':');
+            return (port < 0 ? authority : authority.substring(0, port)).toLowerCase(Locale.ROOT);
+        }
+        int colon = url.indexOf(':');
+        int slash = url.indexOf('/');
+        if (colon > 0 && (slash < 0 || colon < slash)) {
+            // git treats host:path as scp-like unless a slash comes first; C:\ is a Windows drive
+            String authority = url.substring(0, colon);
+            if (authority.length() == 1 && Character.isLetter(authority.charAt(0))) {
+                return "";
+            }
+            return authority.substring(authority.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+        }
+        return "";
+    }
+}
@@ -0,0 +1,113 @@
+package com.tw.go.plugin.poll;
+
+import com.tw.go.plugin.GitHelper;
+import com.tw.go.plugin.cmd.CancellationToken;
+import com.tw.go.plugin.model.GitConfig;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A repository polled by a {@link PollScheduler} until it is cancelled or the scheduler is closed. The scheduler keeps
+ * one {@link GitHelper} per repository, so the helper's caches and open repositories carry over between polls.
+ */
+public class ScheduledPoll {
+    private final PollScheduler scheduler;
+    private final GitConfig gitConfig;
+    private final File workingDir;
+    private final String host;
+    final PollListener listener;
+    final AtomicInteger listenerFailures = new AtomicInteger();
+    volatile RuntimeException lastListenerFailure;
+
+    // guarded by the scheduler
+    long intervalMillis;
+    ScheduledFuture<?> timer;
+    boolean queued;
+    boolean running;
+    boolean cancelled;
+    CancellationToken cancellationToken;
+    CompletableFuture<PollResult> nextResult = new CompletableFuture<>();
+
+    // only touched by the poll that is running
+    GitHelper helper;
+    String revision;
+
+    ScheduledPoll(PollScheduler scheduler, GitConfig gitConfig, File workingDir, String host, PollListener listener, long intervalMillis) {
+        this.scheduler = scheduler;
+        this.gitConfig = gitConfig;
+        this.workingDir = workingDir;
+        this.host = host;
+        this.listener = listener;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public GitConfig getGitConfig() {
+        return gitConfig;
+    }
+
+    public File getWorkingDir() {
+        return workingDir;
+    }
+
+    /**
+     * @return the host the per-host limit of this repository is counted against
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * @return the wait before the next poll, before jitter
+     */
+    public long getIntervalMillis() {
+        synchronized (scheduler) {
+            return intervalMillis;
+        }
+    }
+
+    /**
+     * @return a future completed with the result of the next poll to finish, or cancelled with the poll
+     */
+    public CompletableFuture<PollResult> nextResult() {
+        synchronized (scheduler) {
+            return nextResult;
+        }
+    }
+
+    /**
+     * Polls as soon as the concurrency limits allow instead of waiting for the interval to pass.
+     */
+    public void pollNow() {
+        scheduler.pollNow(this);
+    }
+
+    /**
+     * Stops polling the repository; a poll that is running is cancelled through its helper.
+     */
+    public void cancel() {
+        scheduler.cancel(this);
+    }
+
+    public boolean isCancelled() {
+        synchronized (scheduler) {
+            return cancelled;
+        }
+    }
+
+    /**
+     * @return how many times the {@link PollListener} threw; polling carries on regardless
+     */
+    public int getListenerFailures() {
+        return listenerFailures.get();
+    }
+
+    /**
+     * @return what the {@link PollListener} last threw, {@code null} if it never did
+     */
+    public RuntimeException getLastListenerFailure() {
+        return lastListenerFailure;
+    }
+}
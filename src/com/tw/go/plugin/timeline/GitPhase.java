@@ -0,0 +1,33 @@
+package com.tw.go.plugin.timeline;
+
+/**
+ * The steps of {@link com.tw.go.plugin.GitHelper#cloneOrFetch()}. {@link #CLONE_OR_FETCH} and
+ * {@link #FETCH_AND_RESET} enclose the phases they run.
+ */
+public enum GitPhase {
+    CLONE_OR_FETCH,
+    CLONE,
+    /**
+     * Compares the branch tip the remote advertises with the one recorded by the last fetch, see
+     * {@link com.tw.go.plugin.model.GitConfig#setSkipFetchWhenUnchanged(boolean)}.
+     */
+    REMOTE_TIP_CHECK,
+    FETCH_AND_RESET,
+    /**
+     * Clones or fetches the shared mirror the working directory is cloned from, unless it was fetched recently, see
+     * {@link com.tw.go.plugin.LocalMirror}.
+     */
+    MIRROR_FETCH,
+    FETCH,
+    /**
+     * Runs whatever gc, repack or pack-refs the maintenance policy asks for; usually nothing.
+     */
+    MAINTENANCE,
+    CLEAN,
+    SUBMODULE_CONFIG_CLEANUP,
+    RESET,
+    SUBMODULE_CHECKOUT,
+    SUBMODULE_INIT,
+    SUBMODULE_SYNC,
+    SUBMODULE_UPDATE
+}
@@ -0,0 +1,27 @@
+package com.tw.go.plugin.timeline;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.tw.go.plugin.GitPhase")
+@Label("Git Phase")
+@Category({"Go CD", "Git"})
+@Description("A phase of cloneOrFetch / fetchAndReset")
+@StackTrace(false)
+class GitPhaseEvent extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Working Directory")
+    String workingDirectory;
+
+    @Label("Attributes")
+    String attributes;
+
+    @Label("Failed")
+    boolean failed;
+}
@@ -0,0 +1,35 @@
+package com.tw.go.plugin.timeline;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Emits a {@code com.tw.go.plugin.GitPhase} Flight Recorder event per phase. Only instantiated through
+ * {@link PhaseListeners#defaults()}, which checks that the {@code jdk.jfr} module is present.
+ */
+class JfrPhaseListener implements PhaseListener {
+    private final ThreadLocal<Deque<GitPhaseEvent>> running = ThreadLocal.withInitial(ArrayDeque::new);
+
+    @Override
+    public void phaseStarted(PhaseEvent event) {
+        GitPhaseEvent jfrEvent = new GitPhaseEvent();
+        jfrEvent.begin();
+        running.get().push(jfrEvent);
+    }
+
+    @Override
+    public void phaseEnded(PhaseEvent event) {
+        GitPhaseEvent jfrEvent = running.get().poll();
+        if (jfrEvent == null) {
+            return;
+        }
+        jfrEvent.end();
+        if (jfrEvent.shouldCommit()) {
+            jfrEvent.phase = event.getPhase().name();
+            jfrEvent.workingDirectory = event.getWorkingDir() == null ? null : event.getWorkingDir().getPath();
+            jfrEvent.attributes = event.getAttributes().toString();
+            jfrEvent.failed = event.getFailure() != null;
+            jfrEvent.commit();
+        }
+    }
+}
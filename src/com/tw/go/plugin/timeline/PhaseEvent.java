@@ -0,0 +1,83 @@
+package com.tw.go.plugin.timeline;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+
+public class PhaseEvent {
+    public enum Type {
+        STARTED,
+        ENDED
+    }
+
+    private final GitPhase phase;
+    private final Type type;
+    private final File workingDir;
+    private final Map<String, String> attributes;
+    private final long timestamp;
+    private final long nanoTime;
+    private final long durationNanos;
+    private final Throwable failure;
+
+    private PhaseEvent(GitPhase phase, Type type, File workingDir, Map<String, String> attributes, long nanoTime, long durationNanos, Throwable failure) {
+        this.phase = phase;
+        this.type = type;
+        this.workingDir = workingDir;
+        this.attributes = Collections.unmodifiableMap(attributes);
+        this.timestamp = System.currentTimeMillis();
+        this.nanoTime = nanoTime;
+        this.durationNanos = durationNanos;
+        this.failure = failure;
+    }
+
+    public static PhaseEvent started(GitPhase phase, File workingDir, Map<String, String> attributes) {
+        return new PhaseEvent(phase, Type.STARTED, workingDir, attributes, System.nanoTime(), 0, null);
+    }
+
+    public PhaseEvent ended(Throwable failure) {
+        long now = System.nanoTime();
+        return new PhaseEvent(phase, Type.ENDED, workingDir, attributes, now, now - nanoTime, failure);
+    }
+
+    public GitPhase getPhase() {
+        return phase;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public File getWorkingDir() {
+        return workingDir;
+    }
+
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Wall-clock time of the event in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Time the phase took; 0 for {@link Type#STARTED} events.
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * The exception that ended the phase, or {@code null} if it completed.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s %s", phase, type, attributes);
+    }
+}
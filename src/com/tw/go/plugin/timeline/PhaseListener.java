@@ -0,0 +1,14 @@
+package com.tw.go.plugin.timeline;
+
+/**
+ * Receives start and end events of the {@link GitPhase}s of a {@link com.tw.go.plugin.GitHelper}, on the thread running
+ * them. Phases nest, so every {@link #phaseEnded} matches the latest unmatched {@link #phaseStarted}. Exceptions thrown
+ * by a listener are ignored.
+ */
+public interface PhaseListener {
+    default void phaseStarted(PhaseEvent event) {
+    }
+
+    default void phaseEnded(PhaseEvent event) {
+    }
+}
@@ -0,0 +1,27 @@
+package com.tw.go.plugin.timeline;
+
+import java.util.Collections;
+import java.util.List;
+
+public class PhaseListeners {
+    private static final List<PhaseListener> DEFAULTS = defaultListeners();
+
+    /**
+     * The listeners every helper starts with: Flight Recorder events where the JVM has {@code jdk.jfr}, nothing
+     * otherwise.
+     */
+    public static List<PhaseListener> defaults() {
+        return DEFAULTS;
+    }
+
+    private static List<PhaseListener> defaultListeners() {
+        try {
+            Class.forName("jdk.jfr.Event", false, PhaseListeners.class.getClassLoader());
+            // loaded reflectively so that JVMs without jdk.jfr never link against it
+            PhaseListener jfr = (PhaseListener) Class.forName("com.tw.go.plugin.timeline.JfrPhaseListener").getDeclaredConstructor().newInstance();
+            return Collections.singletonList(jfr);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return Collections.emptyList();
+        }
+    }
+}
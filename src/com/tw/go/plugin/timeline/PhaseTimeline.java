@@ -0,0 +1,41 @@
+package com.tw.go.plugin.timeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Records every phase event in memory, e.g. to print where a poll spent its time or to assert on in tests.
+ */
+public class PhaseTimeline implements PhaseListener {
+    private final List<PhaseEvent> events = new ArrayList<>();
+
+    @Override
+    public synchronized void phaseStarted(PhaseEvent event) {
+        events.add(event);
+    }
+
+    @Override
+    public synchronized void phaseEnded(PhaseEvent event) {
+        events.add(event);
+    }
+
+    public synchronized List<PhaseEvent> events() {
+        return Collections.unmodifiableList(new ArrayList<>(events));
+    }
+
+    /**
+     * The phases in the order they started.
+     */
+    public List<GitPhase> phases() {
+        return events().stream()
+                .filter(event -> event.getType() == PhaseEvent.Type.STARTED)
+                .map(PhaseEvent::getPhase)
+                .collect(Collectors.toList());
+    }
+
+    public synchronized void clear() {
+        events.clear();
+    }
+}
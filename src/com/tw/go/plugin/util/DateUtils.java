@@ -1,43 +1,203 @@
 package com.tw.go.plugin.util;
 
-import org.joda.time.DateTime;
-import org.joda.time.format.DateTimeFormatter;
-import org.joda.time.format.ISODateTimeFormat;
-
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.TimeZone;
 
+/**
+ * Reads the timestamps git prints without formatters or exceptions: {@code --date=raw} ({@code 1422189618 +0530}),
+ * {@code --date=iso} ({@code 2015-01-25 18:10:18 +0530}) and {@code --date=iso-strict}
+ * ({@code 2015-01-25T18:10:18+05:30}). An ISO date may carry a fraction of a second, its zone may be {@code Z},
+ * {@code +hh}, {@code +hhmm} or {@code +hh:mm}, and one with a {@code T} and no zone is read as UTC. The methods keep no
+ * state and are safe to call from any thread.
+ */
 public class DateUtils {
-    private static final DateTimeFormatter formatter = ISODateTimeFormat.dateTimeNoMillis();
+    /**
+     * Returned by {@link #toEpochMillis(CharSequence, int, int)} for text that is not a timestamp.
+     */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final long SECONDS_PER_DAY = 86400L;
 
     public static Date parseISO8601(String date) {
-        try {
-            DateTime dateTime = formatter.parseDateTime(date);
-            return dateTime.toDate();
-        } catch (Exception e) {
-            //fall through and try and parse other ISO standard formats
+        long millis = toEpochMillis(date, 0, date.length());
+        if (millis == INVALID) {
+            throw new RuntimeException("Unparseable date: \"" + date + "\"");
+        }
+        return new Date(millis);
+    }
+
+    /**
+     * @return the milliseconds since the epoch of the timestamp in {@code text[start, end)}, leading and trailing
+     * whitespace ignored, or {@link #INVALID}
+     */
+    public static long toEpochMillis(CharSequence text, int start, int end) {
+        while (start < end && isSpace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && isSpace(text.charAt(end - 1))) {
+            end--;
         }
-        try {
-            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss ZZZZZ").parse(date);
-        } catch (ParseException e) {
-            //fall through and try and parse other ISO standard formats
+        int digits = digits(text, start, end);
+        if (digits == 4 && start + 4 < end && text.charAt(start + 4) == '-') {
+            return iso(text, start, end);
         }
-        try {
-            return dateFormatFor("yyyy-MM-dd'T'HH:mm:ss", "UTC").parse(date);
-        } catch (ParseException e) {
-            throw new RuntimeException(e);
+        if (digits > 0 && digits <= 18) {
+            return raw(text, start, start + digits, end);
         }
+        return INVALID;
     }
 
-    public static String formatRFC822(Date date) {
-        return new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss ZZZZZ").format(date);
+    // 1422189618 +0530: the zone only says how the author's clock read, the seconds are already UTC
+    private static long raw(CharSequence text, int start, int digitsEnd, int end) {
+        long seconds = number(text, start, digitsEnd);
+        int position = digitsEnd;
+        if (position < end) {
+            if (!isSpace(text.charAt(position))) {
+                return INVALID;
+            }
+            while (position < end && isSpace(text.charAt(position))) {
+                position++;
+            }
+            if (offsetSeconds(text, position, end, false) == INVALID) {
+                return INVALID;
+            }
+        }
+        return seconds * MILLIS_PER_SECOND;
+    }
+
+    // yyyy-MM-dd[T| ]HH:mm:ss[.SSS][ ][Z|+hh|+hhmm|+hh:mm]
+    private static long iso(CharSequence text, int start, int end) {
+        if (end - start < 19
+                || text.charAt(start + 7) != '-'
+                || text.charAt(start + 13) != ':'
+                || text.charAt(start + 16) != ':') {
+            return INVALID;
+        }
+        char separator = text.charAt(start + 10);
+        if (separator != 'T' && separator != ' ') {
+            return INVALID;
+        }
+        int year = field(text, start, 4);
+        int month = field(text, start + 5, 2);
+        int day = field(text, start + 8, 2);
+        int hour = field(text, start + 11, 2);
+        int minute = field(text, start + 14, 2);
+        int second = field(text, start + 17, 2);
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+
+        int position = start + 19;
+        int millis = 0;
+        if (position < end && (text.charAt(position) == '.' || text.charAt(position) == ',')) {
+            int fractionEnd = position + 1 + digits(text, position + 1, end);
+            if (fractionEnd == position + 1) {
+                return INVALID;
+            }
+            for (int i = position + 1, scale = 100; i < fractionEnd && scale > 0; i++, scale /= 10) {
+                millis += (text.charAt(i) - '0') * scale;
+            }
+            position = fractionEnd;
+        }
+        if (position < end && separator == ' ' && text.charAt(position) == ' ') {
+            position++;
+        }
+
+        long offset;
+        if (position == end) {
+            if (separator != 'T') {
+                return INVALID;
+            }
+            offset = 0;
+        } else {
+            offset = offsetSeconds(text, position, end, true);
+            if (offset == INVALID) {
+                return INVALID;
+            }
+        }
+        long seconds = daysSinceEpoch(year, month, day) * SECONDS_PER_DAY + hour * 3600L + minute * 60L + second - offset;
+        return seconds * MILLIS_PER_SECOND + millis;
     }
 
-    private static SimpleDateFormat dateFormatFor(String simpleDateFormat, String timeZone) {
-        SimpleDateFormat dateFormat = new SimpleDateFormat(simpleDateFormat);
-        dateFormat.setTimeZone(TimeZone.getTimeZone(timeZone));
-        return dateFormat;
+    private static long offsetSeconds(CharSequence text, int start, int end, boolean allowZulu) {
+        int length = end - start;
+        if (allowZulu && length == 1 && text.charAt(start) == 'Z') {
+            return 0;
+        }
+        if (length < 3 || (text.charAt(start) != '+' && text.charAt(start) != '-')) {
+            return INVALID;
+        }
+        int hours = field(text, start + 1, 2);
+        int minutes;
+        if (length == 3) {
+            minutes = 0;
+        } else if (length == 5) {
+            minutes = field(text, start + 3, 2);
+        } else if (length == 6 && text.charAt(start + 3) == ':') {
+            minutes = field(text, start + 4, 2);
+        } else {
+            return INVALID;
+        }
+        if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59) {
+            return INVALID;
+        }
+        long offset = hours * 3600L + minutes * 60L;
+        return text.charAt(start) == '-' ? -offset : offset;
+    }
+
+    // days from 1970-01-01 in the proleptic Gregorian calendar, after Howard Hinnant's days_from_civil
+    private static long daysSinceEpoch(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468L;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // the value of exactly length digits, or -1
+    private static int field(CharSequence text, int start, int length) {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static long number(CharSequence text, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static int digits(CharSequence text, int start, int end) {
+        int position = start;
+        while (position < end && text.charAt(position) >= '0' && text.charAt(position) <= '9') {
+            position++;
+        }
+        return position - start;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    public static String formatRFC822(Date date) {
+        return new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss ZZZZZ").format(date);
     }
 }
@@ -0,0 +1,31 @@
+package com.tw.go.plugin.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class GitDirs {
+    private static final String GITDIR_PREFIX = "gitdir:";
+
+    /**
+     * The git directory of a working directory: its {@code .git} directory, or the directory a {@code .git} file points
+     * to, as submodules and worktrees have. A {@code .git} that is neither is returned as is.
+     */
+    public static File resolve(File workingDir) {
+        File dotGit = new File(workingDir, ".git");
+        if (!dotGit.isFile()) {
+            return dotGit;
+        }
+        try {
+            String content = new String(Files.readAllBytes(dotGit.toPath()), StandardCharsets.UTF_8).trim();
+            if (!content.startsWith(GITDIR_PREFIX)) {
+                return dotGit;
+            }
+            File gitDir = new File(content.substring(GITDIR_PREFIX.length()).trim());
+            return gitDir.isAbsolute() ? gitDir : new File(workingDir, gitDir.getPath());
+        } catch (IOException e) {
+            return dotGit;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.tw.go.plugin.util;
+
+/**
+ * Converts git object names between their hex form and the raw bytes git stores in trees.
+ */
+public class ObjectIds {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * @return the raw bytes of a full SHA-1 or SHA-256 name in lower case hex, or {@code null} for anything else
+     */
+    public static byte[] parse(String name) {
+        if (name == null || (name.length() != 40 && name.length() != 64)) {
+            return null;
+        }
+        byte[] id = new byte[name.length() / 2];
+        for (int i = 0; i < id.length; i++) {
+            int high = digit(name.charAt(i * 2));
+            int low = digit(name.charAt(i * 2 + 1));
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            id[i] = (byte) ((high << 4) | low);
+        }
+        return id;
+    }
+
+    public static String toHex(byte[] bytes) {
+        return toHex(bytes, 0, bytes.length);
+    }
+
+    public static String toHex(byte[] bytes, int offset, int length) {
+        char[] hex = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            int b = bytes[offset + i] & 0xff;
+            hex[i * 2] = HEX[b >>> 4];
+            hex[i * 2 + 1] = HEX[b & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+}
@@ -1,9 +1,21 @@
 package com.tw.go.plugin;
 
+import com.tw.go.plugin.cmd.CancellationToken;
+import com.tw.go.plugin.git.GitCatFilePool;
+import com.tw.go.plugin.maintenance.ThresholdMaintenancePolicy;
+import com.tw.go.plugin.metrics.GitOperation;
+import com.tw.go.plugin.metrics.InMemoryGitMetrics;
 import com.tw.go.plugin.model.GitConfig;
+import com.tw.go.plugin.model.ModifiedFilesMode;
 import com.tw.go.plugin.model.Revision;
+import com.tw.go.plugin.model.RevisionRange;
+import com.tw.go.plugin.model.WorkingCopyStatus;
+import com.tw.go.plugin.timeline.GitPhase;
+import com.tw.go.plugin.timeline.PhaseEvent;
+import com.tw.go.plugin.timeline.PhaseTimeline;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.api.Git;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -11,9 +23,19 @@ import org.junit.Test;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -31,7 +53,7 @@ public abstract class AbstractGitHelperTest {
     protected final File simpleGitRepository = new File(System.getProperty("java.io.tmpdir"), "simple-git-repository");
     private final File subModuleGitRepository = new File(System.getProperty("java.io.tmpdir"), "sub-module-git-repository");
     private final File branchGitRepository = new File(System.getProperty("java.io.tmpdir"), "branch-git-repository");
-    private final File mergeCommitGitRepository = new File(System.getProperty("java.io.tmpdir"), "merge-commit-git-repository");
+    protected final File mergeCommitGitRepository = new File(System.getProperty("java.io.tmpdir"), "merge-commit-git-repository");
 
     @Before
     public void setUp() {
@@ -44,7 +66,12 @@ public abstract class AbstractGitHelperTest {
     }
 
     private void cleanTmpFiles() {
+        // the sample repositories are extracted again to the same paths, which the cat-file processes must not outlive
+        for (File repository : Arrays.asList(testRepository, simpleGitRepository, subModuleGitRepository, branchGitRepository, mergeCommitGitRepository)) {
+            GitCatFilePool.evict(repository);
+        }
         FileUtils.deleteQuietly(testRepository);
+        FileUtils.deleteQuietly(new File(testRepository.getParentFile(), "." + testRepository.getName() + ".lock"));
         FileUtils.deleteQuietly(simpleGitRepository);
         FileUtils.deleteQuietly(subModuleGitRepository);
         FileUtils.deleteQuietly(branchGitRepository);
@@ -132,6 +159,303 @@ public abstract class AbstractGitHelperTest {
         assertThat(newerRevisions.isEmpty(), is(true));
     }
 
+    @Test
+    public void shouldStreamRevisions() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        git.cloneOrFetch();
+
+        try (Stream<Revision> revisions = git.streamAllRevisions()) {
+            assertThat(revisions.map(Revision::getRevision).collect(Collectors.toList()), contains("24ce45d1a1427b643ae859777417bbc9f0d7cec8", "1320a78055558603a2c29d803bbaa50d3542ff50", "012e893acea10b140688d11beaa728e8c60bd9f6"));
+        }
+
+        try (Stream<Revision> revisions = git.streamRevisionsSince("012e893acea10b140688d11beaa728e8c60bd9f6")) {
+            List<Revision> newerRevisions = revisions.collect(Collectors.toList());
+            assertThat(newerRevisions.size(), is(2));
+            verifyRevision(newerRevisions.get(0), "24ce45d1a1427b643ae859777417bbc9f0d7cec8", "3\ntest multiline\ncomment", 1422189618000L, List.of(new Pair("a.txt", "modified"), new Pair("b.txt", "added")));
+        }
+
+        try (Stream<Revision> revisions = git.streamAllRevisions()) {
+            assertThat(revisions.findFirst().get().getRevision(), is("24ce45d1a1427b643ae859777417bbc9f0d7cec8"));
+        }
+    }
+
+    @Test
+    public void shouldStopCloneOrFetchWhenCancelled() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        git.cloneOrFetch();
+
+        CancellationToken token = new CancellationToken();
+        git.setCancellationToken(token);
+        token.cancel();
+        try {
+            git.cloneOrFetch();
+            fail("cloneOrFetch should stop once cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+        try (Stream<Revision> revisions = git.streamAllRevisions()) {
+            revisions.collect(Collectors.toList());
+            fail("log should stop once cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void shouldRecordOperationMetrics() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        InMemoryGitMetrics metrics = new InMemoryGitMetrics();
+        git.setMetrics(metrics);
+        git.cloneOrFetch();
+        FileUtils.writeStringToFile(new File(testRepository, "untracked.txt"), "content", StandardCharsets.UTF_8);
+        git.cloneOrFetch();
+        git.getAllRevisions();
+
+        assertThat(metrics.count(GitOperation.FETCH), is(2));
+        assertThat(metrics.count(GitOperation.GC), is(0));
+        assertThat(metrics.count(GitOperation.STATUS), is(2));
+        assertThat(metrics.count(GitOperation.CLEAN), is(2));
+        assertThat(metrics.count(GitOperation.RESET_HARD), is(1));
+        assertThat(metrics.count(GitOperation.GIT_LOG), is(1));
+        assertThat(metrics.count(GitOperation.SUBMODULE_UPDATE), is(0));
+        assertThat(metrics.exitCodes(GitOperation.FETCH), is(Map.of(0, 2L)));
+        assertThat(metrics.durationHistogram(GitOperation.CLEAN).values().stream().mapToLong(Long::longValue).sum(), is(2L));
+    }
+
+    @Test
+    public void shouldSkipCleanAndResetWhenWorkingCopyIsAlreadyAtTheTarget() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        git.cloneOrFetch();
+        WorkingCopyStatus status = git.workingCopyStatus("origin/master");
+        assertThat(status.isUpToDate(), is(true));
+        assertThat(status.getHead(), is(git.currentRevision()));
+
+        File tracked = new File(testRepository, "a.txt");
+        FileUtils.writeStringToFile(tracked, "local change", StandardCharsets.UTF_8);
+        File untracked = new File(testRepository, "untracked.txt");
+        FileUtils.writeStringToFile(untracked, "content", StandardCharsets.UTF_8);
+        status = git.workingCopyStatus("origin/master");
+        assertThat(status.isAtTarget(), is(true));
+        assertThat(status.getTrackedChanges(), is(1));
+        assertThat(status.getUntrackedFiles(), is(1));
+
+        git.cloneOrFetch();
+
+        assertThat(untracked.exists(), is(false));
+        assertThat(FileUtils.readFileToString(tracked, StandardCharsets.UTF_8), is(not("local change")));
+        assertThat(git.workingCopyStatus("origin/master").isUpToDate(), is(true));
+    }
+
+    @Test
+    public void shouldSkipFetchWhileTheRemoteBranchTipIsUnchanged() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+
+        GitConfig gitConfig = new GitConfig(simpleGitRepository.getAbsolutePath());
+        gitConfig.setSkipFetchWhenUnchanged(true);
+        GitHelper git = getHelper(gitConfig, testRepository);
+        InMemoryGitMetrics metrics = new InMemoryGitMetrics();
+        git.setMetrics(metrics);
+        git.cloneOrFetch();
+        File untracked = new File(testRepository, "untracked.txt");
+        FileUtils.writeStringToFile(untracked, "content", StandardCharsets.UTF_8);
+        git.cloneOrFetch();
+
+        assertThat(metrics.count(GitOperation.LS_REMOTE), is(1));
+        assertThat(metrics.count(GitOperation.FETCH), is(1));
+        assertThat(metrics.count(GitOperation.CLEAN), is(0));
+        assertThat(untracked.exists(), is(true));
+
+        GitHelper gitRemote = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), simpleGitRepository);
+        File file = new File(simpleGitRepository, "c.txt");
+        FileUtils.writeStringToFile(file, "content", StandardCharsets.UTF_8);
+        gitRemote.add(file);
+        gitRemote.commit("c");
+        git.cloneOrFetch();
+
+        assertThat(metrics.count(GitOperation.LS_REMOTE), is(2));
+        assertThat(metrics.count(GitOperation.FETCH), is(2));
+        assertThat(git.currentRevision(), is(gitRemote.currentRevision()));
+        assertThat(untracked.exists(), is(false));
+    }
+
+    @Test
+    public void shouldCloneOnceWhenHelpersShareAWorkingDirectory() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+
+        PhaseTimeline timeline = new PhaseTimeline();
+        List<GitHelper> helpers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+            git.addPhaseListener(timeline);
+            helpers.add(git);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(helpers.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> polls = new ArrayList<>();
+            for (GitHelper git : helpers) {
+                polls.add(executor.submit(() -> {
+                    start.await();
+                    git.cloneOrFetch();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> poll : polls) {
+                poll.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(timeline.phases().stream().filter(phase -> phase == GitPhase.CLONE).count(), is(1L));
+        assertThat(helpers.get(0).currentRevision(), is(helpers.get(0).remoteBranchTip()));
+    }
+
+    @Test
+    public void shouldShareOneMirrorBetweenWorkingDirectoriesOfTheSameUrl() throws Exception {
+        extractToTmp("/sample-repository/branch-git-repository.zip");
+
+        File mirrors = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
+        File featureRepository = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
+        try {
+            String url = branchGitRepository.getAbsolutePath();
+            LocalMirror mirror = LocalMirror.of(mirrors, url);
+            // one fetch serves both working directories, cloned one after the other
+            mirror.setFreshForMillis(TimeUnit.MINUTES.toMillis(1));
+            InMemoryGitMetrics metrics = new InMemoryGitMetrics();
+            GitHelper master = getHelper(new GitConfig(url, null, null, "master"), testRepository);
+            GitHelper feature = getHelper(new GitConfig(url + "/", null, null, "feature-branch"), featureRepository);
+            for (GitHelper git : Arrays.asList(master, feature)) {
+                git.setMirror(LocalMirror.of(mirrors, git == master ? url : url + "/"));
+                git.setMetrics(metrics);
+                git.cloneOrFetch();
+            }
+
+            assertThat(feature.getMirror(), is(sameInstance(mirror)));
+            assertThat(metrics.count(GitOperation.MIRROR_FETCH), is(1));
+            assertThat(new File(mirror.getDirectory(), "HEAD").isFile(), is(true));
+            for (File workingDir : Arrays.asList(testRepository, featureRepository)) {
+                File alternates = new File(workingDir, ".git/objects/info/alternates");
+                assertThat(FileUtils.readFileToString(alternates, StandardCharsets.UTF_8).trim(), is(new File(mirror.getDirectory(), "objects").getAbsolutePath()));
+                // every object is borrowed from the mirror
+                File objects = alternates.getParentFile().getParentFile();
+                assertThat(FileUtils.listFiles(objects, null, true).stream()
+                        .filter(object -> !object.toPath().startsWith(new File(objects, "info").toPath())).count(), is(0L));
+            }
+            assertThat(master.workingRepositoryUrl(), is(url));
+            assertThat(master.currentRevision(), is("012e893acea10b140688d11beaa728e8c60bd9f6"));
+            assertThat(feature.getCurrentBranch(), is("feature-branch"));
+            assertThat(feature.currentRevision(), is("765e24764ee4f6fc10e4301b4f9528c08ff178d4"));
+            assertThat(feature.getCommitCount(), is(2));
+
+            GitHelper gitRemote = getHelper(new GitConfig(url), branchGitRepository);
+            File file = new File(branchGitRepository, "c.txt");
+            FileUtils.writeStringToFile(file, "content", StandardCharsets.UTF_8);
+            gitRemote.add(file);
+            gitRemote.commit("c");
+            master.cloneOrFetch();
+            assertThat(master.currentRevision(), is("012e893acea10b140688d11beaa728e8c60bd9f6"));
+
+            mirror.setFreshForMillis(0);
+            master.cloneOrFetch();
+            assertThat(metrics.count(GitOperation.MIRROR_FETCH), is(2));
+            assertThat(master.currentRevision(), is(gitRemote.currentRevision()));
+            assertThat(master.getCommitCount(), is(2));
+        } finally {
+            FileUtils.deleteQuietly(mirrors);
+            FileUtils.deleteQuietly(featureRepository);
+            FileUtils.deleteQuietly(new File(featureRepository.getParentFile(), "." + featureRepository.getName() + ".lock"));
+        }
+    }
+
+    @Test
+    public void shouldFetchTheMirrorFromTheUrlOfTheHelperAskingForIt() throws Exception {
+        extractToTmp("/sample-repository/branch-git-repository.zip");
+
+        File mirrors = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
+        try {
+            String url = branchGitRepository.getAbsolutePath();
+            LocalMirror mirror = LocalMirror.of(mirrors, url);
+            GitHelper git = getHelper(new GitConfig(url, null, null, "master"), testRepository);
+            git.setMirror(mirror);
+            git.cloneOrFetch();
+
+            // whatever the mirror remembers of the helper that created it is not used to fetch it
+            try (Git mirrorGit = Git.open(mirror.getDirectory())) {
+                mirrorGit.getRepository().getConfig().setString("remote", "origin", "url", new File(mirrors, "missing").getAbsolutePath());
+                mirrorGit.getRepository().getConfig().save();
+            }
+            GitHelper gitRemote = getHelper(new GitConfig(url), branchGitRepository);
+            File file = new File(branchGitRepository, "c.txt");
+            FileUtils.writeStringToFile(file, "content", StandardCharsets.UTF_8);
+            gitRemote.add(file);
+            gitRemote.commit("c");
+
+            git.cloneOrFetch();
+            assertThat(git.currentRevision(), is(gitRemote.currentRevision()));
+        } finally {
+            FileUtils.deleteQuietly(mirrors);
+        }
+    }
+
+    @Test
+    public void shouldRunMaintenanceOnlyWhenThePolicyAsksForIt() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        InMemoryGitMetrics metrics = new InMemoryGitMetrics();
+        git.setMetrics(metrics);
+        git.cloneOrFetch();
+        assertThat(metrics.count(GitOperation.GC) + metrics.count(GitOperation.REPACK) + metrics.count(GitOperation.PACK_REFS), is(0));
+        assertThat(new File(testRepository, ".git/git-cmd-maintenance").isFile(), is(true));
+
+        git.setMaintenancePolicy(new ThresholdMaintenancePolicy(0, TimeUnit.DAYS.toMillis(7), Integer.MAX_VALUE, -1, -1));
+        git.maintain();
+        assertThat(metrics.count(GitOperation.REPACK), is(1));
+        assertThat(metrics.count(GitOperation.PACK_REFS), is(1));
+
+        git.setMaintenancePolicy(new ThresholdMaintenancePolicy(TimeUnit.HOURS.toMillis(1), 0, -1, -1, -1));
+        git.maintain();
+        assertThat(metrics.count(GitOperation.GC), is(0));
+
+        git.setMaintenancePolicy(new ThresholdMaintenancePolicy(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+        git.maintain();
+        assertThat(metrics.count(GitOperation.GC), is(1));
+        assertThat(metrics.count(GitOperation.REPACK), is(1));
+        assertThat(git.getCommitCount(), is(git.getAllRevisions().size()));
+        assertThat(new File(testRepository, ".git/objects/info/commit-graph").isFile(), is(true));
+        assertThat(FileUtils.readFileToString(new File(testRepository, ".git/config"), StandardCharsets.UTF_8).contains("commitGraph"), is(false));
+    }
+
+    @Test
+    public void shouldReportPhasesOfCloneOrFetch() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        PhaseTimeline timeline = new PhaseTimeline();
+        git.addPhaseListener(timeline);
+        git.cloneOrFetch();
+
+        assertThat(timeline.phases(), contains(GitPhase.CLONE_OR_FETCH, GitPhase.CLONE, GitPhase.FETCH_AND_RESET, GitPhase.FETCH, GitPhase.MAINTENANCE));
+        List<PhaseEvent> events = timeline.events();
+        assertThat(events.size(), is(10));
+        PhaseEvent last = events.get(events.size() - 1);
+        assertThat(last.getPhase(), is(GitPhase.CLONE_OR_FETCH));
+        assertThat(last.getType(), is(PhaseEvent.Type.ENDED));
+        assertThat(last.getFailure(), is(nullValue()));
+        PhaseEvent fetchAndReset = events.stream().filter(event -> event.getPhase() == GitPhase.FETCH_AND_RESET).findFirst().get();
+        assertThat(fetchAndReset.getAttributes(), is(Map.of("revision", "origin/master")));
+    }
+
     @Test
     public void shouldGetLatestRevisionForSubpaths() throws Exception {
         extractToTmp("/sample-repository/simple-git-repository-3.zip");
@@ -254,6 +578,27 @@ public abstract class AbstractGitHelperTest {
         assertThat(new File(testRepository, "b.txt").exists(), is(false));
     }
 
+    @Test
+    public void shouldCountCommitsFromTheCachedCountWhenTheTipMoves() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-3.zip");
+
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        git.cloneOrFetch();
+        assertThat(git.getCommitCount(), is(4));
+
+        git.resetHard("1320a78055558603a2c29d803bbaa50d3542ff50");
+        assertThat(git.getCommitCount(), is(2));
+
+        File file = new File(testRepository, "c.txt");
+        FileUtils.writeStringToFile(file, "content", StandardCharsets.UTF_8);
+        git.add(file);
+        git.commit("c");
+        assertThat(git.getCommitCount(), is(3));
+
+        CommitCountCache.clear();
+        assertThat(git.getCommitCount(), is(3));
+    }
+
     @Test
     public void shouldInitAddCommit() throws Exception {
         testRepository.mkdirs();
@@ -275,6 +620,120 @@ public abstract class AbstractGitHelperTest {
         assertThat(revision.getModifiedFiles().get(0).getAction(), is("added"));
     }
 
+    @Test
+    public void shouldDetectRenamesOnlyWhenConfiguredAndWithinTheRenameLimit() throws Exception {
+        moveTwoFiles();
+        List<String> addedAndDeleted = List.of("a.txt:deleted", "b.txt:deleted", "moved/c.txt:added", "moved/d.txt:added");
+
+        GitConfig noRenames = new GitConfig(testRepository.getAbsolutePath());
+        noRenames.setRenameDetection(false);
+        GitHelper git = getHelper(noRenames, testRepository);
+        Revision latest = git.getLatestRevision();
+        assertThat(files(latest), is(addedAndDeleted));
+
+        GitConfig renames = new GitConfig(testRepository.getAbsolutePath());
+        renames.setRenameDetection(true);
+        git = getHelper(renames, testRepository);
+        assertThat(files(git.getAllRevisions().get(0)), is(List.of("moved/c.txt:renamed", "moved/d.txt:renamed")));
+        Revision details = git.getDetailsForRevision(latest.getRevision());
+        assertThat(files(details), is(List.of("moved/c.txt:renamed", "moved/d.txt:renamed")));
+        assertThat(details.getModifiedFiles().get(0).getAction(), is("added"));
+
+        renames.setRenameLimit(1);
+        assertThat(files(git.getAllRevisions().get(0)), is(addedAndDeleted));
+        assertThat(files(git.getDetailsForRevision(latest.getRevision())), is(addedAndDeleted));
+    }
+
+    @Test
+    public void shouldReadModifiedFilesOnlyWhenAskedForInLazyMode() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+
+        GitConfig config = new GitConfig(simpleGitRepository.getAbsolutePath());
+        config.setModifiedFilesMode(ModifiedFilesMode.LAZY);
+        GitHelper git = getHelper(config, testRepository);
+        git.cloneOrFetch();
+        InMemoryGitMetrics metrics = new InMemoryGitMetrics();
+        git.setMetrics(metrics);
+
+        List<Revision> revisions = git.getAllRevisions();
+        assertThat(revisions.size(), is(3));
+        assertThat(revisions.get(0).isModifiedFilesLoaded(), is(false));
+        assertThat(metrics.count(GitOperation.DIFF_TREE), is(0));
+        verifyRevision(revisions.get(0), "24ce45d1a1427b643ae859777417bbc9f0d7cec8", "3\ntest multiline\ncomment", 1422189618000L, List.of(new Pair("a.txt", "modified"), new Pair("b.txt", "added")));
+        assertThat(revisions.get(0).isModifiedFilesLoaded(), is(true));
+        assertThat(revisions.get(1).isModifiedFilesLoaded(), is(false));
+
+        config.setModifiedFilesMode(ModifiedFilesMode.NONE);
+        Revision latest = git.getLatestRevision();
+        assertThat(latest.getRevision(), is("24ce45d1a1427b643ae859777417bbc9f0d7cec8"));
+        assertThat(latest.getModifiedFiles().isEmpty(), is(true));
+        assertThat(git.getDetailsForRevision("24ce45d").getModifiedFiles().size(), is(2));
+    }
+
+    @Test
+    public void shouldKeepAtMostTheConfiguredNumberOfModifiedFiles() throws Exception {
+        addTenFiles();
+        GitConfig config = new GitConfig(testRepository.getAbsolutePath());
+        config.setMaxModifiedFiles(3);
+        GitHelper git = getHelper(config, testRepository);
+
+        Revision latest = git.getLatestRevision();
+        assertThat(files(latest), is(List.of("dir/file-0.txt:added", "dir/file-1.txt:added", "dir/file-2.txt:added")));
+        assertThat(latest.getTruncatedModifiedFiles(), is(7));
+        Revision details = git.getDetailsForRevision(latest.getRevision());
+        assertThat(files(details), is(files(latest)));
+        assertThat(details.getTruncatedModifiedFiles(), is(7));
+        config.setSinglePassLog(false);
+        assertThat(git.getLatestRevision().getTruncatedModifiedFiles(), is(7));
+
+        config.setModifiedFilesMode(ModifiedFilesMode.LAZY);
+        assertThat(git.getAllRevisions().get(0).getTruncatedModifiedFiles(), is(7));
+
+        config.setMaxModifiedFiles(0);
+        assertThat(git.getDetailsForRevision(latest.getRevision()).isModifiedFilesTruncated(), is(false));
+    }
+
+    // commits dir/file-0.txt to dir/file-9.txt at once
+    protected void addTenFiles() throws Exception {
+        try (Git repository = Git.init().setDirectory(testRepository).call()) {
+            for (int i = 0; i < 10; i++) {
+                FileUtils.writeStringToFile(new File(testRepository, "dir/file-" + i + ".txt"), "content " + i, StandardCharsets.UTF_8);
+            }
+            repository.add().addFilepattern(".").call();
+            repository.commit().setMessage("mass change").setSign(false).call();
+        }
+    }
+
+    // commits a.txt and b.txt, then moves them to moved/c.txt and moved/d.txt with a line added to each
+    protected void moveTwoFiles() throws Exception {
+        try (Git repository = Git.init().setDirectory(testRepository).call()) {
+            FileUtils.writeStringToFile(new File(testRepository, "a.txt"), lines("a", 20), StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(new File(testRepository, "b.txt"), lines("b", 20), StandardCharsets.UTF_8);
+            repository.add().addFilepattern(".").call();
+            repository.commit().setMessage("add").setSign(false).call();
+            FileUtils.forceDelete(new File(testRepository, "a.txt"));
+            FileUtils.forceDelete(new File(testRepository, "b.txt"));
+            FileUtils.writeStringToFile(new File(testRepository, "moved/c.txt"), lines("a", 20) + "changed\n", StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(new File(testRepository, "moved/d.txt"), lines("b", 20) + "changed\n", StandardCharsets.UTF_8);
+            repository.add().addFilepattern(".").call();
+            repository.commit().setAll(true).setMessage("move").setSign(false).call();
+        }
+    }
+
+    private static String lines(String prefix, int count) {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            lines.append(prefix).append(" line ").append(i).append('\n');
+        }
+        return lines.toString();
+    }
+
+    protected static List<String> files(Revision revision) {
+        return revision.getModifiedFiles().stream()
+                .map(file -> file.getFileName() + ":" + file.getFileAction().getName())
+                .collect(Collectors.toList());
+    }
+
     @Ignore
     @Test
     public void shouldWorkWithGithubRepository() {
@@ -287,6 +746,87 @@ public abstract class AbstractGitHelperTest {
         assertThat(branchToRevisionMap.get("1"), is("aabd0f242bd40bfaaa4ce359123b2a2d976077d1"));
     }
 
+    @Test
+    public void shouldLookUpAbbreviatedAndBatchedRevisions() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        git.cloneOrFetch();
+
+        verifyRevision(git.getDetailsForRevision("1320a78"), "1320a78055558603a2c29d803bbaa50d3542ff50", "2", 1422189545000L, List.of(new Pair("a.txt", "modified")));
+        Map<String, Revision> revisions = git.getDetailsForRevisions(List.of("24ce45d1a1427b643ae859777417bbc9f0d7cec8", "0000000000000000000000000000000000000000", "1320a78"));
+        assertThat(revisions.keySet(), contains("24ce45d1a1427b643ae859777417bbc9f0d7cec8", "1320a78"));
+        assertThat(revisions.get("1320a78").getRevision(), is("1320a78055558603a2c29d803bbaa50d3542ff50"));
+        try {
+            git.getDetailsForRevision("0000000");
+            fail("should not resolve a missing revision");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), containsString("Unable to resolve revision 0000000"));
+        }
+    }
+
+    @Test
+    public void shouldReturnRevisionsSinceWithRangeSemantics() throws Exception {
+        extractToTmp("/sample-repository/merge-commit-git-repository.zip");
+
+        GitHelper git = getHelper(new GitConfig(mergeCommitGitRepository.getAbsolutePath(), null, null, "test-branch"), testRepository);
+        git.cloneOrFetch();
+
+        List<String> shas = git.getRevisionsSince("ae29ea1").stream().map(Revision::getRevision).collect(Collectors.toList());
+        // the merged-in side of ae29ea1..origin/test-branch, but not ae29ea1's own history
+        assertThat(shas, contains("66a1b17514622a8e4a620a033cca3715ef870e71", "bb3d335948af4f380f0f0a8884df982e49f272c7"));
+    }
+
+    @Test
+    public void shouldBoundRevisionRangeSince() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-3.zip");
+
+        GitConfig gitConfig = new GitConfig(simpleGitRepository.getAbsolutePath());
+        GitHelper git = getHelper(gitConfig, testRepository);
+        git.cloneOrFetch();
+
+        RevisionRange range = git.getRevisionRangeSince("012e893acea10b140688d11beaa728e8c60bd9f6", null);
+        assertThat(range.getStatus(), is(RevisionRange.Status.COMPLETE));
+        assertThat(range.getRevisions().size(), is(3));
+
+        gitConfig.setMaxNewRevisions(2);
+        range = git.getRevisionRangeSince("012e893acea10b140688d11beaa728e8c60bd9f6", null);
+        assertThat(range.getStatus(), is(RevisionRange.Status.TRUNCATED));
+        assertThat(range.getRevisions().size(), is(2));
+        assertThat(range.getRevisions().get(0).getRevision(), is(git.currentRevision()));
+
+        gitConfig.setMaxNewRevisions(0);
+        gitConfig.setMaxNewRevisionAgeSeconds(60);
+        range = git.getRevisionRangeSince("012e893acea10b140688d11beaa728e8c60bd9f6", null);
+        assertThat(range.getStatus(), is(RevisionRange.Status.TRUNCATED));
+        assertThat(range.getRevisions(), is(empty()));
+
+        range = git.getRevisionRangeSince("0123456789012345678901234567890123456789", null);
+        assertThat(range.getStatus(), is(RevisionRange.Status.PREVIOUS_UNREACHABLE));
+        assertThat(range.isPreviousReachable(), is(false));
+    }
+
+    @Test
+    public void shouldDiffNoMoreRevisionsThanTheBoundsNeed() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-3.zip");
+
+        GitConfig gitConfig = new GitConfig(simpleGitRepository.getAbsolutePath());
+        gitConfig.setSinglePassLog(false);
+        GitHelper git = getHelper(gitConfig, testRepository);
+        git.cloneOrFetch();
+        InMemoryGitMetrics metrics = new InMemoryGitMetrics();
+        git.setMetrics(metrics);
+
+        gitConfig.setMaxNewRevisions(1);
+        assertThat(git.getRevisionRangeSince("012e893acea10b140688d11beaa728e8c60bd9f6", null).getRevisions().size(), is(1));
+        assertThat(metrics.count(GitOperation.DIFF_TREE), is(2));
+
+        gitConfig.setMaxNewRevisions(0);
+        gitConfig.setMaxNewRevisionAgeSeconds(60);
+        assertThat(git.getRevisionRangeSince("012e893acea10b140688d11beaa728e8c60bd9f6", null).getRevisions(), is(empty()));
+        assertThat(metrics.count(GitOperation.DIFF_TREE), is(3));
+    }
+
     @Test
     public void shouldReturnModifiedFilesForMergeCommit() throws Exception {
         extractToTmp("/sample-repository/merge-commit-git-repository.zip");
@@ -4,7 +4,14 @@ import com.tw.go.plugin.git.GitCmdHelper;
 import com.tw.go.plugin.model.GitConfig;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.UUID;
+
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class HelperFactoryTest {
@@ -12,5 +19,38 @@ public class HelperFactoryTest {
     public void shouldGiveGitCmdIfAvailable() {
         GitHelper git = HelperFactory.git(new GitConfig("url"), null);
         assertThat(git, instanceOf(GitCmdHelper.class));
+        assertThat(git.getMirror(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldShareAMirrorBetweenHelpersOfTheSameUrlOnceConfigured() {
+        File mirrors = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
+        HelperFactory.setMirrorsDirectory(mirrors, 5000);
+        try {
+            GitHelper git = HelperFactory.git(new GitConfig("https://github.com/org/repo.git"), new File("repo"));
+            GitHelper other = HelperFactory.jGit(new GitConfig("https://github.com/org/repo"), new File("other"));
+
+            assertThat(other.getMirror(), is(sameInstance(git.getMirror())));
+            assertThat(git.getMirror().getDirectory().getParentFile(), is(mirrors.getAbsoluteFile()));
+            assertThat(git.getMirror().getFreshForMillis(), is(5000L));
+        } finally {
+            HelperFactory.setMirrorsDirectory(null);
+        }
+    }
+
+    @Test
+    public void shouldNotShareAMirrorBetweenHelpersOfDifferentUsers() {
+        File mirrors = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
+        HelperFactory.setMirrorsDirectory(mirrors, 5000);
+        try {
+            GitHelper alice = HelperFactory.git(new GitConfig("https://github.com/org/repo", "alice", "secret", null), new File("repo"));
+            GitHelper bob = HelperFactory.jGit(new GitConfig("https://github.com/org/repo", "bob", "revoked", null), new File("other"));
+            GitHelper aliceRotated = HelperFactory.jGit(new GitConfig("https://github.com/org/repo", "alice", "rotated", null), new File("third"));
+
+            assertThat(bob.getMirror(), is(not(sameInstance(alice.getMirror()))));
+            assertThat(aliceRotated.getMirror(), is(sameInstance(alice.getMirror())));
+        } finally {
+            HelperFactory.setMirrorsDirectory(null);
+        }
     }
 }
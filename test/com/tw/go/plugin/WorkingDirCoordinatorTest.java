@@ -0,0 +1,172 @@
+package com.tw.go.plugin;
+
+import com.tw.go.plugin.cmd.CancellationToken;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class WorkingDirCoordinatorTest {
+    private final File parent = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
+    private final File workingDir = new File(parent, "working-dir");
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        FileUtils.deleteQuietly(parent);
+    }
+
+    @Test
+    public void shouldShareOneFetchBetweenConcurrentCallers() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Runnable fetch = () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            await(release);
+        };
+
+        List<Future<?>> callers = new ArrayList<>();
+        callers.add(executor.submit(() -> WorkingDirCoordinator.run(workingDir, null, new CancellationToken(), fetch)));
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        for (int i = 0; i < 3; i++) {
+            callers.add(executor.submit(() -> WorkingDirCoordinator.run(new File(parent, "./working-dir"), null, new CancellationToken(), fetch)));
+        }
+        Thread.sleep(2 * WorkingDirCoordinator.WAIT_CHECK_MILLIS);
+        release.countDown();
+        for (Future<?> caller : callers) {
+            caller.get(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(runs.get(), is(1));
+        assertThat(new File(parent, ".working-dir.lock").isFile(), is(true));
+        WorkingDirCoordinator.run(workingDir, null, new CancellationToken(), fetch);
+        assertThat(runs.get(), is(2));
+    }
+
+    @Test
+    public void shouldRunFetchesOfOtherRefSpecsOneAfterTheOther() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<?>> callers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String refSpec = "+refs/heads/branch-" + i + ":refs/remotes/origin/branch-" + i;
+            callers.add(executor.submit(() -> WorkingDirCoordinator.run(workingDir, refSpec, new CancellationToken(), () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(50);
+                running.decrementAndGet();
+            })));
+        }
+        for (Future<?> caller : callers) {
+            caller.get(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(maxRunning.get(), is(1));
+    }
+
+    @Test
+    public void shouldShareTheFailureOfTheFetchInFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> leader = executor.submit(() -> WorkingDirCoordinator.run(workingDir, null, new CancellationToken(), () -> {
+            started.countDown();
+            await(release);
+            throw new RuntimeException("fetch failed");
+        }));
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        Future<?> follower = executor.submit(() -> WorkingDirCoordinator.run(workingDir, null, new CancellationToken(), () -> fail("should share the fetch in flight")));
+        Thread.sleep(2 * WorkingDirCoordinator.WAIT_CHECK_MILLIS);
+        release.countDown();
+
+        assertThat(failure(leader).getMessage(), is("fetch failed"));
+        assertThat(failure(follower).getCause().getMessage(), is("fetch failed"));
+    }
+
+    @Test
+    public void shouldStopWaitingOnceCancelled() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> leader = executor.submit(() -> WorkingDirCoordinator.run(workingDir, null, new CancellationToken(), () -> {
+            started.countDown();
+            await(release);
+        }));
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        CancellationToken cancellationToken = new CancellationToken();
+        Future<?> follower = executor.submit(() -> WorkingDirCoordinator.run(workingDir, "refs/heads/other", cancellationToken, () -> fail("should not run once cancelled")));
+        Thread.sleep(2 * WorkingDirCoordinator.WAIT_CHECK_MILLIS);
+        cancellationToken.cancel();
+
+        assertThat(failure(follower) instanceof CancellationException, is(true));
+        release.countDown();
+        leader.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldShareTheFetchOfADirectoryReachedThroughASymbolicLink() throws Exception {
+        FileUtils.forceMkdir(parent);
+        File link = Files.createSymbolicLink(new File(parent, "link").toPath(), parent.toPath()).toFile();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        Runnable fetch = () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            await(release);
+        };
+
+        Future<?> leader = executor.submit(() -> WorkingDirCoordinator.run(workingDir, null, new CancellationToken(), fetch));
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+        Future<?> follower = executor.submit(() -> WorkingDirCoordinator.run(new File(link, "working-dir"), null, new CancellationToken(), fetch));
+        Thread.sleep(2 * WorkingDirCoordinator.WAIT_CHECK_MILLIS);
+        release.countDown();
+        leader.get(10, TimeUnit.SECONDS);
+        follower.get(10, TimeUnit.SECONDS);
+
+        assertThat(runs.get(), is(1));
+        assertThat(new File(parent, ".working-dir.lock").isFile(), is(true));
+    }
+
+    private static Throwable failure(Future<?> future) throws Exception {
+        try {
+            future.get(10, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+        throw new AssertionError("expected a failure");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
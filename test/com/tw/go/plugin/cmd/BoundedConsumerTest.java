@@ -0,0 +1,124 @@
+package com.tw.go.plugin.cmd;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class BoundedConsumerTest {
+    @Test
+    public void shouldKeepAllLinesWithinTheWindow() {
+        BoundedConsumer consumer = new BoundedConsumer(2, 2);
+        consume(consumer, 4);
+
+        assertThat(consumer.asList(), is(Arrays.asList("line-1", "line-2", "line-3", "line-4")));
+        assertThat(consumer.omittedLines(), is(0));
+    }
+
+    @Test
+    public void shouldKeepHeadAndTailOfLongOutput() {
+        BoundedConsumer consumer = new BoundedConsumer(2, 2);
+        consume(consumer, 10);
+
+        assertThat(consumer.asList(), is(Arrays.asList("line-1", "line-2", "line-9", "line-10")));
+        assertThat(consumer.omittedLines(), is(6));
+        assertThat(consumer.lineCount(), is(10));
+        assertThat(consumer.toString(), is(String.join(System.lineSeparator(), "line-1", "line-2", "... 6 lines omitted ...", "line-9", "line-10")));
+    }
+
+    @Test
+    public void shouldReadSpilledOutputBackInFull() {
+        List<String> expected = new ArrayList<>();
+        try (BoundedConsumer consumer = new BoundedConsumer(2, 2, true)) {
+            for (int i = 1; i <= 10; i++) {
+                expected.add("line-" + i);
+            }
+            consume(consumer, 10);
+
+            assertThat(consumer.asList(), is(expected));
+            assertThat(consumer.asList().get(7), is("line-8"));
+            assertThat(consumer.asList().get(3), is("line-4"));
+            assertThat(consumer.omittedLines(), is(0));
+            assertThat(consumer.toString(), is(String.join(System.lineSeparator(), "line-1", "line-2", "... 6 lines omitted ...", "line-9", "line-10")));
+        }
+    }
+
+    @Test
+    public void shouldReadSpilledLinesLongerThanTheBuffersAndLinesConsumedAfterReading() {
+        StringBuilder longLine = new StringBuilder();
+        while (longLine.length() < 200 * 1024) {
+            longLine.append("0123456789abcdef");
+        }
+        try (BoundedConsumer consumer = new BoundedConsumer(1, 0, true)) {
+            consumer.consumeLine("first");
+            consumer.consumeLine("second");
+            consumer.consumeLine(longLine.toString());
+            assertThat(consumer.asList().get(2), is(longLine.toString()));
+
+            consumer.consumeLine("fourth");
+            consumer.consumeLine("");
+            assertThat(consumer.asList(), is(Arrays.asList("first", "second", longLine.toString(), "fourth", "")));
+        }
+    }
+
+    @Test
+    public void shouldDeleteTheSpillFileOnClose() throws Exception {
+        BoundedConsumer consumer = new BoundedConsumer(1, 1, true);
+        consume(consumer, 3);
+        List<String> lines = consumer.asList();
+        File[] before = spillFiles();
+
+        consumer.close();
+
+        assertThat(spillFiles().length, is(before.length - 1));
+        try {
+            lines.get(2);
+            fail("spilled output should be gone");
+        } catch (UncheckedIOException expected) {
+        }
+    }
+
+    @Test
+    public void shouldExcerptLongOutputForErrorMessages() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            lines.add("line-" + i);
+        }
+
+        String[] excerpt = ConsoleResult.excerpt(lines).split(System.lineSeparator());
+
+        assertThat(excerpt.length, is(ConsoleResult.EXCERPT_HEAD_LINES + ConsoleResult.EXCERPT_TAIL_LINES + 1));
+        assertThat(excerpt[ConsoleResult.EXCERPT_HEAD_LINES], is("... 60 lines omitted ..."));
+        assertThat(excerpt[excerpt.length - 1], is("line-100"));
+    }
+
+    @Test
+    public void shouldCountLinesAlreadyOmittedInTheExcerpt() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) {
+            lines.add("line-" + i);
+        }
+
+        String[] excerpt = ConsoleResult.excerpt(lines, 100).split(System.lineSeparator());
+
+        assertThat(excerpt[ConsoleResult.EXCERPT_HEAD_LINES], is("... 110 lines omitted ..."));
+    }
+
+    private File[] spillFiles() {
+        File[] files = new File(System.getProperty("java.io.tmpdir")).listFiles((dir, name) -> name.startsWith("git-cmd-output") && name.endsWith(".lines"));
+        return files == null ? new File[0] : files;
+    }
+
+    private void consume(BoundedConsumer consumer, int lines) {
+        for (int i = 1; i <= lines; i++) {
+            consumer.consumeLine("line-" + i);
+        }
+    }
+}
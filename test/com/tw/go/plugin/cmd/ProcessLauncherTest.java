@@ -0,0 +1,98 @@
+package com.tw.go.plugin.cmd;
+
+import org.apache.commons.exec.CommandLine;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ProcessLauncherTest {
+    private final AtomicInteger pumped = new AtomicInteger();
+    private final ExecutorService pumps = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1, TimeUnit.MINUTES, new SynchronousQueue<>()) {
+        @Override
+        protected void beforeExecute(Thread thread, Runnable task) {
+            pumped.incrementAndGet();
+        }
+    };
+    private final ProcessLauncher launcher = new ProcessLauncher(pumps);
+
+    @After
+    public void tearDown() {
+        pumps.shutdownNow();
+    }
+
+    @Test
+    public void shouldReturnTheExitCodeAndSplitBothStreamsIntoLines() throws Exception {
+        ProcessOutputStreamConsumer stdOut = consumer();
+        ProcessOutputStreamConsumer stdErr = consumer();
+        CommandStats stats = new CommandStats();
+
+        int exitCode = launcher.run(shell("printf 'a\\nb\\r\\nc\\rd'; printf 'failed\\n' >&2; exit 3"), null, stdOut, stdErr, 0, null, stats);
+
+        assertThat(exitCode, is(3));
+        assertThat(stdOut.output(), is(Arrays.asList("a", "b", "c", "d")));
+        assertThat(stdErr.output(), is(Collections.singletonList("failed")));
+        assertThat(stats.getExitCode(), is(3));
+        assertThat(stats.getStdOutBytes(), is(8L));
+        assertThat(stats.getStdErrBytes(), is(7L));
+    }
+
+    @Test
+    public void shouldPumpStdErrOfEveryCommandOnTheSharedPumps() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            launcher.run(shell("echo out; echo err >&2"), null, consumer(), consumer());
+        }
+
+        assertThat(pumped.get(), is(3));
+    }
+
+    @Test
+    public void shouldReportATimeoutAfterTerminatingTheCommand() throws Exception {
+        CommandStats stats = new CommandStats();
+        long start = System.currentTimeMillis();
+        try {
+            launcher.run(shell("sleep 30; true"), null, consumer(), consumer(), 500, null, stats);
+            fail("command should time out");
+        } catch (TimeoutException expected) {
+        }
+        assertThat(System.currentTimeMillis() - start, lessThan(10000L));
+        assertThat(stats.getDurationNanos() > 0, is(true));
+    }
+
+    @Test
+    public void shouldNotStartACommandWhoseTokenIsAlreadyCancelled() throws Exception {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        CommandStats stats = new CommandStats();
+        try {
+            launcher.run(shell("echo started"), null, consumer(), consumer(), 0, token, stats);
+            fail("command should be cancelled");
+        } catch (CancellationException expected) {
+        }
+        assertThat(pumped.get(), is(0));
+        assertThat(stats.getExitCode(), is(-1));
+    }
+
+    private CommandLine shell(String script) {
+        CommandLine commandLine = new CommandLine("sh");
+        commandLine.addArguments(new String[]{"-c", script}, false);
+        return commandLine;
+    }
+
+    private ProcessOutputStreamConsumer consumer() {
+        return new ProcessOutputStreamConsumer(new InMemoryConsumer());
+    }
+}
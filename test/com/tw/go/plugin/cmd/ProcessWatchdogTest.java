@@ -0,0 +1,56 @@
+package com.tw.go.plugin.cmd;
+
+import org.apache.commons.exec.CommandLine;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ProcessWatchdogTest {
+    @Test
+    public void shouldTerminateProcessTreeOnTimeout() {
+        long start = System.nanoTime();
+        try {
+            Console.runOrBomb(hangingCommand(), null, consumer(), consumer(), 1, null);
+            fail("command should time out");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), containsString("Timed out after 1 seconds"));
+        }
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), lessThan(10L));
+    }
+
+    @Test
+    public void shouldTerminateProcessTreeOnCancellation() {
+        CancellationToken token = new CancellationToken();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        executor.schedule(token::cancel, 200, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+        try {
+            Console.runOrBomb(hangingCommand(), null, consumer(), consumer(), 0, token);
+            fail("command should be cancelled");
+        } catch (CancellationException e) {
+            assertThat(e.getMessage(), containsString("Cancelled"));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), lessThan(10L));
+    }
+
+    // the shell forks sleep, which keeps the output pipes open unless the whole tree is terminated
+    private CommandLine hangingCommand() {
+        CommandLine commandLine = new CommandLine("sh");
+        commandLine.addArguments(new String[]{"-c", "sleep 30; true"}, false);
+        return commandLine;
+    }
+
+    private ProcessOutputStreamConsumer consumer() {
+        return new ProcessOutputStreamConsumer(new BoundedConsumer());
+    }
+}
@@ -0,0 +1,126 @@
+package com.tw.go.plugin.git;
+
+import com.tw.go.plugin.cmd.CancellationToken;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class GitCatFileTest {
+    private static final String MISSING = "0000000000000000000000000000000000000001";
+
+    private final File repository = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
+
+    @Before
+    public void setUp() throws Exception {
+        run(repository.getParentFile(), "git", "init", "-q", repository.getName());
+        run(repository, "git", "-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "--allow-empty", "-m", "first");
+    }
+
+    @After
+    public void tearDown() {
+        GitCatFilePool.evict(repository);
+        FileUtils.deleteQuietly(repository);
+    }
+
+    @Test
+    public void shouldKillAndDropAProcessThatDoesNotAnswerInTime() throws Exception {
+        File alternates = blockObjectLookups();
+        try {
+            GitCatFile catFile = GitCatFilePool.batchCheck(repository);
+
+            long start = System.currentTimeMillis();
+            try {
+                catFile.lookup(MISSING, 500, null);
+                fail("should time out");
+            } catch (RuntimeException e) {
+                assertThat(e.getCause(), instanceOf(TimeoutException.class));
+            }
+
+            assertThat(System.currentTimeMillis() - start < 10000, is(true));
+            assertThat(GitCatFilePool.batchCheck(repository), is(not(sameInstance(catFile))));
+        } finally {
+            // deleting the repository would block opening the FIFO
+            Files.delete(alternates.toPath());
+        }
+    }
+
+    @Test
+    public void shouldStopALookupAndTheCallersWaitingForItWhenCancelled() throws Exception {
+        File alternates = blockObjectLookups();
+        try {
+            GitCatFile catFile = GitCatFilePool.batchCheck(repository);
+            CancellationToken token = new CancellationToken();
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                Future<?> lookup = executor.submit(() -> catFile.lookup(MISSING, 0, token));
+                Thread.sleep(200);
+                Future<?> waiting = executor.submit(() -> catFile.lookup(MISSING, 0, token));
+                Thread.sleep(200);
+                token.cancel();
+
+                assertCancelled(lookup);
+                assertCancelled(waiting);
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            Files.delete(alternates.toPath());
+        }
+    }
+
+    @Test
+    public void shouldDropTheProcessesOfDeletedWorkingDirectories() throws Exception {
+        GitCatFile catFile = GitCatFilePool.batchCheck(repository);
+        assertThat(catFile.lookup("HEAD^{commit}", 0, null).getType(), is("commit"));
+
+        GitCatFilePool.evictIdle();
+        assertThat(GitCatFilePool.batchCheck(repository), is(sameInstance(catFile)));
+
+        FileUtils.deleteDirectory(repository);
+        GitCatFilePool.evictIdle();
+        assertThat(GitCatFilePool.batchCheck(repository), is(not(sameInstance(catFile))));
+    }
+
+    // git blocks opening the alternates of a repository when they are a FIFO nobody writes to
+    private File blockObjectLookups() throws Exception {
+        File alternates = new File(repository, ".git/objects/info/alternates");
+        FileUtils.forceMkdir(alternates.getParentFile());
+        Assume.assumeTrue(new ProcessBuilder("mkfifo", alternates.getAbsolutePath()).start().waitFor() == 0);
+        return alternates;
+    }
+
+    private static void assertCancelled(Future<?> lookup) throws Exception {
+        try {
+            lookup.get(10, TimeUnit.SECONDS);
+            fail("should be cancelled");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(CancellationException.class));
+        }
+    }
+
+    private static void run(File directory, String... command) throws Exception {
+        if (new ProcessBuilder(command).directory(directory).inheritIO().start().waitFor() != 0) {
+            throw new IllegalStateException(String.join(" ", command) + " failed");
+        }
+    }
+}
@@ -6,6 +6,10 @@ import com.tw.go.plugin.HelperFactory;
 import com.tw.go.plugin.Pair;
 import com.tw.go.plugin.cmd.InMemoryConsumer;
 import com.tw.go.plugin.cmd.ProcessOutputStreamConsumer;
+import com.tw.go.plugin.maintenance.ThresholdMaintenancePolicy;
+import com.tw.go.plugin.metrics.GitOperation;
+import com.tw.go.plugin.metrics.InMemoryGitMetrics;
+import com.tw.go.plugin.metrics.OperationSample;
 import com.tw.go.plugin.model.GitConfig;
 import com.tw.go.plugin.model.Revision;
 import com.tw.go.plugin.model.ShallowClone;
@@ -13,7 +17,10 @@ import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.core.Is.is;
@@ -39,6 +46,15 @@ public class GitCmdHelperTest extends AbstractGitHelperTest {
                 }));
     }
 
+    @Test
+    public void shouldNotDetectRenamesByDefault() throws Exception {
+        moveTwoFiles();
+
+        GitHelper git = getHelper(new GitConfig(testRepository.getAbsolutePath()), testRepository);
+
+        assertThat(files(git.getLatestRevision()), is(List.of("a.txt:deleted", "b.txt:deleted", "moved/c.txt:added", "moved/d.txt:added")));
+    }
+
     @Test
     public void shouldShallowClone() throws Exception {
         extractToTmp("/sample-repository/simple-git-repository-2.zip");
@@ -109,4 +125,109 @@ public class GitCmdHelperTest extends AbstractGitHelperTest {
 
         assertThat(newerRevisions.isEmpty(), is(true));
     }
+
+    @Test
+    public void shouldReturnSameRevisionsWithSinglePassAndPerCommitLog() throws Exception {
+        extractToTmp("/sample-repository/merge-commit-git-repository.zip");
+        File mergeCommitGitRepository = new File(System.getProperty("java.io.tmpdir"), "merge-commit-git-repository");
+
+        GitConfig perCommitConfig = new GitConfig(mergeCommitGitRepository.getAbsolutePath());
+        perCommitConfig.setSinglePassLog(false);
+        GitHelper singlePass = getHelper(new GitConfig(mergeCommitGitRepository.getAbsolutePath()), mergeCommitGitRepository);
+        GitHelper perCommit = getHelper(perCommitConfig, mergeCommitGitRepository);
+
+        List<Revision> expected = perCommit.getAllRevisions();
+        List<Revision> actual = singlePass.getAllRevisions();
+
+        assertThat(actual.size(), is(expected.size()));
+        for (int i = 0; i < expected.size(); i++) {
+            Revision revision = expected.get(i);
+            assertThat(actual.get(i).getUser(), is(revision.getUser()));
+            assertThat(actual.get(i).isMergeCommit(), is(revision.isMergeCommit()));
+            verifyRevision(actual.get(i), revision.getRevision(), revision.getComment(), revision.getTimestamp().getTime(), pairs(revision));
+        }
+    }
+
+    private List<Pair> pairs(Revision revision) {
+        return revision.getModifiedFiles().stream()
+                .map(file -> new Pair(file.getFileName(), file.getAction()))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void shouldAnswerLookupsFromPooledCatFileAcrossFetchesAndRestarts() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-1.zip");
+
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        git.cloneOrFetch();
+        assertThat(git.currentRevision(), is("012e893acea10b140688d11beaa728e8c60bd9f6"));
+
+        FileUtils.deleteQuietly(simpleGitRepository.getAbsoluteFile());
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+        git.cloneOrFetch();
+        assertThat(git.currentRevision(), is("24ce45d1a1427b643ae859777417bbc9f0d7cec8"));
+
+        GitCatFilePool.batch(testRepository).close();
+        verifyRevision(git.getDetailsForRevision("1320a78"), "1320a78055558603a2c29d803bbaa50d3542ff50", "2", 1422189545000L, List.of(new Pair("a.txt", "modified")));
+    }
+
+    @Test
+    public void shouldRecordProcessesAndOutputOfCommands() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        git.cloneOrFetch();
+        InMemoryGitMetrics metrics = new InMemoryGitMetrics();
+        git.setMetrics(metrics);
+        git.getAllRevisions();
+        git.cleanAllUnversionedFiles();
+
+        OperationSample gitLog = metrics.samples(GitOperation.GIT_LOG).get(0);
+        assertThat(gitLog.getProcessCount(), is(1));
+        assertThat(gitLog.getExitCode(), is(0));
+        assertThat(gitLog.getOutputBytes() > 0, is(true));
+        assertThat(metrics.totalProcessCount(GitOperation.CLEAN), is(1));
+    }
+
+    @Test
+    public void shouldReportAuthorsThroughTheMailmap() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+        GitHelper gitRemote = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), simpleGitRepository);
+        File mailmap = new File(simpleGitRepository, ".mailmap");
+        FileUtils.writeStringToFile(mailmap, "Srinivas Upadhya <srinivas@example.com> <srinivas.upadhya@gmail.com>\n", StandardCharsets.UTF_8);
+        gitRemote.add(mailmap);
+        gitRemote.commit("add mailmap");
+
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        git.cloneOrFetch();
+
+        String user = "Srinivas Upadhya <srinivas@example.com>";
+        assertThat(git.getRevisionsSince("012e893acea10b140688d11beaa728e8c60bd9f6").get(1).getUser(), is(user));
+        assertThat(git.getDetailsForRevision("24ce45d1a1427b643ae859777417bbc9f0d7cec8").getUser(), is(user));
+        assertThat(git.getDetailsForRevisions(List.of("1320a78")).get("1320a78").getUser(), is(user));
+    }
+
+    @Test
+    public void shouldLeaveGcToGitUnlessThePolicyAsksForAFullOne() throws Exception {
+        extractToTmp("/sample-repository/simple-git-repository-2.zip");
+        GitHelper git = getHelper(new GitConfig(simpleGitRepository.getAbsolutePath()), testRepository);
+        git.cloneOrFetch();
+        File file = new File(testRepository, "loose.txt");
+        FileUtils.writeStringToFile(file, "loose", StandardCharsets.UTF_8);
+        git.add(file);
+        git.commit("loose objects");
+        int looseObjects = looseObjects();
+
+        git.gc();
+        assertThat(looseObjects(), is(looseObjects));
+
+        git.setMaintenancePolicy(new ThresholdMaintenancePolicy(0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+        git.maintain();
+        assertThat(looseObjects(), is(0));
+    }
+
+    private int looseObjects() {
+        File[] fanOut = new File(testRepository, ".git/objects").listFiles((dir, name) -> name.matches("[0-9a-f]{2}"));
+        return fanOut == null ? 0 : Stream.of(fanOut).mapToInt(dir -> dir.list().length).sum();
+    }
 }
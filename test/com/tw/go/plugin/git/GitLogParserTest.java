@@ -0,0 +1,80 @@
+package com.tw.go.plugin.git;
+
+import com.tw.go.plugin.model.ModifiedFile;
+import com.tw.go.plugin.model.Revision;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class GitLogParserTest {
+    private static final String FIRST = "24ce45d0a2dd9db4ac1dc1ab4b0b2f7ac2a38ae0";
+    private static final String SECOND = "1320a78055558603a2e29d803f3aef8dc8c11c2a";
+    private static final String PARENT = "012e893acf5f3ab2bc0cc7b1e1b0d56c9b2e6b9b";
+
+    private static final String OUTPUT = FIRST + "\0" + SECOND + "\0A U Thor <author@example.com>\0" + "1422189618\0" + "3\n\ntest\tmultiline\ncomment  \n\0"
+            + "\nM\0a.txt\0A\0b.txt\0R087\0old name.txt\0new name.txt\0\0"
+            + SECOND + "\0" + PARENT + " " + FIRST + "\0A U Thor <author@example.com>\0" + "1422189000\0merge\0"
+            + "\0MM\0a.txt\0\0";
+
+    @Test
+    public void shouldParseTokensThatSpanReads() throws Exception {
+        List<Revision> whole = new GitLogParser(input(OUTPUT)).parse();
+        List<Revision> byteByByte = new GitLogParser(new OneByteInputStream(input(OUTPUT))).parse();
+
+        assertThat(describe(byteByByte), is(describe(whole)));
+        assertThat(describe(whole).get(0), is(FIRST + " 1422189618000 A U Thor <author@example.com> author@example.com false"
+                + " 3\n\ntest    multiline\ncomment [a.txt:modified, b.txt:added, new name.txt:renamed]"));
+        assertThat(describe(whole).get(1), is(SECOND + " 1422189000000 A U Thor <author@example.com> author@example.com true merge [a.txt:modified]"));
+    }
+
+    @Test
+    public void shouldCountTheChangedFilesItDoesNotKeep() throws Exception {
+        Revision revision = new GitLogParser(new OneByteInputStream(input(OUTPUT)), 1).parse().get(0);
+
+        assertThat(revision.getModifiedFiles().size(), is(1));
+        assertThat(revision.getModifiedFiles().get(0).getFileName(), is("a.txt"));
+        assertThat(revision.getTruncatedModifiedFiles(), is(2));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnTruncatedOutput() throws Exception {
+        new GitLogParser(input(FIRST + "\0" + SECOND + "\0A U Thor <author@example.com>")).parse();
+    }
+
+    private static InputStream input(String output) {
+        return new ByteArrayInputStream(output.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> describe(List<Revision> revisions) {
+        List<String> descriptions = new ArrayList<>();
+        for (Revision revision : revisions) {
+            List<String> files = new ArrayList<>();
+            for (ModifiedFile file : revision.getModifiedFiles()) {
+                files.add(file.getFileName() + ":" + file.getFileAction().getName());
+            }
+            descriptions.add(revision.getRevision() + " " + revision.getTimestamp().getTime() + " " + revision.getUser() + " " + revision.getEmailId()
+                    + " " + revision.isMergeCommit() + " " + revision.getComment() + " " + files);
+        }
+        return descriptions;
+    }
+
+    private static class OneByteInputStream extends FilterInputStream {
+        private OneByteInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
+}
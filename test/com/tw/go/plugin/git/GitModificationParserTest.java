@@ -0,0 +1,71 @@
+package com.tw.go.plugin.git;
+
+import com.tw.go.plugin.model.Revision;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class GitModificationParserTest {
+    private static final List<String> OUTPUT = List.of(
+            "commit 24ce45d1a1427b643ae859777417bbc9f0d7cec8",
+            "Merge: 1320a78 012e893",
+            "Author: A U Thor <author@example.com>",
+            "Date:   1422189618 +0530",
+            "",
+            "    3",
+            "    ",
+            "    test multiline",
+            "    comment",
+            "",
+            "commit 1320a78055558603a2e29d803f3aef8dc8c11c2a",
+            "Author: A U Thor <author@example.com>",
+            "Date:   1422189000 +0530",
+            "",
+            "    first");
+
+    @Test
+    public void shouldParseEveryRevisionOfTheLog() {
+        List<Revision> revisions = new GitModificationParser().parse(OUTPUT);
+
+        assertThat(revisions.size(), is(2));
+        assertThat(revisions.get(0).getRevision(), is("24ce45d1a1427b643ae859777417bbc9f0d7cec8"));
+        assertThat(revisions.get(0).isMergeCommit(), is(true));
+        assertThat(revisions.get(0).getUser(), is("A U Thor <author@example.com>"));
+        assertThat(revisions.get(0).getEmailId(), is("author@example.com"));
+        assertThat(revisions.get(0).getTimestamp().getTime(), is(1422189618000L));
+        assertThat(revisions.get(0).getComment(), is("3\n\ntest multiline\ncomment"));
+        assertThat(revisions.get(1).isMergeCommit(), is(false));
+        assertThat(revisions.get(1).getComment(), is("first"));
+    }
+
+    @Test
+    public void shouldKeepTheCommentOfTheLastRevisionUpToDateLineByLine() {
+        GitModificationParser parser = new GitModificationParser();
+        List<Revision> revisions = parser.parse(List.of());
+
+        for (String line : OUTPUT.subList(0, 7)) {
+            parser.processLine(line);
+        }
+        assertThat(revisions.get(0).getComment(), is("3\n"));
+        for (String line : OUTPUT.subList(7, OUTPUT.size())) {
+            parser.processLine(line);
+        }
+
+        assertThat(revisions.get(0).getComment(), is("3\n\ntest multiline\ncomment"));
+        assertThat(revisions.get(1).getComment(), is("first"));
+    }
+
+    @Test
+    public void shouldFailOnADateItCannotParse() {
+        try {
+            new GitModificationParser().parse(List.of("commit 24ce45d1a1427b643ae859777417bbc9f0d7cec8", "Date:   yesterday"));
+            fail("should fail");
+        } catch (RuntimeException e) {
+            assertThat(e.getMessage(), is("Unparseable date: \"Date:   yesterday\""));
+        }
+    }
+}
@@ -5,14 +5,99 @@ import com.tw.go.plugin.GitHelper;
 import com.tw.go.plugin.HelperFactory;
 import com.tw.go.plugin.cmd.InMemoryConsumer;
 import com.tw.go.plugin.cmd.ProcessOutputStreamConsumer;
+import com.tw.go.plugin.git.GitCatFilePool;
 import com.tw.go.plugin.model.GitConfig;
+import com.tw.go.plugin.model.ModifiedFile;
+import com.tw.go.plugin.model.Revision;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.junit.After;
+import org.junit.Test;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 
 public class JGitHelperTest extends AbstractGitHelperTest {
+    private final List<GitHelper> helpers = new ArrayList<>();
+
+    // the tests re-create their repositories in the same directories, so pooled repositories are released in between
+    @After
+    public void closeHelpers() {
+        helpers.forEach(GitHelper::close);
+    }
+
+    @Test
+    public void shouldDetectRenamesByDefaultAndReportThemAsAdded() throws Exception {
+        moveTwoFiles();
+
+        GitHelper git = getHelper(new GitConfig(testRepository.getAbsolutePath()), testRepository);
+        Revision latest = git.getLatestRevision();
+
+        assertThat(files(latest), is(List.of("moved/c.txt:renamed", "moved/d.txt:renamed")));
+        assertThat(latest.getModifiedFiles().stream().map(ModifiedFile::getAction).collect(Collectors.toList()), is(List.of("added", "added")));
+    }
+
+    @Test
+    public void shouldListTheSameRevisionsWhenDiffingInParallel() throws Exception {
+        try (Git repository = Git.init().setDirectory(testRepository).call()) {
+            for (int i = 0; i < 3 * RevisionMaterializer.MIN_COMMITS_PER_TASK; i++) {
+                FileUtils.writeStringToFile(new File(testRepository, "file-" + (i % 5) + ".txt"), "change " + i, StandardCharsets.UTF_8);
+                repository.add().addFilepattern(".").call();
+                repository.commit().setMessage("commit " + i).setSign(false).call();
+            }
+        }
+        GitConfig serial = new GitConfig(testRepository.getAbsolutePath());
+        GitConfig parallel = new GitConfig(testRepository.getAbsolutePath());
+        parallel.setDiffParallelism(4);
+
+        List<Revision> expected = getHelper(serial, testRepository).getAllRevisions();
+        GitHelper git = getHelper(parallel, testRepository);
+
+        assertThat(expected.size(), is(3 * RevisionMaterializer.MIN_COMMITS_PER_TASK));
+        assertThat(describe(git.getAllRevisions()), is(describe(expected)));
+    }
+
+    private static List<String> describe(List<Revision> revisions) {
+        return revisions.stream()
+                .map(revision -> revision.getRevision() + " " + revision.getComment() + " " + files(revision))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void shouldDescribeRevisionsExactlyAsTheCommandLineBackend() throws Exception {
+        extractToTmp("/sample-repository/merge-commit-git-repository.zip");
+
+        GitHelper jGit = getHelper(new GitConfig(mergeCommitGitRepository.getAbsolutePath()), mergeCommitGitRepository);
+        GitHelper gitCmd = HelperFactory.gitCmd(new GitConfig(mergeCommitGitRepository.getAbsolutePath()), mergeCommitGitRepository);
+        List<String> shas = gitCmd.getAllRevisions().stream().map(Revision::getRevision).collect(Collectors.toList());
+
+        Map<String, Revision> expected = gitCmd.getDetailsForRevisions(shas);
+        Map<String, Revision> actual = jGit.getDetailsForRevisions(shas);
+        GitCatFilePool.evict(mergeCommitGitRepository);
+
+        assertThat(actual.keySet(), is(expected.keySet()));
+        for (String sha : shas) {
+            Revision cmd = expected.get(sha);
+            Revision jgit = actual.get(sha);
+            assertThat(jgit.getTimestamp(), is(cmd.getTimestamp()));
+            assertThat(jgit.getComment(), is(cmd.getComment()));
+            assertThat(jgit.getUser(), is(cmd.getUser()));
+            assertThat(jgit.getEmailId(), is(cmd.getEmailId()));
+            assertThat(jgit.isMergeCommit(), is(cmd.isMergeCommit()));
+            assertThat(jgit.getModifiedFiles(), is(cmd.getModifiedFiles()));
+        }
+    }
+
     @Override
     protected GitHelper getHelper(GitConfig gitConfig, File workingDir) {
-        return HelperFactory.jGit(gitConfig, workingDir,
+        GitHelper helper = HelperFactory.jGit(gitConfig, workingDir,
                 new ProcessOutputStreamConsumer(new InMemoryConsumer() {
                     @Override
                     public void consumeLine(String line) {
@@ -25,5 +110,7 @@ public class JGitHelperTest extends AbstractGitHelperTest {
                         System.err.println(line);
                     }
                 }));
+        helpers.add(helper);
+        return helper;
     }
 }
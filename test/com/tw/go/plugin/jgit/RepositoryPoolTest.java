@@ -0,0 +1,60 @@
+package com.tw.go.plugin.jgit;
+
+import com.tw.go.plugin.model.GitConfig;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class RepositoryPoolTest {
+    private final File workingDir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
+    private final File gitDir = new File(workingDir, ".git");
+
+    @After
+    public void tearDown() {
+        RepositoryPool.evict(gitDir);
+        FileUtils.deleteQuietly(workingDir);
+    }
+
+    @Test
+    public void shouldShareRepositoryUntilEvicted() throws Exception {
+        JGitHelper git = new JGitHelper(new GitConfig("http://url.test"), workingDir);
+        git.init();
+        git.getBranchToRevisionMap();
+
+        Repository first;
+        try (Repository repository = RepositoryPool.open(gitDir)) {
+            first = repository;
+        }
+        try (Repository repository = RepositoryPool.open(gitDir)) {
+            assertThat(repository, is(sameInstance(first)));
+        }
+        RepositoryPool.evictIdle();
+        assertThat(RepositoryPool.isPooled(gitDir), is(true));
+
+        git.close();
+        assertThat(RepositoryPool.isPooled(gitDir), is(false));
+        try (Repository repository = RepositoryPool.open(gitDir)) {
+            assertThat(repository, is(not(sameInstance(first))));
+        }
+    }
+
+    @Test
+    public void shouldKeepRepositoryUsableByCallersWhenEvicted() throws Exception {
+        new JGitHelper(new GitConfig("http://url.test"), workingDir).init();
+
+        try (Repository repository = RepositoryPool.open(gitDir)) {
+            RepositoryPool.evict(gitDir);
+            assertThat(repository.getBranch(), is("master"));
+            assertThat(repository.getRefDatabase().hasRefs(), is(false));
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.tw.go.plugin.jgit;
+
+import com.tw.go.plugin.cmd.CancellationToken;
+import com.tw.go.plugin.metrics.GitMetrics;
+import com.tw.go.plugin.model.Revision;
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RevisionMaterializerTest {
+    private final File workingDir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(workingDir);
+    }
+
+    @Test
+    public void shouldMaterializeTheSameRevisionsInOrderWhenDiffingInParallel() throws Exception {
+        try (Git git = Git.init().setDirectory(workingDir).call()) {
+            for (int i = 0; i < 20; i++) {
+                FileUtils.writeStringToFile(new File(workingDir, "file-" + (i % 3) + ".txt"), "change " + i, StandardCharsets.UTF_8);
+                FileUtils.writeStringToFile(new File(workingDir, "dir/new-" + i + ".txt"), "new " + i, StandardCharsets.UTF_8);
+                if (i > 0) {
+                    FileUtils.deleteQuietly(new File(workingDir, "dir/new-" + (i - 1) + ".txt"));
+                }
+                git.add().addFilepattern(".").call();
+                git.commit().setAll(true).setMessage("commit " + i).call();
+            }
+
+            List<RevCommit> commits = new ArrayList<>();
+            try (RevWalk walk = new RevWalk(git.getRepository())) {
+                walk.markStart(walk.parseCommit(git.getRepository().resolve("HEAD")));
+                walk.forEach(commits::add);
+            }
+            CancellableProgressMonitor monitor = new CancellableProgressMonitor("log", new CancellationToken(), 0);
+
+            ForkJoinPool serial = new ForkJoinPool(1);
+            ForkJoinPool pool = new ForkJoinPool(4);
+            List<Revision> sequential;
+            List<Revision> parallel;
+            try {
+                sequential = RevisionMaterializer.materialize(git.getRepository(), null, GitMetrics.NOOP, commits, null, serial, 1, monitor);
+                parallel = RevisionMaterializer.materialize(git.getRepository(), null, GitMetrics.NOOP, commits, null, pool, 1, monitor);
+            } finally {
+                serial.shutdown();
+                pool.shutdown();
+            }
+
+            assertThat(sequential.size(), is(20));
+            assertThat(describe(parallel), is(describe(sequential)));
+            assertThat(describe(sequential).get(0), is(commits.get(0).getName() + " commit 19 [dir/new-18.txt:deleted, dir/new-19.txt:added, file-1.txt:modified]"));
+        }
+    }
+
+    private List<String> describe(List<Revision> revisions) {
+        return revisions.stream()
+                .map(revision -> revision.getRevision() + " " + revision.getComment() + " " + revision.getModifiedFiles().stream()
+                        .map(file -> file.getFileName() + ":" + file.getAction())
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+}
@@ -4,7 +4,10 @@ import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertThat;
@@ -27,6 +30,49 @@ public class RevisionTest {
         assertThat(revision.getModifiedFiles(), contains(new ModifiedFile("fileName", "added")));
     }
 
+    @Test
+    public void loadsModifiedFilesOnceWhenFirstRead() {
+        AtomicInteger loads = new AtomicInteger();
+        revision.setModifiedFilesLoader(r -> {
+            loads.incrementAndGet();
+            return new ArrayList<>(List.of(new ModifiedFile("fileName", "modified")));
+        });
+        assertThat(revision.isModifiedFilesLoaded(), is(false));
+
+        revision.createModifiedFile("other", "added");
+
+        assertThat(revision.getModifiedFiles(), contains(new ModifiedFile("fileName", "modified"), new ModifiedFile("other", "added")));
+        assertThat(revision.isModifiedFilesLoaded(), is(true));
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    public void keepsObjectNamesAndPathsCompactly() {
+        Revision compact = new Revision("24ce45d1a1427b643ae859777417bbc9f0d7cec8", date, "comment", "user", "email", null);
+        compact.createModifiedFile("src/main/a.txt", "modified");
+        compact.createModifiedFile(new String("src/main/b.txt"), FileAction.RENAMED);
+
+        assertThat(compact.getRevision(), is("24ce45d1a1427b643ae859777417bbc9f0d7cec8"));
+        assertThat(compact.getTimestamp(), is(date));
+        assertThat(compact.getTimestamp(), is(not(sameInstance(compact.getTimestamp()))));
+        assertThat(compact.getModifiedFiles(), contains(new ModifiedFile("src/main/a.txt", "modified"), new ModifiedFile("src/main/b.txt", "renamed")));
+        assertThat(compact.getModifiedFiles().get(1).getFileAction(), is(FileAction.RENAMED));
+        assertThat(compact.getModifiedFiles().get(1).getAction(), is("added"));
+        assertThat(new Revision("HEAD~1").getRevision(), is("HEAD~1"));
+    }
+
+    @Test
+    public void keepsActionsItDoesNotKnowAsGiven() {
+        Revision revision = new Revision("24ce45d1a1427b643ae859777417bbc9f0d7cec8", date, "comment", "user", "email", null);
+        revision.createModifiedFile("a.txt", "type-changed");
+        revision.createModifiedFile("b.txt", (String) null);
+
+        assertThat(revision.getModifiedFiles().get(0).getAction(), is("type-changed"));
+        assertThat(revision.getModifiedFiles().get(0).getFileAction(), is(FileAction.UNKNOWN));
+        assertThat(revision.getModifiedFiles().get(1).getAction(), is(nullValue()));
+        assertThat(new ModifiedFile("a.txt", "type-changed"), is(not(new ModifiedFile("a.txt", "unknown"))));
+    }
+
     @Test
     public void getRevision() {
         assertThat(revision.getRevision(), is(equalTo("revision")));
@@ -0,0 +1,81 @@
+package com.tw.go.plugin.timeline;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class JfrPhaseListenerTest {
+    @Before
+    public void setUp() {
+        assumeTrue("jdk.jfr is not available", isJfrAvailable());
+    }
+
+    @Test
+    public void shouldBeADefaultListener() {
+        assertThat(PhaseListeners.defaults().size(), is(1));
+    }
+
+    @Test
+    public void shouldRecordNestedPhasesAsFlightRecorderEvents() throws Exception {
+        List<String> events = FlightRecording.record(() -> {
+            JfrPhaseListener listener = new JfrPhaseListener();
+            PhaseEvent outer = PhaseEvent.started(GitPhase.FETCH_AND_RESET, new File("work"), Collections.emptyMap());
+            PhaseEvent inner = PhaseEvent.started(GitPhase.FETCH, new File("work"), Collections.singletonMap("refSpec", "master"));
+            listener.phaseStarted(outer);
+            listener.phaseStarted(inner);
+            listener.phaseEnded(inner.ended(null));
+            listener.phaseEnded(outer.ended(new RuntimeException("failed")));
+        });
+
+        assertThat(events, contains("FETCH {refSpec=master} failed=false", "FETCH_AND_RESET {} failed=true"));
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, JfrPhaseListenerTest.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    // every jdk.jfr reference lives here, so the test class itself still loads on JVMs without the module
+    private static class FlightRecording {
+        private static List<String> record(Runnable phases) throws Exception {
+            Path dump = Files.createTempFile("git-phases", ".jfr");
+            try (Recording recording = new Recording()) {
+                recording.enable("com.tw.go.plugin.GitPhase").withThreshold(Duration.ZERO);
+                recording.start();
+                phases.run();
+                recording.stop();
+                recording.dump(dump);
+
+                return RecordingFile.readAllEvents(dump).stream()
+                        .filter(event -> event.getEventType().getName().equals("com.tw.go.plugin.GitPhase"))
+                        .map(FlightRecording::describe)
+                        .collect(Collectors.toList());
+            } finally {
+                Files.deleteIfExists(dump);
+            }
+        }
+
+        private static String describe(RecordedEvent event) {
+            return event.getString("phase") + " " + event.getString("attributes") + " failed=" + event.getBoolean("failed");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.tw.go.plugin.util;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DateUtilsTest {
+    private static final long MILLIS = 1422189618000L;
+
+    @Test
+    public void shouldReadEveryDateFormatGitPrints() {
+        assertThat(DateUtils.parseISO8601("1422189618 +0530").getTime(), is(MILLIS));
+        assertThat(DateUtils.parseISO8601("2015-01-25 18:10:18 +0530").getTime(), is(MILLIS));
+        assertThat(DateUtils.parseISO8601("2015-01-25T18:10:18+05:30").getTime(), is(MILLIS));
+        assertThat(DateUtils.parseISO8601("2015-01-25T12:40:18Z").getTime(), is(MILLIS));
+        assertThat(DateUtils.parseISO8601("2015-01-25T12:40:18").getTime(), is(MILLIS));
+        assertThat(DateUtils.parseISO8601("2015-01-25T07:40:18.250-05").getTime(), is(MILLIS + 250));
+        assertThat(DateUtils.parseISO8601("2015-01-25 03:10:18 -0930").getTime(), is(MILLIS));
+        assertThat(DateUtils.toEpochMillis("Date:   1422189618 +0530", "Date:".length(), 24), is(MILLIS));
+    }
+
+    @Test
+    public void shouldCountDaysAcrossLeapYearsAndBeforeTheEpoch() {
+        assertThat(DateUtils.parseISO8601("2000-02-29T00:00:00Z").getTime(), is(951782400000L));
+        assertThat(DateUtils.parseISO8601("1969-12-31T23:59:59Z").getTime(), is(-1000L));
+        assertThat(DateUtils.parseISO8601("2100-03-01T00:00:00Z").getTime(), is(4107542400000L));
+    }
+
+    @Test
+    public void shouldRejectTextThatIsNotADate() {
+        assertThat(DateUtils.toEpochMillis("", 0, 0), is(DateUtils.INVALID));
+        assertThat(DateUtils.toEpochMillis("2015-02-29T00:00:00Z", 0, 20), is(DateUtils.INVALID));
+        assertThat(DateUtils.toEpochMillis("2015-01-25 18:10:18", 0, 19), is(DateUtils.INVALID));
+        assertThat(DateUtils.toEpochMillis("2015-01-25T18:10:18+5", 0, 21), is(DateUtils.INVALID));
+        assertThat(DateUtils.toEpochMillis("1422189618 UTC", 0, 14), is(DateUtils.INVALID));
+        assertThat(DateUtils.toEpochMillis("yesterday", 0, 9), is(DateUtils.INVALID));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void shouldFailToParseTextThatIsNotADate() {
+        DateUtils.parseISO8601("25 Jan 2015");
+    }
+}
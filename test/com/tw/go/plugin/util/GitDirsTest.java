@@ -0,0 +1,37 @@
+package com.tw.go.plugin.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class GitDirsTest {
+    private final File workingDir = new File(System.getProperty("java.io.tmpdir"), UUID.randomUUID().toString());
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(workingDir);
+    }
+
+    @Test
+    public void shouldFollowAGitFileToTheGitDirectory() throws Exception {
+        assertThat(GitDirs.resolve(workingDir), is(new File(workingDir, ".git")));
+
+        FileUtils.forceMkdir(new File(workingDir, ".git"));
+        assertThat(GitDirs.resolve(workingDir), is(new File(workingDir, ".git")));
+
+        FileUtils.deleteDirectory(new File(workingDir, ".git"));
+        FileUtils.writeStringToFile(new File(workingDir, ".git"), "gitdir: ../.git/modules/sub\n", StandardCharsets.UTF_8);
+        assertThat(GitDirs.resolve(workingDir), is(new File(workingDir, "../.git/modules/sub")));
+
+        File absolute = new File(workingDir, "elsewhere").getAbsoluteFile();
+        FileUtils.writeStringToFile(new File(workingDir, ".git"), "gitdir: " + absolute + "\n", StandardCharsets.UTF_8);
+        assertThat(GitDirs.resolve(workingDir), is(absolute));
+    }
+}